@@ -0,0 +1,70 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.korvala.IServiceC;
+import com.korvala.IServiceE;
+import com.korvala.ServiceC;
+import com.korvala.ServiceE;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+
+/**
+ * AmbientScopeBenchmark: cost of one request scope opened with runInScope
+ * against a scope created, passed around and closed explicitly
+ *
+ * Every operation opens a scope, resolves a scoped service depending on a
+ * singleton twice and closes the scope. Run on JDK 21 or later to measure the
+ * ScopedValue binding, on JDK 17 the ThreadLocal one is measured. See
+ * VirtualThreadScopes for the memory use of many concurrent scopes.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmbientScopeBenchmark {
+
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        this.context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .addScoped(IServiceE.class, ServiceE.class)
+                .build();
+    }
+
+    @Benchmark
+    public void explicitScope(final Blackhole blackhole) {
+        try (var scope = this.context.createScope()) {
+            blackhole.consume(scope.getService(IServiceE.class));
+            blackhole.consume(scope.getService(IServiceE.class));
+        }
+    }
+
+    @Benchmark
+    public void ambientScope(final Blackhole blackhole) {
+        this.context.runInScope(() -> {
+            blackhole.consume(this.context.getService(IServiceE.class));
+            blackhole.consume(this.context.getService(IServiceE.class));
+        });
+    }
+}
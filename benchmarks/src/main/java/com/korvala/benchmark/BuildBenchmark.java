@@ -0,0 +1,58 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
+
+/**
+ * BuildBenchmark: time of build() for layered synthetic graphs
+ *
+ * The graph is generated once per trial, every invocation builds a new
+ * context from the same registrations and creates every singleton.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    @Param({ "4", "32" })
+    private int depth;
+
+    @Param({ "1", "4" })
+    private int fanIn;
+
+    private DependencyInjectionBuilder builder;
+
+    @Setup(Level.Trial)
+    public void generateGraph() {
+        this.builder = SyntheticServiceGraph.layered(this.size, this.depth, this.fanIn)
+                .register(new DependencyInjectionBuilder());
+    }
+
+    @Benchmark
+    public DependencyInjectionContext build() throws Exception {
+        return this.builder.build();
+    }
+}
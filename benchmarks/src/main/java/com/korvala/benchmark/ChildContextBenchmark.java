@@ -0,0 +1,65 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+
+/**
+ * ChildContextBenchmark: cost of a child context overriding a few services of
+ * a built parent, and of resolving an inherited service through the child
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChildContextBenchmark {
+
+    private static final int OVERRIDES = 3;
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private SyntheticServiceGraph graph;
+    private Context parent;
+    private Context child;
+
+    @Setup(Level.Trial)
+    public void buildParent() throws Exception {
+        this.graph = SyntheticServiceGraph.layered(this.size, 8, 2);
+        this.parent = this.graph.register(new DependencyInjectionBuilder()).build();
+        this.child = createChild();
+    }
+
+    @Benchmark
+    public Context createChild() throws Exception {
+        return this.parent.createChild(builder -> {
+            for (int i = this.size - OVERRIDES; i < this.size; i++) {
+                builder.addService(this.graph.serviceInterface(i), this.graph.serviceClass(i));
+            }
+        });
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object resolveInherited() {
+        return this.child.getService(this.graph.serviceInterface(0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
+
+/**
+ * InjectionBenchmark: cost of creating a transient service as a function of
+ * its number of @Inject fields
+ *
+ * The fields = 0 row is the cost of the lookup and the constructor call, the
+ * slope of the other rows is the cost of one injected field.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectionBenchmark {
+
+    @Param({ "0", "1", "4", "16" })
+    private int fields;
+
+    private DependencyInjectionContext context;
+    private Class<?> injected;
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        SyntheticServiceGraph graph = SyntheticServiceGraph.generate(this.fields + 1, this.fields);
+
+        DependencyInjectionBuilder builder = new DependencyInjectionBuilder();
+        for (int i = 0; i < this.fields; i++) {
+            builder.addSingleton(graph.serviceInterface(i), graph.serviceClass(i));
+        }
+        this.injected = graph.serviceInterface(this.fields);
+        builder.addTransient(this.injected, graph.serviceClass(this.fields));
+        this.context = builder.build();
+    }
+
+    @Benchmark
+    public Object createTransient() {
+        return this.context.getService(this.injected);
+    }
+}
@@ -0,0 +1,97 @@
+package com.korvala.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.Counted;
+import com.korvala.CountingInterceptor;
+import com.korvala.IServiceW;
+import com.korvala.ServiceW;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+/**
+ * InterceptionBenchmark: a call with primitive arguments made directly,
+ * through the generated intercepting class and through a
+ * java.lang.reflect.Proxy doing the same counting
+ *
+ * Run with -prof gc: the intercepted calls should not allocate, the proxy
+ * boxes the arguments and the result into a new argument array.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptionBenchmark {
+
+    private IServiceW direct;
+    private IServiceW passThrough;
+    private IServiceW counted;
+    private IServiceW proxy;
+    private long value = 42L;
+
+    @Setup(Level.Trial)
+    public void buildContexts() throws Exception {
+        this.direct = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .build()
+                .getService(IServiceW.class);
+        this.passThrough = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Counted.class, (method, annotation, next) -> next)
+                .build()
+                .getService(IServiceW.class);
+        this.counted = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Counted.class, new CountingInterceptor())
+                .build()
+                .getService(IServiceW.class);
+
+        IServiceW target = new ServiceW();
+        AtomicLong calls = new AtomicLong();
+        this.proxy = (IServiceW) Proxy.newProxyInstance(IServiceW.class.getClassLoader(),
+                new Class<?>[] { IServiceW.class }, (instance, method, arguments) -> {
+                    calls.incrementAndGet();
+                    return method.invoke(target, arguments);
+                });
+    }
+
+    @Benchmark
+    public long direct() {
+        return this.direct.add(this.value, 3);
+    }
+
+    @Benchmark
+    public long interceptedPassThrough() {
+        return this.passThrough.add(this.value, 3);
+    }
+
+    @Benchmark
+    public long interceptedCounting() {
+        return this.counted.add(this.value, 3);
+    }
+
+    @Benchmark
+    public long proxyCounting() {
+        return this.proxy.add(this.value, 3);
+    }
+}
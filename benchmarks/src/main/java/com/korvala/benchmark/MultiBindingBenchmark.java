@@ -0,0 +1,79 @@
+package com.korvala.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.korvala.IServiceT;
+import com.korvala.IServiceU;
+import com.korvala.ServiceT;
+import com.korvala.ServiceTA;
+import com.korvala.ServiceTB;
+import com.korvala.ServiceU;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+
+/**
+ * MultiBindingBenchmark: one message passed through every implementation of a
+ * multi-binding, through the injected List and array and through getServices
+ *
+ * Run with -prof gc: none of the variants should allocate per message.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiBindingBenchmark {
+
+    private Context context;
+    private List<IServiceT> list;
+    private IServiceT[] array;
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        this.context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class, ServiceTB.class)
+                .addService(IServiceU.class, ServiceU.class)
+                .build();
+        this.list = this.context.getService(IServiceU.class).getServicesT();
+        this.array = this.context.getService(IServiceU.class).getServiceTArray();
+    }
+
+    @Benchmark
+    public void injectedList(final Blackhole blackhole) {
+        for (IServiceT service : this.list) {
+            blackhole.consume(service.jobT());
+        }
+    }
+
+    @Benchmark
+    public void injectedArray(final Blackhole blackhole) {
+        for (IServiceT service : this.array) {
+            blackhole.consume(service.jobT());
+        }
+    }
+
+    @Benchmark
+    public void getServices(final Blackhole blackhole) {
+        for (IServiceT service : this.context.getServices(IServiceT.class)) {
+            blackhole.consume(service.jobT());
+        }
+    }
+}
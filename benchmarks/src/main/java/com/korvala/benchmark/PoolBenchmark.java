@@ -0,0 +1,88 @@
+package com.korvala.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.IServiceI;
+import com.korvala.IServiceX;
+import com.korvala.ServiceI;
+import com.korvala.ServiceX;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.Lease;
+import com.korvala.dependencyinjection.PoolConfig;
+
+/**
+ * PoolBenchmark: lease and return of a pooled service from several threads
+ * at once, against a pool guarded by a single lock
+ *
+ * The pool is big enough for every thread, so the difference is the cost of
+ * taking and returning an instance while the threads contend for the pool.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PoolBenchmark {
+
+    private DependencyInjectionBuilder.Context context;
+    private final ArrayDeque<IServiceX> locked = new ArrayDeque<>();
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        this.context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(8))
+                .build();
+        for (int i = 0; i < 8; i++) {
+            this.locked.add(new ServiceX());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeContext() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public int lease() {
+        try (Lease<IServiceX> lease = this.context.lease(IServiceX.class)) {
+            return lease.get().resets();
+        }
+    }
+
+    @Benchmark
+    public int synchronizedPool() {
+        IServiceX instance;
+        synchronized (this.locked) {
+            instance = this.locked.poll();
+        }
+        try {
+            ((ServiceX) instance).reset();
+            return instance.resets();
+        } finally {
+            synchronized (this.locked) {
+                this.locked.push(instance);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
+
+/**
+ * RebuildBenchmark: a full build() against rebuildWith swapping one service of
+ * the same layered synthetic graph
+ *
+ * The swapped service is the first of the given layer, layer 0 is injected by
+ * the most services and the top layer by none. Both include creating the
+ * singletons, rebuildWith only those depending on the swapped service.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RebuildBenchmark {
+
+    private static final int DEPTH = 4;
+
+    @Param({ "1000", "10000" })
+    private int size;
+
+    @Param({ "0", "3" })
+    private int layer;
+
+    private SyntheticServiceGraph graph;
+    private DependencyInjectionBuilder.Context context;
+    private Class<?> serviceInterface;
+    private Class<?> serviceClass;
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        this.graph = SyntheticServiceGraph.layered(this.size, DEPTH, 4);
+        this.context = this.graph.register(new DependencyInjectionBuilder()).build();
+        int swapped = this.layer * ((this.size + DEPTH - 1) / DEPTH);
+        this.serviceInterface = this.graph.serviceInterface(swapped);
+        this.serviceClass = this.graph.serviceClass(swapped);
+    }
+
+    @Benchmark
+    public DependencyInjectionContext build() throws Exception {
+        return this.graph.register(new DependencyInjectionBuilder()).build();
+    }
+
+    @Benchmark
+    public DependencyInjectionContext rebuildWith() throws Exception {
+        return this.context.rebuildWith(this.serviceInterface, this.serviceClass);
+    }
+}
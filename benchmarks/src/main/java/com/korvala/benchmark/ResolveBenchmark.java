@@ -0,0 +1,122 @@
+package com.korvala.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+import com.korvala.dependencyinjection.ServiceKey;
+
+/**
+ * ResolveBenchmark: throughput and latency distribution of getService for one
+ * caller and for several concurrent callers
+ *
+ * Callers walk through every registered interface so the lookup table is
+ * exercised as a whole instead of one hot entry. singletonByKey resolves the
+ * same services through ServiceKeys instead of their interfaces. The services of the top
+ * layer are transient, resolving them measures construction and injection on
+ * top of the lookup.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveBenchmark {
+
+    private static final int DEPTH = 8;
+    private static final int FAN_IN = 2;
+
+    @Param({ "100", "10000" })
+    private int size;
+
+    private Context context;
+    private Class<?>[] singletons;
+    private ServiceKey<?>[] singletonKeys;
+    private Class<?>[] transients;
+
+    /**
+     * Position of one caller in the interface arrays
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(final int length) {
+            int current = this.next;
+            this.next = current + 1 == length ? 0 : current + 1;
+            return current;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void buildContext() throws Exception {
+        SyntheticServiceGraph graph = SyntheticServiceGraph.layered(this.size, DEPTH, FAN_IN);
+        int topLayer = graph.size() - graph.size() / DEPTH;
+
+        DependencyInjectionBuilder builder = new DependencyInjectionBuilder();
+        this.singletons = new Class<?>[topLayer];
+        this.transients = new Class<?>[graph.size() - topLayer];
+        for (int i = 0; i < graph.size(); i++) {
+            if (i < topLayer) {
+                builder.addSingleton(graph.serviceInterface(i), graph.serviceClass(i));
+                this.singletons[i] = graph.serviceInterface(i);
+            } else {
+                builder.addTransient(graph.serviceInterface(i), graph.serviceClass(i));
+                this.transients[i - topLayer] = graph.serviceInterface(i);
+            }
+        }
+        this.context = builder.build();
+
+        this.singletonKeys = new ServiceKey<?>[topLayer];
+        for (int i = 0; i < topLayer; i++) {
+            this.singletonKeys[i] = this.context.keyOf(this.singletons[i]);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object singleton(final Cursor cursor) {
+        return this.context.getService(this.singletons[cursor.next(this.singletons.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object singletonConcurrent(final Cursor cursor) {
+        return this.context.getService(this.singletons[cursor.next(this.singletons.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object singletonByKey(final Cursor cursor) {
+        return this.context.getServiceByKey(this.singletonKeys[cursor.next(this.singletonKeys.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object transientService(final Cursor cursor) {
+        return this.context.getService(this.transients[cursor.next(this.transients.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object transientServiceConcurrent(final Cursor cursor) {
+        return this.context.getService(this.transients[cursor.next(this.transients.length)]);
+    }
+}
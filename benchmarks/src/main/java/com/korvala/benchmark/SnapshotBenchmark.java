@@ -0,0 +1,71 @@
+package com.korvala.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
+
+/**
+ * SnapshotBenchmark: build() from registrations against a build from a wiring
+ * snapshot of the same layered synthetic graph
+ *
+ * Both include creating every singleton, the snapshot is written once per
+ * trial and read again by every invocation.
+ *
+ * @author Hannu Korvala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private SyntheticServiceGraph graph;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot() throws Exception {
+        this.graph = SyntheticServiceGraph.layered(this.size, 4, 4);
+        this.snapshot = Files.createTempFile("wiring", ".snapshot");
+        this.graph.register(new DependencyInjectionBuilder()).build().writeSnapshot(this.snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() throws IOException {
+        Files.deleteIfExists(this.snapshot);
+    }
+
+    @Benchmark
+    public DependencyInjectionContext build() throws Exception {
+        return this.graph.register(new DependencyInjectionBuilder()).build();
+    }
+
+    @Benchmark
+    public DependencyInjectionContext buildFromSnapshot() throws Exception {
+        return DependencyInjectionBuilder
+                .fromSnapshot(this.snapshot, this.graph.serviceClass(0).getClassLoader())
+                .build();
+    }
+}
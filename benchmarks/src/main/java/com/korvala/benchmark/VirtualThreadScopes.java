@@ -0,0 +1,130 @@
+package com.korvala.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.consumer.RecordingStream;
+
+import com.korvala.IServiceC;
+import com.korvala.IServiceE;
+import com.korvala.ServiceC;
+import com.korvala.ServiceE;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+
+/**
+ * VirtualThreadScopes: memory use and pinning of many concurrent ambient
+ * scopes, one virtual thread per scope
+ *
+ * Every virtual thread opens a scope with runInScope, resolves a scoped
+ * service from the context and parks inside the scope until all threads have
+ * done the same, so every scope is alive at once when the heap is measured.
+ * The heap per scope should stay flat as the number of threads grows, and no
+ * jdk.VirtualThreadPinned events should be recorded. Needs JDK 21 or later.
+ *
+ * Run with:
+ * java -cp target/benchmarks.jar com.korvala.benchmark.VirtualThreadScopes [threads...]
+ *
+ * @author Hannu Korvala
+ */
+public final class VirtualThreadScopes {
+
+    private static final int[] DEFAULT_THREADS = { 10_000, 100_000, 1_000_000 };
+
+    /**
+     * Flight Recorder streams events about once a second
+     */
+    private static final Duration EVENT_DELIVERY = Duration.ofSeconds(2);
+
+    private VirtualThreadScopes() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        ExecutorService probe;
+        try {
+            probe = newVirtualThreadPerTaskExecutor();
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads need JDK 21 or later");
+            return;
+        }
+        probe.shutdown();
+
+        int[] counts = DEFAULT_THREADS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Context context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .addScoped(IServiceE.class, ServiceE.class)
+                .build();
+
+        AtomicLong pinned = new AtomicLong();
+        try (RecordingStream pinning = new RecordingStream()) {
+            pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+            pinning.onEvent("jdk.VirtualThreadPinned", event -> pinned.incrementAndGet());
+            pinning.startAsync();
+
+            run(context, counts[0]);
+            for (int threads : counts) {
+                pinned.set(0);
+                String result = run(context, threads);
+                Thread.sleep(EVENT_DELIVERY.toMillis());
+                System.out.printf("%s, %,d pinned%n", result, pinned.get());
+            }
+        }
+    }
+
+    private static String run(final Context context, final int threads) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        CountDownLatch inScope = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long start = System.nanoTime();
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> context.runInScope(() -> {
+                    context.getService(IServiceE.class).jobE();
+                    inScope.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            inScope.await();
+            long elapsed = System.nanoTime() - start;
+
+            System.gc();
+            long heapPerScope = (memory.getHeapMemoryUsage().getUsed() - heapBefore) / threads;
+            return String.format("%,10d concurrent scopes: %,6d ms to open, %,5d heap bytes per parked scope",
+                    threads, elapsed / 1_000_000, heapPerScope);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, looked up so the benchmarks
+     * still compile for JDK 17
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+}
@@ -0,0 +1,428 @@
+package com.korvala.dependencyinjection.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import com.korvala.dependencyinjection.AsyncInitializingService;
+import com.korvala.dependencyinjection.GenerateContext;
+import com.korvala.dependencyinjection.InitializingService;
+import com.korvala.dependencyinjection.Inject;
+import com.korvala.dependencyinjection.Lazy;
+import com.korvala.dependencyinjection.PostInject;
+import com.korvala.dependencyinjection.Provider;
+import com.korvala.dependencyinjection.ServiceLifetime;
+
+/**
+ * ContextProcessor: generates a reflection free DependencyInjectionContext for
+ * every class annotated with @GenerateContext
+ *
+ * Dependencies are resolved with the same rules as DependencyInjectionBuilder:
+ * a registration made for exactly the requested interface wins, otherwise the
+ * only assignable implementation is used. Constructors are chosen the same way
+ * too. @Inject fields must be reachable from the generated class, private ones
+ * need a setter called set followed by the capitalized field name.
+ * Initialization hooks are called once a service is wired, after the hooks of
+ * the services it depends on.
+ *
+ * Every mistake the runtime builder would throw for at build() is reported as
+ * a compile error instead, and so is an @Inject field no service is
+ * registered for, which would otherwise be left null.
+ *
+ * @author Hannu Korvala
+ */
+@SupportedAnnotationTypes("com.korvala.dependencyinjection.GenerateContext")
+public class ContextProcessor extends AbstractProcessor {
+
+    /**
+     * Thrown while reading a GenerateContext, reported as a compile error on
+     * element
+     */
+    static final class ProcessingFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final transient Element element;
+
+        ProcessingFailure(final String message, final Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateContext.class)) {
+            try {
+                generate((TypeElement) element);
+            } catch (ProcessingFailure e) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            }
+        }
+        return true;
+    }
+
+    private void generate(final TypeElement definition) {
+        GenerateContext annotation = definition.getAnnotation(GenerateContext.class);
+        PackageElement targetPackage = this.processingEnv.getElementUtils().getPackageOf(definition);
+        List<ServiceModel> services = readServices(definition, targetPackage);
+
+        for (ServiceModel service : services) {
+            resolveDependencies(service, services, targetPackage);
+            service.initializer = initializerOf(service.implementation, targetPackage);
+        }
+
+        ContextWriter writer = new ContextWriter(targetPackage.getQualifiedName().toString(), annotation.name(),
+                services, definition);
+        String source = writer.write();
+
+        String qualifiedName = targetPackage.isUnnamed() ? annotation.name()
+                : targetPackage.getQualifiedName() + "." + annotation.name();
+        try (Writer out = this.processingEnv.getFiler().createSourceFile(qualifiedName, definition).openWriter()) {
+            out.write(source);
+        } catch (IOException e) {
+            throw new ProcessingFailure("Could not write " + qualifiedName + ": " + e.getMessage(), definition);
+        }
+    }
+
+    /**
+     * Reads the registrations through annotation mirrors, the classes they refer
+     * to are not loaded while compiling
+     */
+    private List<ServiceModel> readServices(final TypeElement definition, final PackageElement targetPackage) {
+        List<ServiceModel> services = new ArrayList<>();
+        TypeMirror closeable = this.processingEnv.getElementUtils().getTypeElement(AutoCloseable.class.getName())
+                .asType();
+
+        for (AnnotationValue value : listValue(mirrorOf(definition), "services")) {
+            AnnotationMirror registration = (AnnotationMirror) value.getValue();
+            TypeElement serviceInterface = typeValue(registration, "service");
+            TypeElement implementation = typeValue(registration, "implementation");
+            ServiceLifetime lifetime = ServiceLifetime.valueOf(
+                    ((VariableElement) elementValue(registration, "lifetime").getValue()).getSimpleName().toString());
+
+            if (lifetime == ServiceLifetime.POOLED) {
+                throw new ProcessingFailure(implementation + " can not be pooled in a generated context, add it with"
+                        + " addPooled instead", definition);
+            }
+            if (serviceInterface.getKind() != ElementKind.INTERFACE) {
+                throw new ProcessingFailure(serviceInterface + " is not an interface", definition);
+            }
+            if (implementation.getKind() != ElementKind.CLASS
+                    || implementation.getModifiers().contains(Modifier.ABSTRACT)) {
+                throw new ProcessingFailure(implementation + " is not a concrete class", definition);
+            }
+            if (!types().isAssignable(implementation.asType(), serviceInterface.asType())) {
+                throw new ProcessingFailure(implementation + " does not implement " + serviceInterface, definition);
+            }
+            if (!isAccessible(implementation, targetPackage)) {
+                throw new ProcessingFailure(implementation + " is not accessible from " + targetPackage, definition);
+            }
+            for (ServiceModel service : services) {
+                if (service.serviceInterface.equals(serviceInterface)) {
+                    throw new ProcessingFailure("Service with interface " + serviceInterface
+                            + " has already been added", definition);
+                }
+            }
+
+            services.add(new ServiceModel(services.size(), serviceInterface, implementation, lifetime,
+                    types().isAssignable(implementation.asType(), closeable)));
+        }
+
+        return services;
+    }
+
+    private void resolveDependencies(final ServiceModel service, final List<ServiceModel> services,
+            final PackageElement targetPackage) {
+        ExecutableElement constructor = chooseConstructor(service.implementation, targetPackage);
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        service.constructorDependencies = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            requireInstanceInjection(parameters.get(i));
+            int dependency = resolve(parameters.get(i).asType(), services, parameters.get(i));
+            if (dependency < 0) {
+                throw new ProcessingFailure("No service registered for " + parameters.get(i).asType()
+                        + " required by the constructor of " + service.implementation, parameters.get(i));
+            }
+            service.constructorDependencies[i] = dependency;
+        }
+
+        service.fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(service.implementation.getEnclosedElements())) {
+            if (field.getAnnotation(Inject.class) == null) {
+                continue;
+            }
+
+            requireInstanceInjection(field);
+            int dependency = resolve(field.asType(), services, field);
+            if (dependency < 0) {
+                throw new ProcessingFailure("No service registered for " + field.asType() + " injected into field "
+                        + field.getSimpleName() + " of " + service.implementation, field);
+            }
+
+            String name = field.getSimpleName().toString();
+            if (isAccessible(field, targetPackage) && !field.getModifiers().contains(Modifier.FINAL)) {
+                service.fields.add(new ServiceModel.FieldInjection(name, null, dependency));
+            } else {
+                service.fields.add(new ServiceModel.FieldInjection(name,
+                        findSetter(service.implementation, field, targetPackage), dependency));
+            }
+        }
+    }
+
+    /**
+     * Provider, Lazy, List and array injection points are only supported by the
+     * runtime builder so far
+     */
+    private void requireInstanceInjection(final VariableElement injectionPoint) {
+        String type = types().erasure(injectionPoint.asType()).toString();
+        if (injectionPoint.asType().getKind() == TypeKind.ARRAY) {
+            throw new ProcessingFailure("Generated contexts can not inject arrays, use DependencyInjectionBuilder"
+                    + " for " + injectionPoint.getEnclosingElement(), injectionPoint);
+        }
+        if (type.equals(Provider.class.getName()) || type.equals(Lazy.class.getName())
+                || type.equals(List.class.getName())) {
+            throw new ProcessingFailure("Generated contexts can not inject " + type + ", use DependencyInjectionBuilder"
+                    + " for " + injectionPoint.getEnclosingElement(), injectionPoint);
+        }
+    }
+
+    /**
+     * Same hook as the runtime builder: an InitializingService or
+     * AsyncInitializingService method, or the @PostInject method declared by
+     * the class or its nearest superclass declaring one
+     *
+     * @return hook or null
+     */
+    private ServiceModel.Initializer initializerOf(final TypeElement implementation,
+            final PackageElement targetPackage) {
+        ExecutableElement annotated = null;
+        for (TypeElement type = implementation; type != null && annotated == null; type = superclassOf(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getAnnotation(PostInject.class) == null) {
+                    continue;
+                }
+                if (annotated != null) {
+                    throw new ProcessingFailure(type + " has more than one @PostInject method", method);
+                }
+                annotated = method;
+            }
+        }
+
+        String implemented = null;
+        boolean asynchronous = false;
+        if (implementsInterface(implementation, AsyncInitializingService.class)) {
+            implemented = "initializeAsync";
+            asynchronous = true;
+        }
+        if (implementsInterface(implementation, InitializingService.class)) {
+            if (implemented != null) {
+                throw new ProcessingFailure(implementation
+                        + " can not be both an InitializingService and an AsyncInitializingService", implementation);
+            }
+            implemented = "initialize";
+        }
+
+        if (implemented != null) {
+            if (annotated != null && !(annotated.getSimpleName().contentEquals(implemented)
+                    && annotated.getParameters().isEmpty())) {
+                throw new ProcessingFailure(implementation
+                        + " has both a @PostInject method and an initialization interface", annotated);
+            }
+            return new ServiceModel.Initializer(implemented, asynchronous);
+        }
+        if (annotated == null) {
+            return null;
+        }
+
+        if (!annotated.getParameters().isEmpty() || annotated.getModifiers().contains(Modifier.STATIC)) {
+            throw new ProcessingFailure("@PostInject method " + annotated + " must be an instance method without"
+                    + " parameters", annotated);
+        }
+        TypeMirror completionStage = types().erasure(this.processingEnv.getElementUtils()
+                .getTypeElement(CompletionStage.class.getName()).asType());
+        asynchronous = types().isAssignable(types().erasure(annotated.getReturnType()), completionStage);
+        if (!asynchronous && annotated.getReturnType().getKind() != TypeKind.VOID) {
+            throw new ProcessingFailure("@PostInject method " + annotated + " must return void or a CompletionStage",
+                    annotated);
+        }
+        if (!isAccessible(annotated, targetPackage)) {
+            throw new ProcessingFailure("@PostInject method " + annotated + " of " + implementation
+                    + " is not accessible from the generated context", annotated);
+        }
+        return new ServiceModel.Initializer(annotated.getSimpleName().toString(), asynchronous);
+    }
+
+    private TypeElement superclassOf(final TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types().asElement(superclass) : null;
+    }
+
+    private boolean implementsInterface(final TypeElement implementation, final Class<?> type) {
+        TypeMirror mirror = this.processingEnv.getElementUtils().getTypeElement(type.getName()).asType();
+        return types().isAssignable(implementation.asType(), mirror);
+    }
+
+    /**
+     * Same choice as the runtime builder: the @Inject constructor, the only
+     * public constructor, the public no argument constructor
+     */
+    private ExecutableElement chooseConstructor(final TypeElement implementation,
+            final PackageElement targetPackage) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(implementation.getEnclosedElements());
+        ExecutableElement chosen = null;
+
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getAnnotation(Inject.class) == null) {
+                continue;
+            }
+            if (chosen != null) {
+                throw new ProcessingFailure(implementation + " has more than one @Inject constructor", constructor);
+            }
+            chosen = constructor;
+        }
+
+        if (chosen == null) {
+            List<ExecutableElement> publicConstructors = new ArrayList<>();
+            for (ExecutableElement constructor : constructors) {
+                if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                    publicConstructors.add(constructor);
+                }
+            }
+            if (publicConstructors.size() == 1) {
+                chosen = publicConstructors.get(0);
+            } else {
+                for (ExecutableElement constructor : publicConstructors) {
+                    if (constructor.getParameters().isEmpty()) {
+                        chosen = constructor;
+                    }
+                }
+            }
+        }
+
+        if (chosen == null) {
+            throw new ProcessingFailure(implementation + " needs an @Inject constructor, a single public constructor"
+                    + " or a public no argument constructor", implementation);
+        }
+        if (!isAccessible(chosen, targetPackage)) {
+            throw new ProcessingFailure("Constructor of " + implementation + " is not accessible from "
+                    + targetPackage, chosen);
+        }
+        return chosen;
+    }
+
+    private String findSetter(final TypeElement implementation, final VariableElement field,
+            final PackageElement targetPackage) {
+        String name = field.getSimpleName().toString();
+        String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(implementation.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(setter) && method.getParameters().size() == 1
+                    && isAccessible(method, targetPackage)
+                    && types().isAssignable(field.asType(), method.getParameters().get(0).asType())) {
+                return setter;
+            }
+        }
+
+        throw new ProcessingFailure("@Inject field " + name + " of " + implementation
+                + " is not accessible from the generated context and has no " + setter + " method", field);
+    }
+
+    /**
+     * @return index of the registration satisfying type, -1 if there is none
+     */
+    private int resolve(final TypeMirror type, final List<ServiceModel> services, final Element injectionPoint) {
+        TypeMirror erasure = types().erasure(type);
+        for (ServiceModel service : services) {
+            if (types().isSameType(types().erasure(service.serviceInterface.asType()), erasure)) {
+                return service.index;
+            }
+        }
+
+        int found = -1;
+        for (ServiceModel service : services) {
+            if (!types().isAssignable(types().erasure(service.implementation.asType()), erasure)) {
+                continue;
+            }
+            if (found >= 0) {
+                throw new ProcessingFailure("Ambiguous dependency " + type + ", it is implemented by "
+                        + services.get(found).implementation + " and " + service.implementation, injectionPoint);
+            }
+            found = service.index;
+        }
+        return found;
+    }
+
+    private boolean isAccessible(final Element element, final PackageElement targetPackage) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        return this.processingEnv.getElementUtils().getPackageOf(element).equals(targetPackage);
+    }
+
+    private AnnotationMirror mirrorOf(final TypeElement definition) {
+        for (AnnotationMirror mirror : definition.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(GenerateContext.class.getName())) {
+                return mirror;
+            }
+        }
+        throw new ProcessingFailure("Missing @GenerateContext", definition);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends AnnotationValue> listValue(final AnnotationMirror mirror, final String name) {
+        return (List<? extends AnnotationValue>) elementValue(mirror, name).getValue();
+    }
+
+    private TypeElement typeValue(final AnnotationMirror mirror, final String name) {
+        return (TypeElement) ((DeclaredType) elementValue(mirror, name).getValue()).asElement();
+    }
+
+    private AnnotationValue elementValue(final AnnotationMirror mirror, final String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = this.processingEnv.getElementUtils()
+                .getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        throw new IllegalStateException("Annotation value " + name + " is missing");
+    }
+
+    private Types types() {
+        return this.processingEnv.getTypeUtils();
+    }
+}
@@ -0,0 +1,560 @@
+package com.korvala.dependencyinjection.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+
+import com.korvala.dependencyinjection.ServiceLifetime;
+import com.korvala.dependencyinjection.processor.ContextProcessor.ProcessingFailure;
+
+/**
+ * ContextWriter: writes the source of a generated DependencyInjectionContext
+ *
+ * Singletons become final fields created in the constructor in dependency
+ * order and wired afterwards, then initialized with the services they depend
+ * on first. Transient services become factory methods and scoped services
+ * become lazily filled fields of the generated scope, both initialized before
+ * they are handed out. A generated context holds one implementation per
+ * interface, so getServices returns a List of that one or an empty List. The
+ * ambient scope of runInScope is a ThreadLocal of the generated context, as
+ * generated code can not rely on the JDK it is compiled for having
+ * ScopedValue.
+ *
+ * @author Hannu Korvala
+ */
+final class ContextWriter {
+
+    private static final String CONTEXT = "com.korvala.dependencyinjection.abstractions.DependencyInjectionContext";
+    private static final String SCOPE = "com.korvala.dependencyinjection.abstractions.DependencyInjectionScope";
+
+    private final String packageName;
+    private final String name;
+    private final List<ServiceModel> services;
+    private final Element definition;
+    private final StringBuilder out = new StringBuilder();
+
+    ContextWriter(final String packageName, final String name, final List<ServiceModel> services,
+            final Element definition) {
+        this.packageName = packageName;
+        this.name = name;
+        this.services = services;
+        this.definition = definition;
+    }
+
+    /**
+     * @return source of the generated context
+     * @throws ProcessingFailure if the services can not be created in any order
+     */
+    String write() {
+        List<ServiceModel> singletons = singletonsInConstructionOrder();
+        checkTransientCycles();
+
+        if (!this.packageName.isEmpty()) {
+            line(0, "package " + this.packageName + ";");
+            line(0, "");
+        }
+        line(0, "@javax.annotation.processing.Generated(\"" + ContextProcessor.class.getName() + "\")");
+        line(0, "public final class " + this.name + " implements " + CONTEXT + " {");
+
+        for (ServiceModel service : singletons) {
+            line(1, "private final " + service.implementationName() + " service" + service.index + ";");
+        }
+        line(1, "private final ThreadLocal<Scope> ambientScope = new ThreadLocal<>();");
+        line(0, "");
+
+        line(1, "public " + this.name + "() {");
+        for (ServiceModel service : singletons) {
+            line(2, "this.service" + service.index + " = " + construction(service, "null") + ";");
+        }
+        for (ServiceModel service : singletons) {
+            for (ServiceModel.FieldInjection field : service.fields) {
+                line(2, assignment("this.service" + service.index, field, "null"));
+            }
+        }
+        for (ServiceModel service : singletonsInInitializationOrder(singletons)) {
+            if (service.initializer != null) {
+                line(2, "initialize" + service.index + "(this.service" + service.index + ");");
+            }
+        }
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "@SuppressWarnings(\"unchecked\")");
+        line(1, "public <T> T getService(final Class<T> serviceInterface) {");
+        line(2, "if (serviceInterface == null) {");
+        line(3, "throw new IllegalArgumentException(\"Service interface can not be null\");");
+        line(2, "}");
+        line(2, "return (T) resolve(serviceInterface, null);");
+        line(1, "}");
+        line(0, "");
+
+        writeGetServices(1, "null");
+
+        line(1, "@Override");
+        line(1, "public " + SCOPE + " createScope() {");
+        line(2, "return new Scope();");
+        line(1, "}");
+        line(0, "");
+
+        writeAmbientScope();
+
+        line(1, "private Object resolve(final Class<?> serviceInterface, final Scope scope) {");
+        for (ServiceModel service : this.services) {
+            line(2, "if (serviceInterface == " + service.interfaceName() + ".class) {");
+            line(3, "return " + expression(service.index, "scope") + ";");
+            line(2, "}");
+        }
+        line(2, "return null;");
+        line(1, "}");
+
+        for (ServiceModel service : this.services) {
+            if (service.lifetime == ServiceLifetime.TRANSIENT) {
+                writeTransientFactory(service);
+            }
+        }
+        for (ServiceModel service : this.services) {
+            if (service.initializer != null) {
+                writeInitializer(service);
+            }
+        }
+        line(0, "");
+
+        line(1, "private Scope requireScope(final Scope scope, final String service) {");
+        line(2, "Scope resolving = scope == null ? this.ambientScope.get() : scope;");
+        line(2, "if (resolving == null) {");
+        line(3, "throw new IllegalStateException(\"Scoped service \" + service + \" can only be resolved from a"
+                + " scope or within runInScope\");");
+        line(2, "}");
+        line(2, "return resolving;");
+        line(1, "}");
+        line(0, "");
+
+        writeScope();
+        line(0, "}");
+        return this.out.toString();
+    }
+
+    private void writeGetServices(final int indent, final String scope) {
+        line(indent, "@Override");
+        line(indent, "@SuppressWarnings(\"unchecked\")");
+        line(indent, "public <T> java.util.List<T> getServices(final Class<T> serviceInterface) {");
+        line(indent + 1, "if (serviceInterface == null) {");
+        line(indent + 2, "throw new IllegalArgumentException(\"Service interface can not be null\");");
+        line(indent + 1, "}");
+        line(indent + 1, "Object service = resolve(serviceInterface, " + scope + ");");
+        line(indent + 1, "return service == null ? java.util.List.of() : java.util.List.of((T) service);");
+        line(indent, "}");
+        line(0, "");
+    }
+
+    /**
+     * Writes runInScope and callInScope, which bind a new scope to the running
+     * thread and restore the previous binding before closing it
+     */
+    private void writeAmbientScope() {
+        line(1, "@Override");
+        line(1, "public void runInScope(final Runnable action) {");
+        line(2, "if (action == null) {");
+        line(3, "throw new IllegalArgumentException(\"Action can not be null\");");
+        line(2, "}");
+        line(2, "inAmbientScope(() -> {");
+        line(3, "action.run();");
+        line(3, "return null;");
+        line(2, "});");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public <T> T callInScope(final java.util.concurrent.Callable<T> action) throws Exception {");
+        line(2, "if (action == null) {");
+        line(3, "throw new IllegalArgumentException(\"Action can not be null\");");
+        line(2, "}");
+        line(2, "return inAmbientScope(action::call);");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "private <T, E extends Exception> T inAmbientScope(final ScopedCall<T, E> action) throws E {");
+        line(2, "Scope previous = this.ambientScope.get();");
+        line(2, "try (Scope scope = new Scope()) {");
+        line(3, "this.ambientScope.set(scope);");
+        line(3, "try {");
+        line(4, "return action.call();");
+        line(3, "} finally {");
+        line(4, "if (previous == null) {");
+        line(5, "this.ambientScope.remove();");
+        line(4, "} else {");
+        line(5, "this.ambientScope.set(previous);");
+        line(4, "}");
+        line(3, "}");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@FunctionalInterface");
+        line(1, "private interface ScopedCall<T, E extends Exception> {");
+        line(2, "T call() throws E;");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeTransientFactory(final ServiceModel service) {
+        line(0, "");
+        line(1, "private " + service.implementationName() + " create" + service.index + "(final Scope scope) {");
+        line(2, service.implementationName() + " instance = " + construction(service, "scope") + ";");
+        if (service.closeable) {
+            line(2, "if (scope != null) {");
+            line(3, "scope.track(instance);");
+            line(2, "}");
+        }
+        for (ServiceModel.FieldInjection field : service.fields) {
+            line(2, assignment("instance", field, "scope"));
+        }
+        if (service.initializer != null) {
+            line(2, "initialize" + service.index + "(instance);");
+        }
+        line(2, "return instance;");
+        line(1, "}");
+    }
+
+    /**
+     * Writes the call of the initialization hook of a service, waiting for the
+     * stage of an asynchronous one. Failures surface like they do from the
+     * runtime builder
+     */
+    private void writeInitializer(final ServiceModel service) {
+        String call = "instance." + service.initializer.method() + "()";
+        String failure = "\"Initializing " + service.implementationName() + " failed\"";
+        line(0, "");
+        line(1, "private static void initialize" + service.index + "(final " + service.implementationName()
+                + " instance) {");
+        line(2, "try {");
+        if (service.initializer.asynchronous()) {
+            line(3, "java.util.concurrent.CompletionStage<?> stage = " + call + ";");
+            line(3, "if (stage == null) {");
+            line(4, "throw new IllegalStateException(\"" + service.implementationName()
+                    + " returned no CompletionStage to wait for\");");
+            line(3, "}");
+            line(3, "stage.toCompletableFuture().join();");
+            line(2, "} catch (java.util.concurrent.CompletionException e) {");
+            line(3, "Throwable cause = e.getCause() == null ? e : e.getCause();");
+            line(3, "if (cause instanceof RuntimeException) {");
+            line(4, "throw (RuntimeException) cause;");
+            line(3, "}");
+            line(3, "if (cause instanceof Error) {");
+            line(4, "throw (Error) cause;");
+            line(3, "}");
+            line(3, "throw new IllegalStateException(" + failure + ", cause);");
+        } else {
+            line(3, call + ";");
+        }
+        line(2, "} catch (RuntimeException | Error e) {");
+        line(3, "throw e;");
+        line(2, "} catch (Exception e) {");
+        line(3, "throw new IllegalStateException(" + failure + ", e);");
+        line(2, "}");
+        line(1, "}");
+    }
+
+    private void writeScope() {
+        line(1, "private final class Scope implements " + SCOPE + " {");
+        for (ServiceModel service : this.services) {
+            if (service.lifetime == ServiceLifetime.SCOPED) {
+                line(2, "private " + service.implementationName() + " scoped" + service.index + ";");
+            }
+        }
+        line(2, "private AutoCloseable[] disposables;");
+        line(2, "private int disposableCount;");
+        line(2, "private boolean closed;");
+        line(0, "");
+
+        line(2, "@Override");
+        line(2, "@SuppressWarnings(\"unchecked\")");
+        line(2, "public <T> T getService(final Class<T> serviceInterface) {");
+        line(3, "if (serviceInterface == null) {");
+        line(4, "throw new IllegalArgumentException(\"Service interface can not be null\");");
+        line(3, "}");
+        line(3, "if (this.closed) {");
+        line(4, "throw new IllegalStateException(\"Scope has been closed\");");
+        line(3, "}");
+        line(3, "return (T) resolve(serviceInterface, this);");
+        line(2, "}");
+        line(0, "");
+
+        writeGetServices(2, "this");
+
+        line(2, "@Override");
+        line(2, "public " + SCOPE + " createScope() {");
+        line(3, "return new Scope();");
+        line(2, "}");
+        line(0, "");
+
+        line(2, "@Override");
+        line(2, "public void runInScope(final Runnable action) {");
+        line(3, this.name + ".this.runInScope(action);");
+        line(2, "}");
+        line(0, "");
+
+        line(2, "@Override");
+        line(2, "public <T> T callInScope(final java.util.concurrent.Callable<T> action) throws Exception {");
+        line(3, "return " + this.name + ".this.callInScope(action);");
+        line(2, "}");
+        line(0, "");
+
+        line(2, "@Override");
+        line(2, "public void close() {");
+        line(3, "if (this.closed) {");
+        line(4, "return;");
+        line(3, "}");
+        line(3, "this.closed = true;");
+        line(3, "IllegalStateException failure = null;");
+        line(3, "for (int i = this.disposableCount - 1; i >= 0; i--) {");
+        line(4, "try {");
+        line(5, "this.disposables[i].close();");
+        line(4, "} catch (Exception e) {");
+        line(5, "if (failure == null) {");
+        line(6, "failure = new IllegalStateException(\"Closing scoped services failed\");");
+        line(5, "}");
+        line(5, "failure.addSuppressed(e);");
+        line(4, "}");
+        line(3, "}");
+        line(3, "this.disposables = null;");
+        line(3, "this.disposableCount = 0;");
+        line(3, "if (failure != null) {");
+        line(4, "throw failure;");
+        line(3, "}");
+        line(2, "}");
+        line(0, "");
+
+        line(2, "private void track(final AutoCloseable disposable) {");
+        line(3, "if (this.disposables == null) {");
+        line(4, "this.disposables = new AutoCloseable[4];");
+        line(3, "} else if (this.disposableCount == this.disposables.length) {");
+        line(4, "this.disposables = java.util.Arrays.copyOf(this.disposables, this.disposableCount * 2);");
+        line(3, "}");
+        line(3, "this.disposables[this.disposableCount++] = disposable;");
+        line(2, "}");
+
+        for (ServiceModel service : this.services) {
+            if (service.lifetime != ServiceLifetime.SCOPED) {
+                continue;
+            }
+            line(0, "");
+            line(2, "private " + service.implementationName() + " scoped" + service.index + "() {");
+            line(3, "if (this.scoped" + service.index + " == null) {");
+            line(4, service.implementationName() + " instance = " + construction(service, "this") + ";");
+            line(4, "this.scoped" + service.index + " = instance;");
+            if (service.closeable) {
+                line(4, "track(instance);");
+            }
+            for (ServiceModel.FieldInjection field : service.fields) {
+                line(4, assignment("instance", field, "this"));
+            }
+            if (service.initializer != null) {
+                line(4, "initialize" + service.index + "(instance);");
+            }
+            line(3, "}");
+            line(3, "return this.scoped" + service.index + ";");
+            line(2, "}");
+        }
+        line(1, "}");
+    }
+
+    private String construction(final ServiceModel service, final String scope) {
+        StringBuilder arguments = new StringBuilder();
+        for (int dependency : service.constructorDependencies) {
+            if (arguments.length() > 0) {
+                arguments.append(", ");
+            }
+            arguments.append(expression(dependency, scope));
+        }
+        return "new " + service.implementationName() + "(" + arguments + ")";
+    }
+
+    private String assignment(final String target, final ServiceModel.FieldInjection field, final String scope) {
+        String value = expression(field.dependency(), scope);
+        if (field.setter() == null) {
+            return target + "." + field.name() + " = " + value + ";";
+        }
+        return target + "." + field.setter() + "(" + value + ");";
+    }
+
+    /**
+     * @return expression evaluating to the instance of a service
+     */
+    private String expression(final int dependency, final String scope) {
+        ServiceModel service = this.services.get(dependency);
+        switch (service.lifetime) {
+            case SINGLETON:
+                return this.name + ".this.service" + dependency;
+            case SCOPED:
+                return "requireScope(" + scope + ", \"" + service.implementationName() + "\").scoped" + dependency
+                        + "()";
+            default:
+                return this.name + ".this.create" + dependency + "(" + scope + ")";
+        }
+    }
+
+    /**
+     * Orders singletons so that everything their constructors need, directly or
+     * through transient services, exists before them
+     *
+     * @throws ProcessingFailure on constructor cycles and singletons that capture
+     *                           scoped services
+     */
+    private List<ServiceModel> singletonsInConstructionOrder() {
+        List<ServiceModel> order = new ArrayList<>();
+        byte[] state = new byte[this.services.size()];
+
+        for (ServiceModel service : this.services) {
+            if (service.lifetime != ServiceLifetime.SINGLETON) {
+                continue;
+            }
+            visitSingleton(service, state, order);
+            for (ServiceModel.FieldInjection field : service.fields) {
+                checkNotScoped(service, field.dependency(), new boolean[this.services.size()]);
+            }
+        }
+        return order;
+    }
+
+    private void visitSingleton(final ServiceModel service, final byte[] state, final List<ServiceModel> order) {
+        if (state[service.index] == 2) {
+            return;
+        }
+        if (state[service.index] == 1) {
+            throw new ProcessingFailure("Circular constructor dependency through " + service.implementation,
+                    this.definition);
+        }
+        state[service.index] = 1;
+
+        for (int dependency : service.constructorDependencies) {
+            visitConstructionDependency(service, dependency, state, order);
+        }
+
+        state[service.index] = 2;
+        order.add(service);
+    }
+
+    private void visitConstructionDependency(final ServiceModel singleton, final int dependency,
+            final byte[] state, final List<ServiceModel> order) {
+        ServiceModel service = this.services.get(dependency);
+        switch (service.lifetime) {
+            case SINGLETON:
+                visitSingleton(service, state, order);
+                break;
+            case SCOPED:
+                throw new ProcessingFailure("Singleton " + singleton.implementation
+                        + " can not depend on scoped service " + service.implementation, this.definition);
+            default:
+                if (state[service.index] == 1) {
+                    throw new ProcessingFailure("Circular constructor dependency through " + service.implementation,
+                            this.definition);
+                }
+                state[service.index] = 1;
+                for (int transitive : service.constructorDependencies) {
+                    visitConstructionDependency(singleton, transitive, state, order);
+                }
+                for (ServiceModel.FieldInjection field : service.fields) {
+                    visitConstructionDependency(singleton, field.dependency(), state, order);
+                }
+                state[service.index] = 0;
+        }
+    }
+
+    /**
+     * Orders singletons so that the hooks of the singletons each one depends on,
+     * directly or through transient services, run before its own, unless they
+     * depend on each other in a cycle
+     */
+    private List<ServiceModel> singletonsInInitializationOrder(final List<ServiceModel> singletons) {
+        List<ServiceModel> order = new ArrayList<>();
+        boolean[] visited = new boolean[this.services.size()];
+        for (ServiceModel service : singletons) {
+            visitInitialization(service, visited, order);
+        }
+        return order;
+    }
+
+    private void visitInitialization(final ServiceModel service, final boolean[] visited,
+            final List<ServiceModel> order) {
+        if (visited[service.index]) {
+            return;
+        }
+        visited[service.index] = true;
+
+        for (int dependency : service.constructorDependencies) {
+            visitInitialization(this.services.get(dependency), visited, order);
+        }
+        for (ServiceModel.FieldInjection field : service.fields) {
+            visitInitialization(this.services.get(field.dependency()), visited, order);
+        }
+        if (service.lifetime == ServiceLifetime.SINGLETON) {
+            order.add(service);
+        }
+    }
+
+    private void checkNotScoped(final ServiceModel singleton, final int dependency, final boolean[] visited) {
+        ServiceModel service = this.services.get(dependency);
+        if (visited[dependency]) {
+            return;
+        }
+        visited[dependency] = true;
+
+        if (service.lifetime == ServiceLifetime.SCOPED) {
+            throw new ProcessingFailure("Singleton " + singleton.implementation + " can not depend on scoped service "
+                    + service.implementation, this.definition);
+        }
+        if (service.lifetime == ServiceLifetime.TRANSIENT) {
+            for (int transitive : service.constructorDependencies) {
+                checkNotScoped(singleton, transitive, visited);
+            }
+            for (ServiceModel.FieldInjection field : service.fields) {
+                checkNotScoped(singleton, field.dependency(), visited);
+            }
+        }
+    }
+
+    /**
+     * Transient services are created again for every injection, so they can not
+     * depend on each other in a cycle. Constructor cycles between scoped services
+     * are rejected here as well
+     */
+    private void checkTransientCycles() {
+        byte[] state = new byte[this.services.size()];
+        for (ServiceModel service : this.services) {
+            visitCreation(service, state);
+        }
+    }
+
+    private void visitCreation(final ServiceModel service, final byte[] state) {
+        if (state[service.index] == 2 || service.lifetime == ServiceLifetime.SINGLETON) {
+            return;
+        }
+        if (state[service.index] == 1) {
+            throw new ProcessingFailure("Circular dependency through " + service.implementation, this.definition);
+        }
+        state[service.index] = 1;
+
+        for (int dependency : service.constructorDependencies) {
+            visitCreation(this.services.get(dependency), state);
+        }
+        if (service.lifetime == ServiceLifetime.TRANSIENT) {
+            for (ServiceModel.FieldInjection field : service.fields) {
+                ServiceModel dependency = this.services.get(field.dependency());
+                if (dependency.lifetime == ServiceLifetime.TRANSIENT) {
+                    visitCreation(dependency, state);
+                }
+            }
+        }
+        state[service.index] = 2;
+    }
+
+    private void line(final int indent, final String text) {
+        if (!text.isEmpty()) {
+            this.out.append("    ".repeat(indent)).append(text);
+        }
+        this.out.append('\n');
+    }
+}
@@ -0,0 +1,185 @@
+package com.korvala.dependencyinjection.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.korvala.dependencyinjection.Service;
+import com.korvala.dependencyinjection.ServiceLifetime;
+
+/**
+ * ServiceIndexProcessor: lists the classes annotated with @Service in the
+ * service index of the module, which DependencyInjectionBuilder.addIndexed
+ * reads instead of scanning the class path
+ *
+ * The index is written once every round has been processed, sorted by
+ * implementation so that the same sources always produce the same file. An
+ * incremental compilation only sees the changed sources, so the entries of
+ * the index already in the output directory are kept as long as their class
+ * still exists and is still annotated.
+ *
+ * @author Hannu Korvala
+ */
+@SupportedAnnotationTypes("com.korvala.dependencyinjection.Service")
+public class ServiceIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Index lines of the classes annotated in this compilation by the binary
+     * name of the implementation, and the implementation indexed for every
+     * interface
+     */
+    private final Map<String, String> entries = new TreeMap<>();
+    private final Map<String, String> implementations = new HashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Service.class)) {
+            index((TypeElement) element);
+        }
+        if (roundEnv.processingOver() && !this.entries.isEmpty()) {
+            write();
+        }
+        return true;
+    }
+
+    private void index(final TypeElement implementation) {
+        AnnotationMirror mirror = mirrorOf(implementation);
+        TypeElement serviceInterface = (TypeElement) ((DeclaredType) elementValue(mirror, "value").getValue())
+                .asElement();
+        ServiceLifetime lifetime = ServiceLifetime.valueOf(
+                ((VariableElement) elementValue(mirror, "lifetime").getValue()).getSimpleName().toString());
+
+        if (implementation.getKind() != ElementKind.CLASS
+                || implementation.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(implementation + " is not a concrete class", implementation);
+            return;
+        }
+        if (serviceInterface.getKind() != ElementKind.INTERFACE) {
+            error(serviceInterface + " is not an interface", implementation);
+            return;
+        }
+        if (!types().isAssignable(types().erasure(implementation.asType()),
+                types().erasure(serviceInterface.asType()))) {
+            error(implementation + " does not implement " + serviceInterface, implementation);
+            return;
+        }
+        if (lifetime == ServiceLifetime.POOLED) {
+            error(implementation + " can not be indexed as pooled, add it with addPooled instead", implementation);
+            return;
+        }
+
+        String interfaceName = elements().getBinaryName(serviceInterface).toString();
+        String implementationName = elements().getBinaryName(implementation).toString();
+        String indexed = this.implementations.putIfAbsent(interfaceName, implementationName);
+        if (indexed != null && !indexed.equals(implementationName)) {
+            error(serviceInterface + " is already indexed for " + indexed, implementation);
+            return;
+        }
+        this.entries.put(implementationName, interfaceName + " " + implementationName + " " + lifetime);
+    }
+
+    /**
+     * Writes the entries of this compilation merged with the entries of the
+     * previous index that are still annotated
+     */
+    private void write() {
+        Map<String, String> merged = new TreeMap<>(this.entries);
+        try {
+            FileObject previous = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    Service.INDEX);
+            try (BufferedReader reader = new BufferedReader(previous.openReader(true))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 2 || fields[0].startsWith("#") || merged.containsKey(fields[1])) {
+                        continue;
+                    }
+                    TypeElement type = elements().getTypeElement(fields[1].replace('$', '.'));
+                    if (type != null && mirrorOf(type) != null) {
+                        merged.put(fields[1], line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no index of an earlier compilation
+        }
+
+        try {
+            FileObject index = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    Service.INDEX);
+            try (Writer out = index.openWriter()) {
+                out.write("# Classes annotated with @Service: interface, implementation, lifetime\n");
+                for (String line : merged.values()) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + Service.INDEX + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the @Service annotation of type or null
+     */
+    private AnnotationMirror mirrorOf(final TypeElement type) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(Service.class.getName())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue elementValue(final AnnotationMirror mirror, final String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements()
+                .getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        throw new IllegalStateException("Annotation value " + name + " is missing");
+    }
+
+    private void error(final String message, final Element element) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private Elements elements() {
+        return this.processingEnv.getElementUtils();
+    }
+
+    private Types types() {
+        return this.processingEnv.getTypeUtils();
+    }
+}
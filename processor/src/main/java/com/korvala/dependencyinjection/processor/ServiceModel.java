@@ -0,0 +1,62 @@
+package com.korvala.dependencyinjection.processor;
+
+import java.util.List;
+
+import javax.lang.model.element.TypeElement;
+
+import com.korvala.dependencyinjection.ServiceLifetime;
+
+/**
+ * ServiceModel: one registration of a GenerateContext with its dependencies
+ * resolved at compile time
+ *
+ * @author Hannu Korvala
+ */
+final class ServiceModel {
+
+    /**
+     * Record of an @Inject field: either assigned directly or through its setter
+     */
+    record FieldInjection(String name, String setter, int dependency) {
+    }
+
+    /**
+     * Record of the initialization hook: asynchronous hooks return a
+     * CompletionStage the generated context waits for
+     */
+    record Initializer(String method, boolean asynchronous) {
+    }
+
+    final int index;
+    final TypeElement serviceInterface;
+    final TypeElement implementation;
+    final ServiceLifetime lifetime;
+    final boolean closeable;
+
+    int[] constructorDependencies;
+    List<FieldInjection> fields;
+    Initializer initializer;
+
+    ServiceModel(final int index, final TypeElement serviceInterface, final TypeElement implementation,
+            final ServiceLifetime lifetime, final boolean closeable) {
+        this.index = index;
+        this.serviceInterface = serviceInterface;
+        this.implementation = implementation;
+        this.lifetime = lifetime;
+        this.closeable = closeable;
+    }
+
+    /**
+     * @return name used in generated code for the type of the implementation
+     */
+    String implementationName() {
+        return this.implementation.getQualifiedName().toString();
+    }
+
+    /**
+     * @return name used in generated code for the interface
+     */
+    String interfaceName() {
+        return this.serviceInterface.getQualifiedName().toString();
+    }
+}
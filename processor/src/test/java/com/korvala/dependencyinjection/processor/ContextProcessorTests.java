@@ -0,0 +1,433 @@
+package com.korvala.dependencyinjection.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionScope;
+
+public class ContextProcessorTests {
+
+    private static final Map<String, String> SERVICES = Map.of(
+            "sample/IGreeter.java", """
+                    package sample;
+                    public interface IGreeter { String greet(); }
+                    """,
+            "sample/Greeter.java", """
+                    package sample;
+                    import com.korvala.dependencyinjection.Inject;
+                    public class Greeter implements IGreeter {
+                        @Inject
+                        private IName name;
+                        @Inject
+                        IPunctuation punctuation;
+                        public void setName(IName name) { this.name = name; }
+                        public String greet() { return "Hello " + name.name() + punctuation.mark(); }
+                    }
+                    """,
+            "sample/IName.java", """
+                    package sample;
+                    public interface IName { String name(); }
+                    """,
+            "sample/Name.java", """
+                    package sample;
+                    public class Name implements IName {
+                        private final IPunctuation punctuation;
+                        public Name(IPunctuation punctuation) { this.punctuation = punctuation; }
+                        public String name() { return "World" + punctuation.mark().length(); }
+                    }
+                    """,
+            "sample/IPunctuation.java", """
+                    package sample;
+                    public interface IPunctuation { String mark(); }
+                    """,
+            "sample/Punctuation.java", """
+                    package sample;
+                    public class Punctuation implements IPunctuation {
+                        public String mark() { return "!"; }
+                    }
+                    """,
+            "sample/IRequest.java", """
+                    package sample;
+                    public interface IRequest { boolean isClosed(); }
+                    """,
+            "sample/Request.java", """
+                    package sample;
+                    public class Request implements IRequest, AutoCloseable {
+                        private boolean closed;
+                        public boolean isClosed() { return closed; }
+                        public void close() { closed = true; }
+                    }
+                    """);
+
+    @Test
+    public void generatedContextShouldWireServices() throws Exception {
+        var context = compileAndCreate("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IGreeter.class, implementation = Greeter.class),
+                        @Registration(service = IName.class, implementation = Name.class,
+                                lifetime = ServiceLifetime.TRANSIENT),
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class),
+                        @Registration(service = IRequest.class, implementation = Request.class,
+                                lifetime = ServiceLifetime.SCOPED)
+                })
+                public class SampleModule {
+                }
+                """);
+
+        Class<?> greeter = context.getClass().getClassLoader().loadClass("sample.IGreeter");
+        Object service = context.getService(greeter);
+        assertEquals("Hello World1!", greeter.getMethod("greet").invoke(service));
+        assertTrue(service == context.getService(greeter));
+
+        Class<?> name = context.getClass().getClassLoader().loadClass("sample.IName");
+        assertTrue(context.getService(name) != context.getService(name));
+        assertNull(context.getService(Runnable.class));
+
+        assertEquals(List.of(service), context.getServices(greeter));
+        assertEquals(List.of(), context.getServices(Runnable.class));
+    }
+
+    @Test
+    public void generatedScopeShouldDisposeScopedServices() throws Exception {
+        var context = compileAndCreate("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IRequest.class, implementation = Request.class,
+                                lifetime = ServiceLifetime.SCOPED)
+                })
+                public class SampleModule {
+                }
+                """);
+
+        Class<?> request = context.getClass().getClassLoader().loadClass("sample.IRequest");
+        Object service;
+        try (DependencyInjectionScope scope = context.createScope()) {
+            service = scope.getService(request);
+            assertTrue(service == scope.getService(request));
+            assertFalse((Boolean) request.getMethod("isClosed").invoke(service));
+        }
+        assertTrue((Boolean) request.getMethod("isClosed").invoke(service));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void generatedContextShouldNotResolveScopedServices() throws Exception {
+        var context = compileAndCreate("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IRequest.class, implementation = Request.class,
+                                lifetime = ServiceLifetime.SCOPED)
+                })
+                public class SampleModule {
+                }
+                """);
+
+        context.getService(context.getClass().getClassLoader().loadClass("sample.IRequest"));
+    }
+
+    @Test
+    public void generatedContextShouldResolveScopedServicesWithinRunInScope() throws Exception {
+        var context = compileAndCreate("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IRequest.class, implementation = Request.class,
+                                lifetime = ServiceLifetime.SCOPED)
+                })
+                public class SampleModule {
+                }
+                """);
+
+        Class<?> request = context.getClass().getClassLoader().loadClass("sample.IRequest");
+        Object[] services = new Object[2];
+        context.runInScope(() -> {
+            services[0] = context.getService(request);
+            assertTrue(services[0] == context.getService(request));
+        });
+        services[1] = context.callInScope(() -> context.getService(request));
+
+        assertTrue(services[0] != services[1]);
+        assertTrue((Boolean) request.getMethod("isClosed").invoke(services[0]));
+        assertTrue((Boolean) request.getMethod("isClosed").invoke(services[1]));
+        try {
+            context.getService(request);
+            fail("Scoped service should not resolve outside runInScope");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("within runInScope"));
+        }
+    }
+
+    @Test
+    public void generatedContextShouldInitializeServices() throws Exception {
+        var compilation = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = ILedger.class, implementation = Ledger.class),
+                        @Registration(service = IClock.class, implementation = Clock.class),
+                        @Registration(service = IJob.class, implementation = Job.class,
+                                lifetime = ServiceLifetime.TRANSIENT)
+                })
+                public class SampleModule {
+                }
+                """, Map.of("sample/IClock.java", """
+                package sample;
+                public interface IClock { boolean isReady(); }
+                """, "sample/Clock.java", """
+                package sample;
+                import com.korvala.dependencyinjection.InitializingService;
+                public class Clock implements IClock, InitializingService {
+                    private boolean ready;
+                    public boolean isReady() { return ready; }
+                    public void initialize() throws Exception { ready = true; }
+                }
+                """, "sample/ILedger.java", """
+                package sample;
+                public interface ILedger { boolean isReady(); }
+                """, "sample/Ledger.java", """
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                public class Ledger implements ILedger {
+                    @Inject
+                    IClock clock;
+                    private boolean ready;
+                    public boolean isReady() { return ready; }
+                    @PostInject
+                    void open() { ready = clock.isReady(); }
+                }
+                """, "sample/IJob.java", """
+                package sample;
+                public interface IJob { boolean isReady(); }
+                """, "sample/Job.java", """
+                package sample;
+                import java.util.concurrent.*;
+                import com.korvala.dependencyinjection.AsyncInitializingService;
+                public class Job implements IJob, AsyncInitializingService {
+                    private volatile boolean ready;
+                    public boolean isReady() { return ready; }
+                    public CompletionStage<?> initializeAsync() {
+                        return CompletableFuture.runAsync(() -> ready = true);
+                    }
+                }
+                """));
+        assertEquals("", compilation.errors);
+        var context = create(compilation);
+
+        for (String service : List.of("sample.IClock", "sample.ILedger", "sample.IJob")) {
+            Class<?> type = context.getClass().getClassLoader().loadClass(service);
+            assertTrue(service, (Boolean) type.getMethod("isReady").invoke(context.getService(type)));
+        }
+    }
+
+    @Test
+    public void severalInitializationHooksShouldFailCompilation() throws Exception {
+        var errors = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IPunctuation.class, implementation = Twice.class)
+                })
+                public class SampleModule {
+                }
+                """, Map.of("sample/Twice.java", """
+                package sample;
+                import com.korvala.dependencyinjection.PostInject;
+                public class Twice implements IPunctuation {
+                    public String mark() { return "!"; }
+                    @PostInject
+                    void first() { }
+                    @PostInject
+                    void second() { }
+                }
+                """)).errors;
+
+        assertTrue(errors, errors.contains("has more than one @PostInject method"));
+    }
+
+    @Test
+    public void inaccessibleFieldShouldFailCompilation() throws Exception {
+        var errors = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IGreeter.class, implementation = Hidden.class),
+                        @Registration(service = IName.class, implementation = Name.class),
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class)
+                })
+                public class SampleModule {
+                }
+                """, Map.of("sample/Hidden.java", """
+                package sample;
+                import com.korvala.dependencyinjection.Inject;
+                public class Hidden implements IGreeter {
+                    @Inject
+                    private IName name;
+                    public String greet() { return name.name(); }
+                }
+                """)).errors;
+
+        assertTrue(errors, errors.contains("has no setName method"));
+    }
+
+    @Test
+    public void collectionInjectionShouldFailCompilation() throws Exception {
+        String module = """
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IGreeter.class, implementation = Crowd.class),
+                        @Registration(service = IName.class, implementation = Name.class),
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class)
+                })
+                public class SampleModule {
+                }
+                """;
+
+        var errors = compile(module, Map.of("sample/Crowd.java", """
+                package sample;
+                import java.util.List;
+                import com.korvala.dependencyinjection.Inject;
+                public class Crowd implements IGreeter {
+                    @Inject
+                    List<IName> names;
+                    public String greet() { return names.toString(); }
+                }
+                """)).errors;
+        assertTrue(errors, errors.contains("can not inject java.util.List"));
+
+        errors = compile(module, Map.of("sample/Crowd.java", """
+                package sample;
+                public class Crowd implements IGreeter {
+                    private final IName[] names;
+                    public Crowd(IName[] names) { this.names = names; }
+                    public String greet() { return names[0].name(); }
+                }
+                """)).errors;
+        assertTrue(errors, errors.contains("can not inject arrays"));
+    }
+
+    @Test
+    public void unresolvedFieldShouldFailCompilation() throws Exception {
+        var errors = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IGreeter.class, implementation = Greeter.class),
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class)
+                })
+                public class SampleModule {
+                }
+                """, Map.of()).errors;
+
+        assertTrue(errors, errors.contains("No service registered for sample.IName injected into field name"));
+    }
+
+    @Test
+    public void singletonDependingOnScopedServiceShouldFailCompilation() throws Exception {
+        var errors = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IName.class, implementation = Name.class),
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class,
+                                lifetime = ServiceLifetime.SCOPED)
+                })
+                public class SampleModule {
+                }
+                """, Map.of()).errors;
+
+        assertTrue(errors, errors.contains("can not depend on scoped service"));
+    }
+
+    @Test
+    public void pooledServiceShouldFailCompilation() throws Exception {
+        var errors = compile("""
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @GenerateContext(name = "SampleContext", services = {
+                        @Registration(service = IPunctuation.class, implementation = Punctuation.class,
+                                lifetime = ServiceLifetime.POOLED)
+                })
+                public class SampleModule {
+                }
+                """, Map.of()).errors;
+
+        assertTrue(errors, errors.contains("can not be pooled in a generated context"));
+    }
+
+    private record Compilation(Path output, String errors) {
+    }
+
+    private DependencyInjectionContext compileAndCreate(final String module) throws Exception {
+        Compilation compilation = compile(module, Map.of());
+        assertEquals("", compilation.errors);
+        return create(compilation);
+    }
+
+    private DependencyInjectionContext create(final Compilation compilation) throws Exception {
+        URLClassLoader loader = new URLClassLoader(new URL[] { compilation.output.toUri().toURL() },
+                getClass().getClassLoader());
+        return (DependencyInjectionContext) loader.loadClass("sample.SampleContext").getConstructor().newInstance();
+    }
+
+    private Compilation compile(final String module, final Map<String, String> extraSources) throws IOException {
+        Path sources = Files.createTempDirectory("processor-sources");
+        Path output = Files.createTempDirectory("processor-output");
+
+        List<Path> files = new ArrayList<>();
+        for (var source : SERVICES.entrySet()) {
+            files.add(write(sources, source.getKey(), source.getValue()));
+        }
+        for (var source : extraSources.entrySet()) {
+            files.add(write(sources, source.getKey(), source.getValue()));
+        }
+        files.add(write(sources, "sample/SampleModule.java", module));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            var task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-d", output.toString(), "-classpath", System.getProperty("java.class.path")), null,
+                    fileManager.getJavaFileObjectsFromPaths(files));
+            task.setProcessors(List.of(new ContextProcessor()));
+            task.call();
+        }
+
+        StringBuilder errors = new StringBuilder();
+        diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == javax.tools.Diagnostic.Kind.ERROR)
+                .forEach(diagnostic -> errors.append(diagnostic.getMessage(null)).append('\n'));
+        return new Compilation(output, errors.toString());
+    }
+
+    private static Path write(final Path root, final String name, final String source) throws IOException {
+        Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        return file;
+    }
+}
@@ -0,0 +1,180 @@
+package com.korvala.dependencyinjection.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.Service;
+
+public class ServiceIndexProcessorTests {
+
+    private static final Map<String, String> SERVICES = Map.of(
+            "sample/IGreeter.java", """
+                    package sample;
+                    public interface IGreeter { String greet(); }
+                    """,
+            "sample/Greeter.java", """
+                    package sample;
+                    import com.korvala.dependencyinjection.*;
+                    @Service(IGreeter.class)
+                    public class Greeter implements IGreeter {
+                        @Inject
+                        private IName name;
+                        public String greet() { return "Hello " + name.name(); }
+                    }
+                    """,
+            "sample/IName.java", """
+                    package sample;
+                    public interface IName { String name(); }
+                    """);
+
+    private static final String NAME = """
+            package sample;
+            import com.korvala.dependencyinjection.*;
+            @Service(value = IName.class, lifetime = ServiceLifetime.TRANSIENT)
+            public class Name implements IName {
+                public String name() { return "World"; }
+            }
+            """;
+
+    @Test
+    public void annotatedClassesShouldBeIndexedAndRegistered() throws Exception {
+        Path output = Files.createTempDirectory("index-output");
+        assertEquals("", compile(Map.of("sample/Name.java", NAME), output));
+
+        assertEquals(List.of("sample.IGreeter sample.Greeter SINGLETON", "sample.IName sample.Name TRANSIENT"),
+                entriesOf(output));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toUri().toURL() },
+                getClass().getClassLoader())) {
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .addIndexed(loader)
+                    .build();
+            Class<?> greeter = loader.loadClass("sample.IGreeter");
+            assertEquals("Hello World", greeter.getMethod("greet").invoke(context.getService(greeter)));
+        }
+    }
+
+    @Test
+    public void incrementalCompilationShouldKeepEntriesOfUnchangedClasses() throws Exception {
+        Path output = Files.createTempDirectory("index-output");
+        assertEquals("", compile(Map.of(), output));
+
+        assertEquals("", compile(Map.of("sample/Name.java", NAME), output, "sample/Name.java"));
+
+        assertEquals(List.of("sample.IGreeter sample.Greeter SINGLETON", "sample.IName sample.Name TRANSIENT"),
+                entriesOf(output));
+    }
+
+    @Test
+    public void classNotImplementingInterfaceShouldFailCompilation() throws Exception {
+        var errors = compile(Map.of("sample/Name.java", """
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @Service(IGreeter.class)
+                public class Name implements IName {
+                    public String name() { return "World"; }
+                }
+                """), Files.createTempDirectory("index-output"));
+
+        assertTrue(errors, errors.contains("does not implement sample.IGreeter"));
+    }
+
+    @Test
+    public void pooledServiceShouldFailCompilation() throws Exception {
+        var errors = compile(Map.of("sample/Name.java", NAME.replace("TRANSIENT", "POOLED")),
+                Files.createTempDirectory("index-output"));
+
+        assertTrue(errors, errors.contains("can not be indexed as pooled"));
+    }
+
+    @Test
+    public void secondImplementationOfInterfaceShouldFailCompilation() throws Exception {
+        var errors = compile(Map.of("sample/Name.java", NAME, "sample/OtherGreeter.java", """
+                package sample;
+                import com.korvala.dependencyinjection.*;
+                @Service(IGreeter.class)
+                public class OtherGreeter implements IGreeter {
+                    public String greet() { return "Hi"; }
+                }
+                """), Files.createTempDirectory("index-output"));
+
+        assertTrue(errors, errors.contains("is already indexed for"));
+    }
+
+    private static List<String> entriesOf(final Path output) throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(output.resolve(Service.INDEX))) {
+            if (!line.startsWith("#")) {
+                entries.add(line);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Compiles the sample services and extraSources into output, or only the
+     * given files of them against the classes already in output
+     */
+    private String compile(final Map<String, String> extraSources, final Path output, final String... only)
+            throws IOException {
+        Path sources = Files.createTempDirectory("index-sources");
+
+        List<Path> files = new ArrayList<>();
+        for (var source : SERVICES.entrySet()) {
+            Path file = write(sources, source.getKey(), source.getValue());
+            if (only.length == 0) {
+                files.add(file);
+            }
+        }
+        for (var source : extraSources.entrySet()) {
+            Path file = write(sources, source.getKey(), source.getValue());
+            if (only.length == 0 || List.of(only).contains(source.getKey())) {
+                files.add(file);
+            }
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            var task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-d", output.toString(), "-classpath",
+                            System.getProperty("java.class.path") + File.pathSeparator + output),
+                    null, fileManager.getJavaFileObjectsFromPaths(files));
+            task.setProcessors(List.of(new ServiceIndexProcessor()));
+            task.call();
+        }
+
+        StringBuilder errors = new StringBuilder();
+        diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == javax.tools.Diagnostic.Kind.ERROR)
+                .forEach(diagnostic -> errors.append(diagnostic.getMessage(null)).append('\n'));
+        return errors.toString();
+    }
+
+    private static Path write(final Path root, final String name, final String source) throws IOException {
+        Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        return file;
+    }
+}
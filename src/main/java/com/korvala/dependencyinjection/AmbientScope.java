@@ -0,0 +1,129 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * AmbientScope: the scope bound to the running thread for the duration of
+ * Context.runInScope
+ *
+ * Where java.lang.ScopedValue is available the binding is a ScopedValue: it
+ * ends with the call that made it, leaves nothing behind on the thread and
+ * costs a virtual thread no ThreadLocal map, so a server running millions of
+ * them does not pay for one per request. ScopedValue is reached through
+ * method handles so the library still compiles and runs on JDK 17, where a
+ * ThreadLocal that is restored when the call returns takes its place.
+ *
+ * @author Hannu Korvala
+ */
+final class AmbientScope {
+
+    /**
+     * Binding of the ScopedValue: (ScopedValue, Object) Carrier, Carrier.run,
+     * ScopedValue.isBound and ScopedValue.get, all adapted to Object. Null when
+     * ScopedValue is not available
+     */
+    private static final Object SCOPED_VALUE;
+    private static final MethodHandle WHERE;
+    private static final MethodHandle RUN;
+    private static final MethodHandle IS_BOUND;
+    private static final MethodHandle GET;
+
+    private static final ThreadLocal<Object> FALLBACK;
+
+    static {
+        Object scopedValue = null;
+        MethodHandle where = null;
+        MethodHandle run = null;
+        MethodHandle isBound = null;
+        MethodHandle get = null;
+        try {
+            Class<?> type = Class.forName("java.lang.ScopedValue");
+            Class<?> carrier = Class.forName("java.lang.ScopedValue$Carrier");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            scopedValue = lookup.findStatic(type, "newInstance", MethodType.methodType(type)).invoke();
+            where = lookup.findStatic(type, "where", MethodType.methodType(carrier, type, Object.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class));
+            run = lookup.findVirtual(carrier, "run", MethodType.methodType(void.class, Runnable.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Runnable.class));
+            isBound = lookup.findVirtual(type, "isBound", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            get = lookup.findVirtual(type, "get", MethodType.methodType(Object.class))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (Throwable t) {
+            scopedValue = null;
+        }
+
+        SCOPED_VALUE = scopedValue;
+        WHERE = where;
+        RUN = run;
+        IS_BOUND = isBound;
+        GET = get;
+        FALLBACK = scopedValue == null ? new ThreadLocal<>() : null;
+    }
+
+    private AmbientScope() {
+    }
+
+    /**
+     * @return true if the binding is a ScopedValue, false if it is a
+     *         ThreadLocal
+     */
+    static boolean usesScopedValue() {
+        return SCOPED_VALUE != null;
+    }
+
+    /**
+     * @return scope bound to the running thread or null
+     */
+    static Object current() {
+        if (SCOPED_VALUE == null) {
+            return FALLBACK.get();
+        }
+        try {
+            return (boolean) IS_BOUND.invokeExact(SCOPED_VALUE) ? (Object) GET.invokeExact(SCOPED_VALUE) : null;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Reading the ambient scope failed", t);
+        }
+    }
+
+    /**
+     * Runs action with scope bound to the running thread, the binding in place
+     * before is restored when action returns or throws
+     *
+     * @param scope  scope to bind
+     * @param action code to run
+     */
+    static void runWith(final Object scope, final Runnable action) {
+        if (SCOPED_VALUE == null) {
+            Object previous = FALLBACK.get();
+            FALLBACK.set(scope);
+            try {
+                action.run();
+            } finally {
+                if (previous == null) {
+                    FALLBACK.remove();
+                } else {
+                    FALLBACK.set(previous);
+                }
+            }
+            return;
+        }
+
+        Object carrier;
+        try {
+            carrier = (Object) WHERE.invokeExact(SCOPED_VALUE, scope);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Binding the ambient scope failed", t);
+        }
+        try {
+            RUN.invokeExact(carrier, action);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Running in the ambient scope failed", t);
+        }
+    }
+}
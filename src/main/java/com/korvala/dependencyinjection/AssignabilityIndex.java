@@ -0,0 +1,70 @@
+package com.korvala.dependencyinjection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AssignabilityIndex: maps every supertype of the registered implementations
+ * to the ids of the registrations it can be assigned from
+ *
+ * The index is computed once per build from the cached supertypes in
+ * ClassMetadata, so resolving an injection point is a single lookup instead of
+ * an isInstance check against every registration.
+ *
+ * @author Hannu Korvala
+ */
+final class AssignabilityIndex {
+
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    private final Class<?>[] serviceClasses;
+    private final Map<Class<?>, int[]> candidates;
+
+    /**
+     * @param serviceClasses implementation classes in service id order
+     */
+    AssignabilityIndex(final Class<?>[] serviceClasses) {
+        this.serviceClasses = serviceClasses;
+
+        Map<Class<?>, List<Integer>> collected = new HashMap<>();
+        for (int id = 0; id < serviceClasses.length; id++) {
+            for (Class<?> supertype : ClassMetadata.of(serviceClasses[id]).supertypes()) {
+                collected.computeIfAbsent(supertype, key -> new ArrayList<>(1)).add(id);
+            }
+        }
+
+        this.candidates = new HashMap<>(collected.size() * 2);
+        collected.forEach((supertype, ids) -> this.candidates.put(supertype,
+                ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Finds the only registration assignable to type
+     *
+     * @param type type of the injection point
+     * @return id of the registration or ServiceIndex.MISSING if nothing matches
+     * @throws IllegalStateException if more than one registration matches
+     */
+    int resolve(final Class<?> type) {
+        int[] ids = this.candidates.getOrDefault(type, NO_CANDIDATES);
+        if (ids.length == 0) {
+            return ServiceIndex.MISSING;
+        }
+
+        if (ids.length > 1) {
+            StringBuilder matches = new StringBuilder();
+            for (int id : ids) {
+                if (matches.length() > 0) {
+                    matches.append(", ");
+                }
+                matches.append(this.serviceClasses[id].getName());
+            }
+            throw new IllegalStateException(
+                    "Ambiguous dependency " + type.getName() + ", it is implemented by " + matches);
+        }
+
+        return ids[0];
+    }
+}
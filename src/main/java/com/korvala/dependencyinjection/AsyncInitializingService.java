@@ -0,0 +1,23 @@
+package com.korvala.dependencyinjection;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * AsyncInitializingService: implemented by a service that initializes itself
+ * asynchronously, such as loading a model file on its own threads
+ *
+ * A context built with buildAsync starts every initialization as soon as the
+ * services the service depends on are ready and completes once every returned
+ * stage has completed. build() and services created after the build wait for
+ * the stage before the service is handed out.
+ *
+ * @author Hannu Korvala
+ */
+public interface AsyncInitializingService {
+
+    /**
+     * @return stage that completes when the service is ready to be used, or
+     *         completes exceptionally if it can not be used
+     */
+    CompletionStage<?> initializeAsync();
+}
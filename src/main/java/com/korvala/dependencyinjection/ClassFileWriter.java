@@ -0,0 +1,191 @@
+package com.korvala.dependencyinjection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClassFileWriter: the parts of a class file the generated hidden classes are
+ * made of
+ *
+ * Only what InterceptingClass and InjectingClass need is written: fields,
+ * methods of straight line code without stack map frames, and a static
+ * initializer copying MethodHandles from the class data into static final
+ * fields, where the JIT treats them as constants.
+ *
+ * @author Hannu Korvala
+ */
+final class ClassFileWriter {
+
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+    private static final String CLASS_DATA_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/Class;I)Ljava/lang/Object;";
+
+    private ClassFileWriter() {
+    }
+
+    static String internalName(final Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    static void writeMember(final DataOutputStream out, final int access, final int name, final int descriptor)
+            throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(0);
+    }
+
+    static void writeMethod(final DataOutputStream out, final ConstantPool pool, final int access,
+            final String name, final String descriptor, final Bytecode bytecode, final int maxStack,
+            final int maxLocals) throws IOException {
+        byte[] instructions = bytecode.toByteArray();
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + instructions.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(instructions.length);
+        out.write(instructions);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Writes the static initializer assigning element i of the class data, a
+     * List of MethodHandles, to the static field fields.get(i) of thisClass
+     */
+    static void writeClassDataInitializer(final DataOutputStream out, final ConstantPool pool, final int thisClass,
+            final List<String> fields) throws IOException {
+        int methodHandles = pool.classRef("java/lang/invoke/MethodHandles");
+        int lookupMethod = pool.memberRef(10, methodHandles, "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+        int classDataAt = pool.memberRef(10, methodHandles, "classDataAt", CLASS_DATA_DESCRIPTOR);
+        int methodHandle = pool.classRef(METHOD_HANDLE);
+        int defaultName = pool.string("_");
+
+        Bytecode initializer = new Bytecode();
+        for (int i = 0; i < fields.size(); i++) {
+            initializer.op(0xb8).u2(lookupMethod).op(0x13).u2(defaultName).op(0x13).u2(methodHandle);
+            initializer.op(0x11).u2(i).op(0xb8).u2(classDataAt).op(0xc0).u2(methodHandle);
+            initializer.op(0xb3).u2(pool.memberRef(9, thisClass, fields.get(i), METHOD_HANDLE_DESCRIPTOR));
+        }
+        initializer.op(0xb1);
+        writeMethod(out, pool, 0x0008, "<clinit>", "()V", initializer, 4, 0);
+    }
+
+    /**
+     * @param pool constant pool, complete once the body has been written
+     * @param body rest of the class file, from the access flags through the
+     *             attributes
+     * @return class file of a Java 17 class
+     */
+    static byte[] toClassFile(final ConstantPool pool, final ByteArrayOutputStream body) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(file);
+        header.writeInt(0xCAFEBABE);
+        header.writeShort(0);
+        header.writeShort(61);
+        pool.writeTo(header);
+        body.writeTo(header);
+        header.flush();
+        return file.toByteArray();
+    }
+
+    /**
+     * Constant pool entries, each written once
+     */
+    static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(this.bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(final String value) {
+            Integer existing = this.entries.get("U" + value);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                this.out.writeByte(1);
+                this.out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("U" + value);
+        }
+
+        int classRef(final String internalName) {
+            return reference("C" + internalName, 7, utf8(internalName), -1);
+        }
+
+        int string(final String value) {
+            return reference("S" + value, 8, utf8(value), -1);
+        }
+
+        /**
+         * @param tag 9 for a field, 10 for a class method, 11 for an interface
+         *            method
+         */
+        int memberRef(final int tag, final int owner, final String name, final String descriptor) {
+            int nameAndType = reference("N" + name + " " + descriptor, 12, utf8(name), utf8(descriptor));
+            return reference(tag + " " + owner + " " + nameAndType, tag, owner, nameAndType);
+        }
+
+        void writeTo(final DataOutputStream file) throws IOException {
+            this.out.flush();
+            file.writeShort(this.count);
+            this.bytes.writeTo(file);
+        }
+
+        private int reference(final String key, final int tag, final int first, final int second) {
+            Integer existing = this.entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                this.out.writeByte(tag);
+                this.out.writeShort(first);
+                if (second >= 0) {
+                    this.out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add(key);
+        }
+
+        private int add(final String key) {
+            this.entries.put(key, this.count);
+            return this.count++;
+        }
+    }
+
+    /**
+     * Instructions of one method
+     */
+    static final class Bytecode {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Bytecode op(final int value) {
+            this.bytes.write(value);
+            return this;
+        }
+
+        Bytecode u2(final int value) {
+            this.bytes.write(value >>> 8);
+            this.bytes.write(value);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.korvala.dependencyinjection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClassMetadata: everything the container reflects on a class, computed once
+ * per class and shared by every builder and context in the process
+ *
+ * The metadata is kept in a ClassValue, which stores it on the class itself.
+ * It only refers to the class, its supertypes and the types of its injection
+ * points, all of which are visible from the class' own loader, so the cache
+ * never keeps a redeployed class loader alive: the metadata is collected
+ * together with its class.
+ *
+ * @author Hannu Korvala
+ */
+final class ClassMetadata {
+
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<>() {
+        @Override
+        protected ClassMetadata computeValue(final Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final Class<?>[] interfaces;
+    private final Class<?>[] supertypes;
+
+    /**
+     * Compiled on first use, a class can be registered and checked without
+     * having a constructor the container could call. A race compiles the same
+     * plan twice, either copy is as good as the other
+     */
+    private volatile InjectionPlan plan;
+
+    private ClassMetadata(final Class<?> type) {
+        this.type = type;
+        this.interfaces = type.getInterfaces();
+        this.supertypes = collectSupertypes(type, this.interfaces);
+    }
+
+    /**
+     * @param type any class or interface
+     * @return cached metadata of type
+     */
+    static ClassMetadata of(final Class<?> type) {
+        return METADATA.get(type);
+    }
+
+    /**
+     * @return interfaces the class implements directly, not to be modified
+     */
+    Class<?>[] interfaces() {
+        return this.interfaces;
+    }
+
+    /**
+     * @return the class itself, its superclasses except Object and every
+     *         interface they implement directly or indirectly, not to be modified
+     */
+    Class<?>[] supertypes() {
+        return this.supertypes;
+    }
+
+    /**
+     * @return injection plan of the class, compiled on first use
+     * @throws IllegalStateException if no constructor can be chosen
+     */
+    InjectionPlan plan() {
+        InjectionPlan compiled = this.plan;
+        if (compiled == null) {
+            compiled = InjectionPlan.compile(this.type);
+            this.plan = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * @return injection plan of the class or null if it has not been compiled
+     *         or restored yet
+     */
+    InjectionPlan cachedPlan() {
+        return this.plan;
+    }
+
+    /**
+     * Caches a plan restored from a snapshot unless one has been cached already
+     */
+    void cachePlan(final InjectionPlan restored) {
+        if (this.plan == null) {
+            this.plan = restored;
+        }
+    }
+
+    /**
+     * Walks the hierarchy through the cached interfaces of every supertype, the
+     * metadata of type itself is still being computed
+     */
+    private static Class<?>[] collectSupertypes(final Class<?> type, final Class<?>[] interfaces) {
+        List<Class<?>> supertypes = new ArrayList<>();
+        List<Class<?>> pending = new ArrayList<>();
+        if (type != Object.class) {
+            supertypes.add(type);
+        }
+        pending.add(type.getSuperclass());
+        for (Class<?> implemented : interfaces) {
+            pending.add(implemented);
+        }
+
+        while (!pending.isEmpty()) {
+            Class<?> current = pending.remove(pending.size() - 1);
+            if (current == null || current == Object.class || supertypes.contains(current)) {
+                continue;
+            }
+            supertypes.add(current);
+            pending.add(current.getSuperclass());
+            for (Class<?> implemented : of(current).interfaces) {
+                pending.add(implemented);
+            }
+        }
+
+        return supertypes.toArray(new Class<?>[0]);
+    }
+}
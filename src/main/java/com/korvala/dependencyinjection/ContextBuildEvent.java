@@ -0,0 +1,26 @@
+package com.korvala.dependencyinjection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ContextBuildEvent: Flight Recorder event spanning build() of a context,
+ * including the creation of every eager singleton
+ *
+ * @author Hannu Korvala
+ */
+@Name("com.korvala.dependencyinjection.ContextBuild")
+@Label("Context Build")
+@Category("Dependency Injection")
+@Description("Building a dependency injection context")
+final class ContextBuildEvent extends jdk.jfr.Event {
+
+    @Label("Services")
+    int serviceCount;
+
+    @Label("Concurrent")
+    @Description("Whether singletons were created on an executor")
+    boolean concurrent;
+}
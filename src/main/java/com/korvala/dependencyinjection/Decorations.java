@@ -0,0 +1,91 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Decorations: the decorators and interceptors registered with a builder
+ *
+ * A context composes them once per service when it is built: the
+ * intercepting class generated for the service, if any interceptor applies
+ * to it, wraps the new instance first, then every decorator of its interface
+ * wraps the result in registration order.
+ *
+ * @author Hannu Korvala
+ */
+final class Decorations {
+
+    private final Map<Class<?>, List<Function<Object, Object>>> decorators;
+    private final List<InterceptingClass.Binding> interceptors;
+
+    Decorations(final Map<Class<?>, List<Function<Object, Object>>> decorators,
+            final List<InterceptingClass.Binding> interceptors) {
+        this.decorators = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, List<Function<Object, Object>>> entry : decorators.entrySet()) {
+            this.decorators.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        this.interceptors = List.copyOf(interceptors);
+    }
+
+    /**
+     * @param serviceInterfaces registered interfaces in id order
+     * @param serviceClasses    registered implementations in id order
+     * @return per service the decorator of its new instances or null, or null
+     *         if no service is decorated
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    UnaryOperator<Object>[] decoratorsOf(final Class<?>[] serviceInterfaces, final Class<?>[] serviceClasses) {
+        UnaryOperator<Object>[] decorators = new UnaryOperator[serviceClasses.length];
+        boolean decorated = false;
+        for (int i = 0; i < serviceClasses.length; i++) {
+            decorators[i] = decoratorOf(serviceInterfaces[i], serviceClasses[i]);
+            decorated |= decorators[i] != null;
+        }
+        return decorated ? decorators : null;
+    }
+
+    /**
+     * @return decorator of the new instances of serviceClass or null if neither
+     *         a decorator nor an interceptor applies to it
+     * @throws IllegalStateException if the intercepting class can not be
+     *                               generated
+     */
+    UnaryOperator<Object> decoratorOf(final Class<?> serviceInterface, final Class<?> serviceClass) {
+        if (serviceClass == MultiBinding.class) {
+            return null;
+        }
+
+        MethodHandle wrapper = this.interceptors.isEmpty() ? null
+                : InterceptingClass.wrapperOf(serviceInterface, serviceClass, this.interceptors);
+        List<Function<Object, Object>> functions = this.decorators.getOrDefault(serviceInterface, List.of());
+        if (wrapper == null && functions.isEmpty()) {
+            return null;
+        }
+
+        return instance -> {
+            Object decorated = instance;
+            if (wrapper != null) {
+                try {
+                    decorated = (Object) wrapper.invokeExact(decorated);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException("Intercepting " + serviceClass.getName() + " failed", t);
+                }
+            }
+            for (Function<Object, Object> function : functions) {
+                decorated = function.apply(decorated);
+                if (!serviceInterface.isInstance(decorated)) {
+                    throw new IllegalStateException("Decorator of " + serviceInterface.getName() + " returned "
+                            + (decorated == null ? "null" : decorated.getClass().getName())
+                            + ", which does not implement it");
+                }
+            }
+            return decorated;
+        };
+    }
+}
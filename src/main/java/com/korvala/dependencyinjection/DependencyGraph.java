@@ -0,0 +1,358 @@
+package com.korvala.dependencyinjection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * DependencyGraph: directed graph between services where an edge points from
+ * a service to a service it depends on
+ *
+ * Only the services that take part in the current operation are part of the
+ * graph, edges to any other service are treated as already satisfied. That
+ * includes ids past the end of the graph, which a child context uses for the
+ * services it resolves from its parent.
+ *
+ * @author Hannu Korvala
+ */
+final class DependencyGraph {
+
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private final boolean[] included;
+    private final int size;
+
+    /**
+     * @param dependencies dependency ids per service, ServiceIndex.MISSING
+     *                     entries are ignored
+     * @param included     services that take part in the graph
+     */
+    DependencyGraph(final int[][] dependencies, final boolean[] included) {
+        this.dependencies = dependencies;
+        this.included = included;
+
+        int[] dependentCounts = new int[dependencies.length];
+        int size = 0;
+        for (int id = 0; id < dependencies.length; id++) {
+            if (!included[id]) {
+                continue;
+            }
+            size++;
+            for (int dependency : dependencies[id]) {
+                if (isEdge(dependency)) {
+                    dependentCounts[dependency]++;
+                }
+            }
+        }
+        this.size = size;
+
+        this.dependents = new int[dependencies.length][];
+        for (int id = 0; id < dependencies.length; id++) {
+            this.dependents[id] = new int[dependentCounts[id]];
+        }
+        for (int id = 0; id < dependencies.length; id++) {
+            if (!included[id]) {
+                continue;
+            }
+            for (int dependency : dependencies[id]) {
+                if (isEdge(dependency)) {
+                    this.dependents[dependency][--dependentCounts[dependency]] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure the graph has no dependency cycles
+     *
+     * @param serviceClasses implementation classes in service id order, used in
+     *                       the error message
+     * @throws IllegalStateException describing the first cycle found
+     */
+    void checkAcyclic(final Class<?>[] serviceClasses) {
+        final byte unvisited = 0;
+        final byte inProgress = 1;
+        final byte done = 2;
+        byte[] state = new byte[this.dependencies.length];
+        int[] nextEdge = new int[this.dependencies.length];
+        Deque<Integer> path = new ArrayDeque<>();
+
+        for (int root = 0; root < this.dependencies.length; root++) {
+            if (!this.included[root] || state[root] != unvisited) {
+                continue;
+            }
+
+            state[root] = inProgress;
+            path.push(root);
+            while (!path.isEmpty()) {
+                int current = path.peek();
+                if (nextEdge[current] == this.dependencies[current].length) {
+                    state[current] = done;
+                    path.pop();
+                    continue;
+                }
+
+                int dependency = this.dependencies[current][nextEdge[current]++];
+                if (!isEdge(dependency) || state[dependency] == done) {
+                    continue;
+                }
+                if (state[dependency] == inProgress) {
+                    throw new IllegalStateException("Circular dependency detected: "
+                            + describeCycle(path, dependency, serviceClasses));
+                }
+                state[dependency] = inProgress;
+                path.push(dependency);
+            }
+        }
+    }
+
+    /**
+     * Runs task once for every service of the graph on executor. A service is
+     * started as soon as all of its dependencies have finished, so independent
+     * services run concurrently. Returns when every task has finished
+     *
+     * @param executor executor running the tasks
+     * @param task     receives the id of the service
+     * @throws Exception the first failure of a task
+     */
+    void runInDependencyOrder(final Executor executor, final IntConsumer task) throws Exception {
+        if (this.size == 0) {
+            return;
+        }
+
+        AtomicInteger[] waitingFor = new AtomicInteger[this.dependencies.length];
+        List<Integer> ready = new ArrayList<>();
+        for (int id = 0; id < this.dependencies.length; id++) {
+            if (!this.included[id]) {
+                continue;
+            }
+            int edges = 0;
+            for (int dependency : this.dependencies[id]) {
+                if (isEdge(dependency)) {
+                    edges++;
+                }
+            }
+            waitingFor[id] = new AtomicInteger(edges);
+            if (edges == 0) {
+                ready.add(id);
+            }
+        }
+
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(this.size);
+        for (int id : ready) {
+            schedule(id, executor, task, waitingFor, remaining, finished);
+        }
+
+        try {
+            finished.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts task for every service of the graph on executor once the stages
+     * returned for all of its dependencies have completed. A failed stage fails
+     * the stages of every service depending on it without running their tasks
+     *
+     * @param executor executor running the tasks
+     * @param task     receives the id of the service and returns a stage to wait
+     *                 for or null if the service is ready
+     * @return future completing when every stage has completed, exceptionally if
+     *         any of them failed
+     */
+    CompletableFuture<Void> completeInDependencyOrder(final Executor executor,
+            final IntFunction<CompletionStage<?>> task) {
+        CompletableFuture<?>[] completions = new CompletableFuture<?>[this.dependencies.length];
+        List<CompletableFuture<?>> all = new ArrayList<>(this.size);
+        for (int id : topologicalOrder()) {
+            List<CompletableFuture<?>> waitingFor = new ArrayList<>();
+            for (int dependency : this.dependencies[id]) {
+                if (isEdge(dependency)) {
+                    waitingFor.add(completions[dependency]);
+                }
+            }
+
+            int current = id;
+            CompletableFuture<Void> ready = waitingFor.isEmpty() ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.allOf(waitingFor.toArray(new CompletableFuture<?>[0]));
+            completions[id] = ready.thenComposeAsync(ignored -> {
+                CompletionStage<?> stage = task.apply(current);
+                return stage == null ? CompletableFuture.completedFuture(null) : stage;
+            }, executor);
+            all.add(completions[id]);
+        }
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Starts task for every service of the graph once the stages returned for
+     * all services depending on it have completed, so a service is torn down
+     * only after everything that may still use it. Unlike
+     * completeInDependencyOrder a failed stage does not hold back the others,
+     * and cycles are allowed: the edge closing a cycle is left out. Task is
+     * called on the thread completing the last stage it waits for and should
+     * hand longer work over to an executor
+     *
+     * @param task receives the id of the service and returns a stage to wait
+     *             for or null if the service is done
+     * @return future completing normally when every stage has completed,
+     *         failures are left to task to record
+     */
+    CompletableFuture<Void> completeInReverseDependencyOrder(final IntFunction<CompletionStage<?>> task) {
+        CompletableFuture<?>[] completions = new CompletableFuture<?>[this.dependencies.length];
+        List<CompletableFuture<?>> all = new ArrayList<>(this.size);
+        int[] order = postOrder();
+        for (int i = order.length - 1; i >= 0; i--) {
+            int id = order[i];
+            List<CompletableFuture<?>> waitingFor = new ArrayList<>();
+            for (int dependent : this.dependents[id]) {
+                if (completions[dependent] != null) {
+                    waitingFor.add(completions[dependent]);
+                }
+            }
+
+            CompletableFuture<Void> ready = waitingFor.isEmpty() ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.allOf(waitingFor.toArray(new CompletableFuture<?>[0]));
+            completions[id] = ready.handle((ignored, failure) -> null).thenCompose(ignored -> {
+                CompletionStage<?> stage = task.apply(id);
+                return stage == null ? CompletableFuture.completedFuture(null) : stage;
+            }).handle((ignored, failure) -> null);
+            all.add(completions[id]);
+        }
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return services of the graph in the order a depth first search leaves
+     *         them, every service after its dependencies unless they form a
+     *         cycle
+     */
+    private int[] postOrder() {
+        boolean[] visited = new boolean[this.dependencies.length];
+        int[] nextEdge = new int[this.dependencies.length];
+        int[] order = new int[this.size];
+        int ordered = 0;
+        Deque<Integer> path = new ArrayDeque<>();
+
+        for (int root = 0; root < this.dependencies.length; root++) {
+            if (!this.included[root] || visited[root]) {
+                continue;
+            }
+
+            visited[root] = true;
+            path.push(root);
+            while (!path.isEmpty()) {
+                int current = path.peek();
+                if (nextEdge[current] == this.dependencies[current].length) {
+                    order[ordered++] = path.pop();
+                    continue;
+                }
+
+                int dependency = this.dependencies[current][nextEdge[current]++];
+                if (isEdge(dependency) && !visited[dependency]) {
+                    visited[dependency] = true;
+                    path.push(dependency);
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return services of the graph, every service after its dependencies
+     * @throws IllegalStateException if the graph has a cycle
+     */
+    private int[] topologicalOrder() {
+        int[] waitingFor = new int[this.dependencies.length];
+        int[] order = new int[this.size];
+        int ordered = 0;
+        for (int id = 0; id < this.dependencies.length; id++) {
+            if (!this.included[id]) {
+                continue;
+            }
+            for (int dependency : this.dependencies[id]) {
+                if (isEdge(dependency)) {
+                    waitingFor[id]++;
+                }
+            }
+            if (waitingFor[id] == 0) {
+                order[ordered++] = id;
+            }
+        }
+
+        for (int next = 0; next < ordered; next++) {
+            for (int dependent : this.dependents[order[next]]) {
+                if (--waitingFor[dependent] == 0) {
+                    order[ordered++] = dependent;
+                }
+            }
+        }
+        if (ordered != this.size) {
+            throw new IllegalStateException("Circular dependency detected");
+        }
+        return order;
+    }
+
+    private void schedule(final int id, final Executor executor, final IntConsumer task,
+            final AtomicInteger[] waitingFor, final AtomicInteger remaining, final CompletableFuture<Void> finished) {
+        executor.execute(() -> {
+            if (finished.isDone()) {
+                return;
+            }
+
+            try {
+                task.accept(id);
+            } catch (Throwable t) {
+                finished.completeExceptionally(t);
+                return;
+            }
+
+            for (int dependent : this.dependents[id]) {
+                if (waitingFor[dependent].decrementAndGet() == 0) {
+                    schedule(dependent, executor, task, waitingFor, remaining, finished);
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                finished.complete(null);
+            }
+        });
+    }
+
+    private boolean isEdge(final int dependency) {
+        return dependency != ServiceIndex.MISSING && dependency < this.included.length && this.included[dependency];
+    }
+
+    private static String describeCycle(final Deque<Integer> path, final int start,
+            final Class<?>[] serviceClasses) {
+        List<Integer> cycle = new ArrayList<>();
+        for (int id : path) {
+            cycle.add(0, id);
+            if (id == start) {
+                break;
+            }
+        }
+        cycle.add(start);
+
+        StringBuilder description = new StringBuilder();
+        for (int id : cycle) {
+            if (description.length() > 0) {
+                description.append(" -> ");
+            }
+            description.append(serviceClasses[id].getName());
+        }
+        return description.toString();
+    }
+}
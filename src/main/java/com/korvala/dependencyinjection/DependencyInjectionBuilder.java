@@ -4,30 +4,65 @@ import java.util.List;
 
 import com.korvala.dependencyinjection.abstractions.DependencyInjectionContext;
 import com.korvala.dependencyinjection.abstractions.DependencyInjectionContextBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionListener;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionScope;
 import com.korvala.dependencyinjection.abstractions.ServiceInterfaceClassPair;
+import com.korvala.dependencyinjection.InjectionPlan.InjectionKind;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import jdk.jfr.EventType;
 
 /**
  * DependencyInjectionBuilder: Builder pattern: builds a context for dependency
  * injection
  *
- * This implementation is unfortunately dependenant on ServicePair
+ * This implementation is unfortunately dependenant on ServiceRegistration
  *
  * @author Hannu Korvala
  */
 public class DependencyInjectionBuilder implements DependencyInjectionContextBuilder {
 
     /**
-     * Record that represents a service pair where T is the interface of class and V
-     * is the class implementation of an interface
+     * Record that represents a registered service: the interface, the class
+     * implementation of the interface, its lifetime, whether a singleton is
+     * created on first use, whether it is one of the implementations of a
+     * multi-binding and the bounds of its pool if it is pooled. The
+     * multi-binding itself is registered as the interface with the class
+     * MultiBinding, before its first implementation
      *
      * @author Hannu Korvala
      */
-    private record ServicePair<T, V>(T serviceInterface, V serviceClass) implements ServiceInterfaceClassPair<T, V> {
-        public ServicePair {
+    private record ServiceRegistration(Class<?> serviceInterface, Class<?> serviceClass, ServiceLifetime lifetime,
+            boolean lazy, boolean member, PoolConfig pool) implements ServiceInterfaceClassPair<Class<?>, Class<?>> {
+        public ServiceRegistration {
 
             if (serviceInterface == null) {
                 throw new IllegalArgumentException("Service interface can not be null");
@@ -40,172 +75,2931 @@ public class DependencyInjectionBuilder implements DependencyInjectionContextBui
         }
     }
 
+    private static final VarHandle INSTANCES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle FIELD_VALUES = MethodHandles.arrayElementVarHandle(Object[][].class);
+    private static final VarHandle LAZY_VALUE;
+
+    static {
+        try {
+            LAZY_VALUE = MethodHandles.lookup().findVarHandle(Context.LazyService.class, "value", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Flight Recorder types of the events created on every transient resolve
+     * and every scope, checked before an event is allocated so nothing is
+     * allocated for them while no recording enables them
+     */
+    private static final EventType CONSTRUCTION_EVENT = EventType.getEventType(ServiceConstructionEvent.class);
+    private static final EventType SCOPE_EVENT = EventType.getEventType(ScopeEvent.class);
+
+    /**
+     * Marks a singleton whose constructor is running. Field injection that runs
+     * into it is deferred until the instance exists
+     */
+    private static final Object CONSTRUCTING = new Object();
+
+    /**
+     * Field values of a service whose fields are not all singletons, never
+     * cached
+     */
+    private static final Object[] NO_FIELD_VALUES = new Object[0];
+
+    /**
+     * Record of a field that is assigned once the singleton it waits for has been
+     * constructed
+     */
+    private record DeferredInjection(int waitingFor, InjectionPlan plan, int field, Object target) {
+    }
+
+    /**
+     * Record of the wiring restored from a snapshot: the injection plans and the
+     * dependency ids a context would otherwise resolve and validate itself
+     */
+    private record Wiring(InjectionPlan[] plans, int[][] constructorDependencies, int[][] dependencies) {
+    }
+
+    /**
+     * Record that forwards every callback to several listeners in the order they
+     * were added
+     */
+    private record ListenerGroup(DependencyInjectionListener[] listeners) implements DependencyInjectionListener {
+        @Override
+        public void serviceConstructed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final long nanos) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceConstructed(serviceInterface, serviceClass, nanos);
+            }
+        }
+
+        @Override
+        public void serviceInjected(final Class<?> serviceInterface, final Class<?> serviceClass, final long nanos) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceInjected(serviceInterface, serviceClass, nanos);
+            }
+        }
+
+        @Override
+        public void serviceInitialized(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final long nanos) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceInitialized(serviceInterface, serviceClass, nanos);
+            }
+        }
+
+        @Override
+        public void serviceDisposed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final long nanos) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceDisposed(serviceInterface, serviceClass, nanos);
+            }
+        }
+
+        @Override
+        public void serviceResolved(final Class<?> serviceInterface) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceResolved(serviceInterface);
+            }
+        }
+
+        @Override
+        public void serviceFailed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final Throwable failure) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.serviceFailed(serviceInterface, serviceClass, failure);
+            }
+        }
+
+        @Override
+        public void contextBuilt(final int serviceCount, final long nanos) {
+            for (DependencyInjectionListener listener : this.listeners) {
+                listener.contextBuilt(serviceCount, nanos);
+            }
+        }
+    }
+
     /**
-     * Context that you can use to get services
+     * Context that you can use to get services. Closing it disposes the
+     * AutoCloseable singletons it created
      *
      * @author Hannu Korvala
      */
-    public class Context implements DependencyInjectionContext {
-        private List<ServicePair<Class<?>, Object>> serviceContainer = new ArrayList<>();
+    public static class Context implements DependencyInjectionContext, AutoCloseable {
+        /**
+         * Singletons once created, and the ServicePool of every pooled service
+         * from the start
+         */
+        private final Object[] serviceInstances;
+        private final Class<?>[] serviceInterfaces;
+        private final Class<?>[] serviceClasses;
+        private final ServiceLifetime[] lifetimes;
+        private final InjectionPlan[] plans;
+
+        /**
+         * Registered with addLazyService, only kept to write snapshots
+         */
+        private final boolean[] lazyRegistrations;
+
+        /**
+         * Ids of the services every service depends on in one flat array, so a
+         * context holds no object per service besides its instance. Those of
+         * service id start at firstDependency[id]: one per constructor parameter
+         * of its InjectionPlan followed by one per injection point.
+         * ServiceIndex.MISSING marks a field left unset
+         */
+        private final int[] dependencyIds;
+        private final int[] firstDependency;
+
+        /**
+         * Position of every scoped service in the instance array of a Scope, -1 for
+         * services with another lifetime
+         */
+        private final int[] scopeSlots;
+        private final int scopedServiceCount;
+
+        /**
+         * Singletons that are being constructed or wired but not yet published, and
+         * the field assignments waiting for a constructor to finish. Only touched
+         * while holding singletonLock
+         */
+        private final Object[] pendingInstances;
+        private final List<DeferredInjection> deferredInjections = new ArrayList<>();
+        private final Object singletonLock = new Object();
+
+        /**
+         * Per service the values of its @Inject fields once every field holds a
+         * singleton that exists, which never changes again, or NO_FIELD_VALUES.
+         * Null until the values are known
+         */
+        private final Object[][] fieldValues;
+
+        /**
+         * True while a context built with buildAsync creates its services, the
+         * singletons created meanwhile are initialized by initializeSingletons
+         * afterwards
+         */
+        private boolean initializingLater;
+
+        /**
+         * Listener receiving timings and failures or null. Every report is guarded
+         * by a null check so a context without listeners does not read the clock
+         */
+        private final DependencyInjectionListener listener;
+
+        /**
+         * Context this one was created from with createChild, or null
+         */
+        private final Context parent;
+
+        /**
+         * Flattened index of every service visible from this context. Ids below
+         * the number of own registrations n belong to this context, id n + i is
+         * id i of the parent's index. Inherited service n + i is owned by
+         * inheritedOwners[i] under the id inheritedIds[i], the owner is always
+         * the context that built the service, so resolving through a chain of
+         * children is a single hop. Both are empty without a parent
+         */
+        private final ServiceIndex serviceIndex;
+        private final Context[] inheritedOwners;
+        private final int[] inheritedIds;
+
+        /**
+         * Executor set with useExecutor or null, and time allowed for the close
+         * method of every service or null to wait as long as it takes
+         */
+        private final Executor executor;
+        private final Duration disposalTimeout;
+
+        /**
+         * Instances taken over from the context rebuildWith was called on, which
+         * that context closes. Null if every instance was created here
+         */
+        private final boolean[] sharedInstances;
+        private boolean closed;
+
+        /**
+         * Decorators and interceptors of the builder or null, and per service
+         * the decorator of its new instances, null if no service is decorated
+         */
+        private final Decorations decorations;
+        private final UnaryOperator<Object>[] decorators;
 
         /**
          * Constructor. Context can only be built from the DependencyInjectionBuilder
          *
-         * @param services List of interfaces and their class implementations defined by
-         *                 the you
+         * @param services      List of interfaces and their class implementations
+         *                      defined by the you
+         * @param lazyByDefault true if every singleton should be created on first use
+         * @param executor      executor creating services concurrently or null to
+         *                      create them one by one in registration order
+         * @param disposalTimeout time allowed for closing every service or null
+         * @param decorations   decorators and interceptors or null
+         * @param listener      listener receiving timings and failures or null
+         * @param parent        context resolving the services not registered here
+         *                      or null
+         * @param wiring           wiring of services restored from a snapshot or
+         *                         null to resolve and validate it
+         * @param initializeLater  true to leave the initialization hooks of the
+         *                         singletons created here to initializeSingletons
+         * @throws Exception
+         */
+        private Context(final List<ServiceRegistration> services, final boolean lazyByDefault,
+                final Executor executor, final Duration disposalTimeout, final Decorations decorations,
+                final DependencyInjectionListener listener, final Context parent, final Wiring wiring,
+                final boolean initializeLater) throws Exception {
+            ContextBuildEvent event = new ContextBuildEvent();
+            event.begin();
+            long start = listener == null ? 0L : System.nanoTime();
+
+            this.listener = listener;
+            this.parent = parent;
+            this.executor = executor;
+            this.disposalTimeout = disposalTimeout;
+            this.sharedInstances = null;
+            this.serviceInstances = new Object[services.size()];
+            this.serviceInterfaces = new Class<?>[services.size()];
+            this.serviceClasses = new Class<?>[services.size()];
+            this.lifetimes = new ServiceLifetime[services.size()];
+            this.lazyRegistrations = new boolean[services.size()];
+            this.scopeSlots = new int[services.size()];
+            Class<?>[] indexedInterfaces = new Class<?>[services.size()];
+            boolean[] eager = new boolean[services.size()];
+            int scopedServiceCount = 0;
+
+            for (int i = 0; i < services.size(); i++) {
+                ServiceRegistration service = services.get(i);
+                this.serviceInterfaces[i] = service.serviceInterface();
+                this.serviceClasses[i] = service.serviceClass();
+                this.lifetimes[i] = service.lifetime();
+                this.lazyRegistrations[i] = service.lazy();
+                indexedInterfaces[i] = service.member() ? null : service.serviceInterface();
+                this.scopeSlots[i] = service.lifetime() == ServiceLifetime.SCOPED ? scopedServiceCount++ : -1;
+
+                eager[i] = service.lifetime() == ServiceLifetime.SINGLETON && !lazyByDefault && !service.lazy();
+            }
+            this.scopedServiceCount = scopedServiceCount;
+            this.decorations = decorations;
+            this.decorators = decorations == null ? null
+                    : decorations.decoratorsOf(this.serviceInterfaces, this.serviceClasses);
+
+            if (parent == null) {
+                this.inheritedOwners = new Context[0];
+                this.inheritedIds = new int[0];
+                this.serviceIndex = new ServiceIndex(indexedInterfaces);
+            } else {
+                int parentCount = parent.serviceClasses.length;
+                this.inheritedOwners = new Context[parentCount + parent.inheritedOwners.length];
+                this.inheritedIds = new int[this.inheritedOwners.length];
+                for (int i = 0; i < parentCount; i++) {
+                    this.inheritedOwners[i] = parent;
+                    this.inheritedIds[i] = i;
+                }
+                System.arraycopy(parent.inheritedOwners, 0, this.inheritedOwners, parentCount,
+                        parent.inheritedOwners.length);
+                System.arraycopy(parent.inheritedIds, 0, this.inheritedIds, parentCount, parent.inheritedIds.length);
+                this.serviceIndex = new ServiceIndex(parent.serviceIndex, indexedInterfaces);
+            }
+            this.pendingInstances = new Object[services.size()];
+            this.fieldValues = new Object[services.size()][];
+
+            int[][] constructorDependencies;
+            int[][] dependencies;
+            if (wiring == null) {
+                int[][] members = membersOf(services);
+                this.plans = new InjectionPlan[services.size()];
+                for (int i = 0; i < services.size(); i++) {
+                    this.plans[i] = members[i] == null ? InjectionPlan.of(this.serviceClasses[i])
+                            : InjectionPlan.collecting(this.serviceInterfaces[i], members[i].length);
+                }
+
+                AssignabilityIndex assignabilityIndex = new AssignabilityIndex(this.serviceClasses);
+                constructorDependencies = resolveConstructorDependencies(assignabilityIndex, members);
+                dependencies = resolveDependencies(assignabilityIndex);
+            } else {
+                this.plans = wiring.plans();
+                constructorDependencies = wiring.constructorDependencies();
+                dependencies = wiring.dependencies();
+            }
+
+            this.firstDependency = new int[services.size() + 1];
+            for (int i = 0; i < services.size(); i++) {
+                this.firstDependency[i + 1] = this.firstDependency[i] + constructorDependencies[i].length
+                        + dependencies[i].length;
+            }
+            this.dependencyIds = new int[this.firstDependency[services.size()]];
+            for (int i = 0; i < services.size(); i++) {
+                System.arraycopy(constructorDependencies[i], 0, this.dependencyIds, this.firstDependency[i],
+                        constructorDependencies[i].length);
+                System.arraycopy(dependencies[i], 0, this.dependencyIds,
+                        this.firstDependency[i] + constructorDependencies[i].length, dependencies[i].length);
+            }
+            if (wiring == null) {
+                validateDependencies();
+            }
+            for (int i = 0; i < services.size(); i++) {
+                if (this.lifetimes[i] == ServiceLifetime.POOLED) {
+                    this.serviceInstances[i] = createPool(i, services.get(i).pool());
+                }
+            }
+
+            this.initializingLater = initializeLater;
+            if (executor == null) {
+                generateInstances(eager);
+            } else {
+                generateInstancesConcurrently(eager, executor);
+            }
+            this.initializingLater = false;
+
+            if (listener != null) {
+                listener.contextBuilt(services.size(), System.nanoTime() - start);
+            }
+            if (event.shouldCommit()) {
+                event.serviceCount = services.size();
+                event.concurrent = executor != null;
+                event.commit();
+            }
+        }
+
+        /**
+         * Constructor of rebuildWith. Everything but the replaced service, its
+         * wiring and the instances of the services depending on it is shared
+         * with previous
+         *
+         * @param previous context to rebuild
+         * @param replaced id of the replaced service
+         * @param service  new implementation of the replaced service
          * @throws Exception
          */
-        private Context(final List<ServicePair<Class<?>, Class<?>>> services) throws Exception {
-            generateInstances(services);
-            mapFieldsToInstances();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private Context(final Context previous, final int replaced, final Class<?> service) throws Exception {
+            ContextBuildEvent event = new ContextBuildEvent();
+            event.begin();
+            long start = previous.listener == null ? 0L : System.nanoTime();
+            int count = previous.serviceClasses.length;
+
+            this.listener = previous.listener;
+            this.parent = previous.parent;
+            this.executor = previous.executor;
+            this.disposalTimeout = previous.disposalTimeout;
+            this.serviceInterfaces = previous.serviceInterfaces;
+            this.lifetimes = previous.lifetimes;
+            this.lazyRegistrations = previous.lazyRegistrations;
+            this.scopeSlots = previous.scopeSlots;
+            this.scopedServiceCount = previous.scopedServiceCount;
+            this.serviceIndex = previous.serviceIndex;
+            this.inheritedOwners = previous.inheritedOwners;
+            this.inheritedIds = previous.inheritedIds;
+            this.serviceInstances = new Object[count];
+            this.pendingInstances = new Object[count];
+            this.fieldValues = new Object[count][];
+
+            this.serviceClasses = previous.serviceClasses.clone();
+            this.serviceClasses[replaced] = service;
+            this.plans = previous.plans.clone();
+            this.plans[replaced] = InjectionPlan.of(service);
+
+            this.decorations = previous.decorations;
+            UnaryOperator<Object> decorator = this.decorations == null ? null
+                    : this.decorations.decoratorOf(this.serviceInterfaces[replaced], service);
+            if (previous.decorators == null && decorator == null) {
+                this.decorators = null;
+            } else {
+                this.decorators = previous.decorators == null ? new UnaryOperator[count] : previous.decorators.clone();
+                this.decorators[replaced] = decorator;
+            }
+
+            int[] replacement = resolveReplacement(replaced);
+            int removed = previous.firstDependency[replaced + 1] - previous.firstDependency[replaced];
+            this.firstDependency = previous.firstDependency.clone();
+            for (int i = replaced + 1; i <= count; i++) {
+                this.firstDependency[i] += replacement.length - removed;
+            }
+            this.dependencyIds = new int[this.firstDependency[count]];
+            System.arraycopy(previous.dependencyIds, 0, this.dependencyIds, 0, previous.firstDependency[replaced]);
+            System.arraycopy(replacement, 0, this.dependencyIds, this.firstDependency[replaced], replacement.length);
+            System.arraycopy(previous.dependencyIds, previous.firstDependency[replaced + 1], this.dependencyIds,
+                    this.firstDependency[replaced + 1], previous.dependencyIds.length
+                            - previous.firstDependency[replaced + 1]);
+
+            boolean[] affected = dependentsOf(replaced);
+            validateReplacement(replaced, affected);
+
+            boolean[] recreated = new boolean[count];
+            this.sharedInstances = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                Object instance = INSTANCES.getAcquire(previous.serviceInstances, i);
+                if (this.lifetimes[i] == ServiceLifetime.POOLED && affected[i]) {
+                    this.serviceInstances[i] = createPool(i, ((ServicePool) instance).config());
+                } else if (affected[i]) {
+                    recreated[i] = instance != null;
+                } else {
+                    this.serviceInstances[i] = instance;
+                    this.sharedInstances[i] = instance != null;
+                }
+            }
+            generateInstances(recreated);
+
+            if (this.listener != null) {
+                this.listener.contextBuilt(count, System.nanoTime() - start);
+            }
+            if (event.shouldCommit()) {
+                event.serviceCount = count;
+                event.concurrent = false;
+                event.commit();
+            }
         }
 
         /**
          * Use to get an instance for a service
          *
          * @param serviceInterface interface type of what service you wish to receive
-         * @return instance of the service you want
+         * @return instance of the service you want or null if it has not been
+         *         registered
+         * @throws IllegalArgumentException if serviceInterface is null
+         * @throws IllegalStateException    if the service is scoped, scoped services
+         *                                  can only be resolved from a scope, added
+         *                                  with addServices, or a singleton not yet
+         *                                  created when the context was closed
          */
         @SuppressWarnings("unchecked")
         public <T> T getService(final Class<T> serviceInterface) {
-            for (int i = 0; i < this.serviceContainer.size(); i++) {
-                var targetInterface = serviceContainer.get(i).serviceInterface();
-                if (targetInterface.equals(serviceInterface)) {
-                    return (T) serviceContainer.get(i).serviceClass();
-                }
+            if (serviceInterface == null) {
+                throw new IllegalArgumentException("Service interface can not be null");
             }
-            return null;
+
+            int id = this.serviceIndex.idOf(serviceInterface);
+            if (id == ServiceIndex.MISSING) {
+                return null;
+            }
+            return (T) requireService(resolve(id, null), id);
         }
 
         /**
-         * Generates class instances from a collection of ServiceInterfaceClassPair
+         * Use to get every implementation of a service: those added with
+         * addServices in registration order, or the only one added with the
+         * other methods. The List of a multi-binding is created once with the
+         * context and returned on every call, so it can be kept and iterated
+         * without allocating
          *
-         * @param services Collection<Class<?>>
-         * @throws Exception
+         * @param serviceInterface interface type of the services
+         * @return immutable List of the services, empty if none has been
+         *         registered
+         * @throws IllegalArgumentException if serviceInterface is null
+         * @throws IllegalStateException    if the service is scoped
          */
-        private void generateInstances(final List<ServicePair<Class<?>, Class<?>>> services)
-                throws Exception {
-            for (int i = 0; i < services.size(); i++) {
-                Class<?> serviceClass = services.get(i).serviceClass();
-                Constructor<?> constructor = serviceClass.getConstructor();
-                constructor.setAccessible(true);
-                Object serviceInstance = constructor.newInstance();
-                this.serviceContainer.add(new ServicePair<Class<?>, Object>(
-                        services.get(i).serviceInterface(), serviceInstance));
+        @Override
+        public <T> List<T> getServices(final Class<T> serviceInterface) {
+            if (serviceInterface == null) {
+                throw new IllegalArgumentException("Service interface can not be null");
             }
+
+            return servicesOf(serviceInterface, null);
         }
 
         /**
-         * Maps the serviceInstances' fields
-         * Essentially this method loops through are instances generated in
-         * generateInstances -method
-         * and then iterates over each of their fields and assigns them with other
-         * instances generated in generateInstances -method
+         * Returns the key of a service, which resolves it without looking up its
+         * interface. Get the key once and keep it
          *
-         * @throws Exception
+         * @param serviceInterface interface type of the service
+         * @return key of the service or null if it has not been registered
+         * @throws IllegalArgumentException if serviceInterface is null
+         * @throws IllegalStateException    if the service was added with
+         *                                  addServices
          */
-        private void mapFieldsToInstances()
-                throws Exception {
-            for (int i = 0; i < this.serviceContainer.size(); i++) {
-                Object serviceInstance = this.serviceContainer.get(i).serviceClass();
-                for (Field field : serviceInstance.getClass().getDeclaredFields()) {
-
-                    /**
-                     * Only map fields that are marked with @Inject -attribute
-                     */
-                    if (!field.isAnnotationPresent(Inject.class)) {
-                        continue;
-                    }
-
-                    Class<?> fieldType = field.getType();
-                    field.setAccessible(true);
+        public <T> ServiceKey<T> keyOf(final Class<T> serviceInterface) {
+            if (serviceInterface == null) {
+                throw new IllegalArgumentException("Service interface can not be null");
+            }
 
-                    /**
-                     * Here we iterate through serviceInstances again to find the correct matching
-                     * field instance
-                     */
-                    for (int j = 0; j < this.serviceContainer.size(); j++) {
-                        Object matchPartner = this.serviceContainer.get(j).serviceClass();
-                        if (fieldType.isInstance(matchPartner)) {
-                            field.set(serviceInstance, matchPartner);
-                            continue;
-                        }
-                    }
-                }
+            int id = this.serviceIndex.idOf(serviceInterface);
+            if (id == ServiceIndex.MISSING) {
+                return null;
             }
+            if (classOf(id) == MultiBinding.class) {
+                throw multipleImplementations(serviceInterface);
+            }
+            return new ServiceKey<>(serviceInterface, id, this);
         }
-    }
 
-    private List<ServicePair<Class<?>, Class<?>>> serviceRegstrationContainer = new ArrayList<>();
+        /**
+         * Use to get an instance for a service through its key
+         *
+         * @param key key returned by keyOf of this context
+         * @return instance of the service
+         * @throws IllegalArgumentException if key is null or belongs to another
+         *                                  context
+         * @throws IllegalStateException    if the service is scoped
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T getServiceByKey(final ServiceKey<T> key) {
+            int id = checkKey(key);
+            return (T) requireService(resolve(id, null), id);
+        }
 
-    /**
-     * Add a service to dependency injection
-     *
-     * @param serviceInterface Interface the service implements
-     * @param service          Implementation of said interface
-     * @return For fluent building, returns an instance of itself
-     *         (DependencyInjectionBuilder)
-     * @throws IllegalArgumentException
-     */
-    public DependencyInjectionBuilder addService(final Class<?> serviceInterface, final Class<?> service)
-            throws IllegalArgumentException {
+        private int checkKey(final ServiceKey<?> key) {
+            if (key == null) {
+                throw new IllegalArgumentException("Service key can not be null");
+            }
+            if (key.context() != this) {
+                throw new IllegalArgumentException(key + " was not issued by this context");
+            }
+            return key.id();
+        }
 
-        if (serviceInterface == null) {
-            throw new IllegalArgumentException("Service interface can not be null");
+        /**
+         * Leases an instance of a service added with addPooled: an idle one
+         * from its pool, a new one if the pool has room, or else the first one
+         * another lease returns. Close the lease, typically with
+         * try-with-resources, to give the instance back
+         *
+         * @param serviceInterface interface type of the pooled service
+         * @return lease of the instance
+         * @throws IllegalArgumentException if serviceInterface is null or has
+         *                                  not been registered
+         * @throws IllegalStateException    if the service is not pooled, the
+         *                                  context has been closed or no
+         *                                  instance was returned within the
+         *                                  acquire timeout
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Lease<T> lease(final Class<T> serviceInterface) {
+            int id = pooledIdOf(serviceInterface);
+            if (this.listener != null) {
+                this.listener.serviceResolved(serviceInterface);
+            }
+            ServicePool pool = poolOf(id);
+            return new Lease<>(pool, (T) pool.acquire());
         }
 
-        if (service == null) {
-            throw new IllegalArgumentException("Service implementation can not be null");
+        /**
+         * @param serviceInterface interface type of the pooled service
+         * @return hits, misses, waits and size of the pool of the service
+         * @throws IllegalArgumentException if serviceInterface is null or has
+         *                                  not been registered
+         * @throws IllegalStateException    if the service is not pooled
+         */
+        public PoolMetrics poolMetrics(final Class<?> serviceInterface) {
+            return poolOf(pooledIdOf(serviceInterface)).metrics();
         }
 
-        if (doesInterfaceMatchWithClass(serviceInterface, service) == false) {
-            throw new IllegalArgumentException("Service does not implement designated interface");
+        private int pooledIdOf(final Class<?> serviceInterface) {
+            if (serviceInterface == null) {
+                throw new IllegalArgumentException("Service interface can not be null");
+            }
+
+            int id = this.serviceIndex.idOf(serviceInterface);
+            if (id == ServiceIndex.MISSING) {
+                throw new IllegalArgumentException(serviceInterface.getName() + " has not been registered");
+            }
+            if (lifetimeOf(id) != ServiceLifetime.POOLED) {
+                throw new IllegalStateException(interfaceOf(id).getName()
+                        + " is not pooled, resolve it with getService");
+            }
+            return id;
         }
 
-        if (hasServiceBeenRegistered(serviceInterface)) {
-            throw new IllegalArgumentException("Service with interface has already been added");
+        /**
+         * Creates a context in which service replaces the implementation
+         * registered for serviceInterface, for example a fake in place of a
+         * real client. Only the replaced service and the services depending on
+         * it, directly or through others, are created and wired again. Every
+         * other singleton this context has created is taken over as is, so a
+         * swap costs about as much as the services it affects. The resolved
+         * wiring is taken over as well: only the injection points of service
+         * are resolved, and the checks for cycles and scoped dependencies only
+         * visit the affected services
+         *
+         * The replacement keeps the lifetime of the registration it replaces,
+         * a pooled service gets a new pool. This context stays usable and
+         * unchanged, its instances of the affected services are not closed,
+         * and its children keep resolving from it. Closing the rebuilt context
+         * only closes the instances it created itself, the shared ones are
+         * closed with this context
+         *
+         * @param serviceInterface interface registered in this context
+         * @param service          new implementation of serviceInterface
+         * @return rebuilt context
+         * @throws IllegalArgumentException if an argument is null, service does
+         *                                  not implement serviceInterface or
+         *                                  serviceInterface was not registered
+         *                                  in this context or with addServices
+         * @throws IllegalStateException    if service can not be wired in place
+         *                                  of the replaced implementation
+         * @throws Exception
+         */
+        public Context rebuildWith(final Class<?> serviceInterface, final Class<?> service) throws Exception {
+            if (serviceInterface == null) {
+                throw new IllegalArgumentException("Service interface can not be null");
+            }
+            if (service == null) {
+                throw new IllegalArgumentException("Service implementation can not be null");
+            }
+            if (doesInterfaceMatchWithClass(serviceInterface, service) == false) {
+                throw new IllegalArgumentException("Service does not implement designated interface");
+            }
+
+            int id = this.serviceIndex.idOf(serviceInterface);
+            if (id == ServiceIndex.MISSING || id >= this.serviceClasses.length) {
+                throw new IllegalArgumentException(serviceInterface.getName() + " is not registered in this context");
+            }
+            if (this.serviceClasses[id] == MultiBinding.class) {
+                throw new IllegalArgumentException(serviceInterface.getName() + " was added with addServices");
+            }
+            return new Context(this, id, service);
         }
 
-        this.serviceRegstrationContainer
-                .add(new ServicePair<Class<?>, Class<?>>(serviceInterface, service));
-        return this;
-    }
+        /**
+         * Creates a context that adds or overrides registrations and resolves every
+         * other service from this context's instances, which are shared and not
+         * copied. Services of this context keep their own wiring, overrides only
+         * apply to the services registered in the child
+         *
+         * The child is built like any other context from a new builder that
+         * configuration fills in, settings such as the executor or listeners are
+         * not inherited. Dependencies of the child's services on services of this
+         * context are matched by their registered interface
+         *
+         * @param configuration registers the services of the child
+         * @return child context
+         * @throws IllegalArgumentException if configuration is null
+         * @throws Exception
+         */
+        public Context createChild(final Consumer<DependencyInjectionBuilder> configuration) throws Exception {
+            if (configuration == null) {
+                throw new IllegalArgumentException("Configuration can not be null");
+            }
 
-    public static DependencyInjectionBuilder startBuild() {
-        return new DependencyInjectionBuilder();
-    }
+            DependencyInjectionBuilder builder = new DependencyInjectionBuilder();
+            configuration.accept(builder);
+            return builder.build(this, false);
+        }
 
-    public Context build() throws Exception {
-        return new Context(this.serviceRegstrationContainer);
-    }
+        /**
+         * Disposes the AutoCloseable singletons this context created. A service
+         * is closed once every service depending on it, directly or through
+         * services that are not AutoCloseable, has been closed, so it can still
+         * use its dependencies while closing. Services that do not depend on
+         * each other are closed in parallel on the executor set with
+         * useExecutor, or on threads started for the close, so closing takes
+         * about as long as the slowest dependency chain. Every service is
+         * closed even if some of them fail or time out, a service still
+         * closing after the timeout set with useDisposalTimeout is left running
+         * and no longer waited for
+         *
+         * The pools of pooled services are closed like singletons: their idle
+         * instances are closed, and leased instances are closed when their
+         * lease is. Scopes and child contexts are not closed. Singletons
+         * created before the close still resolve, creating one afterwards
+         * fails, so nothing is left behind that would never be closed. Closing
+         * again does nothing
+         *
+         * @throws IllegalStateException carrying the failures and timeouts as
+         *                               suppressed exceptions
+         */
+        @Override
+        public void close() {
+            synchronized (this.singletonLock) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            }
 
-    /**
-     * Helper class that checks if a class implements an interface
-     *
-     * @param serviceInterface interface that should be implemented
-     * @param service          implementing class that should implement interface
-     * @return boolean: true if interface matches with implementation
-     */
-    private boolean doesInterfaceMatchWithClass(final Class<?> serviceInterface, final Class<?> service) {
-        Class<?>[] interfaces = service.getInterfaces();
-        boolean isValidInterface = false;
+            Executor disposers = this.executor;
+            ExecutorService threads = null;
+            if (disposers == null) {
+                AtomicInteger count = new AtomicInteger();
+                threads = Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "service-disposer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                disposers = threads;
+            }
 
-        for (Class<?> currentInterface : interfaces) {
-            if (currentInterface.getSimpleName().equals(serviceInterface.getSimpleName())) {
-                isValidInterface = true;
+            boolean[] everyService = new boolean[this.lifetimes.length];
+            Arrays.fill(everyService, true);
+            Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            try {
+                Executor executor = disposers;
+                new DependencyGraph(allDependencies(), everyService)
+                        .completeInReverseDependencyOrder(id -> dispose(id, executor, failures))
+                        .join();
+            } finally {
+                if (threads != null) {
+                    threads.shutdown();
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                IllegalStateException failure = new IllegalStateException("Closing services failed");
+                for (Throwable suppressed : failures) {
+                    failure.addSuppressed(suppressed);
+                }
+                throw failure;
             }
         }
 
-        return isValidInterface;
-    }
+        /**
+         * Closes service id on executor if this context created an
+         * AutoCloseable instance of it
+         *
+         * @param failures receives the failure or timeout of the close
+         * @return stage completing when the close has returned or timed out, or
+         *         null if there is nothing to close
+         */
+        private CompletionStage<?> dispose(final int id, final Executor executor, final Queue<Throwable> failures) {
+            Object instance = INSTANCES.getAcquire(this.serviceInstances, id);
+            if (!(instance instanceof AutoCloseable disposable) || instance instanceof MultiBinding
+                    || (this.sharedInstances != null && this.sharedInstances[id])) {
+                return null;
+            }
 
-    private boolean hasServiceBeenRegistered(final Class<?> serviceInterface) {
-        for (int i = 0; i < this.serviceRegstrationContainer.size(); i++) {
-            if (serviceInterface.equals(this.serviceRegstrationContainer.get(i).serviceInterface())) {
-                return true;
+            long start = this.listener == null ? 0L : System.nanoTime();
+            CompletableFuture<Void> closing = CompletableFuture.runAsync(() -> {
+                try {
+                    disposable.close();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            if (this.disposalTimeout != null) {
+                closing.orTimeout(this.disposalTimeout.toNanos(), TimeUnit.NANOSECONDS);
             }
+            return closing.whenComplete((ignored, failure) -> {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure;
+                if (cause instanceof TimeoutException) {
+                    cause = new TimeoutException(this.serviceClasses[id].getName() + " did not close within "
+                            + this.disposalTimeout);
+                }
+                if (cause != null) {
+                    failures.add(cause);
+                }
+                if (this.listener == null) {
+                    return;
+                }
+                if (cause == null) {
+                    this.listener.serviceDisposed(this.serviceInterfaces[id], this.serviceClasses[id],
+                            System.nanoTime() - start);
+                } else {
+                    this.listener.serviceFailed(this.serviceInterfaces[id], this.serviceClasses[id], cause);
+                }
+            });
         }
 
-        return false;
+        /**
+         * Writes the registrations of this context and their resolved wiring to
+         * a file that DependencyInjectionBuilder.fromSnapshot builds the same
+         * context from without resolving or validating it again
+         *
+         * @param path file to write, replaced if it exists
+         * @throws IllegalArgumentException if path is null
+         * @throws IllegalStateException    if this is a child context, whose
+         *                                  wiring refers to its parent, or has
+         *                                  pooled services
+         * @throws IOException
+         */
+        public void writeSnapshot(final Path path) throws IOException {
+            if (path == null) {
+                throw new IllegalArgumentException("Path can not be null");
+            }
+            if (this.parent != null) {
+                throw new IllegalStateException("Child context can not be written to a snapshot");
+            }
+            for (int i = 0; i < this.lifetimes.length; i++) {
+                if (this.lifetimes[i] == ServiceLifetime.POOLED) {
+                    throw new IllegalStateException("Pooled service " + this.serviceClasses[i].getName()
+                            + " can not be written to a snapshot");
+                }
+            }
+
+            WiringSnapshot.Service[] services = new WiringSnapshot.Service[this.plans.length];
+            for (int i = 0; i < services.length; i++) {
+                InjectionPlan plan = this.plans[i];
+                String[] signature = new String[plan.parameterCount()];
+                InjectionKind[] parameterKinds = new InjectionKind[plan.parameterCount()];
+                for (int parameter = 0; parameter < signature.length; parameter++) {
+                    signature[parameter] = plan.declaredParameterType(parameter).getName();
+                    parameterKinds[parameter] = plan.parameterKind(parameter);
+                }
+                String[] fieldNames = new String[plan.size()];
+                InjectionKind[] fieldKinds = new InjectionKind[plan.size()];
+                for (int field = 0; field < fieldNames.length; field++) {
+                    fieldNames[field] = plan.fieldName(field);
+                    fieldKinds[field] = plan.fieldKind(field);
+                }
+
+                /**
+                 * The implementations of a multi-binding are the only services
+                 * the index does not map their interface to
+                 */
+                int first = this.firstDependency[i];
+                services[i] = new WiringSnapshot.Service(this.serviceInterfaces[i].getName(),
+                        this.serviceClasses[i].getName(), this.lifetimes[i], this.lazyRegistrations[i],
+                        this.serviceIndex.idOf(this.serviceInterfaces[i]) != i, signature, parameterKinds,
+                        Arrays.copyOfRange(this.dependencyIds, first, first + signature.length), fieldNames,
+                        fieldKinds, Arrays.copyOfRange(this.dependencyIds, first + signature.length,
+                                this.firstDependency[i + 1]));
+            }
+            WiringSnapshot.write(path, services,
+                    WiringSnapshot.fingerprintOf(this.serviceInterfaces, this.serviceClasses));
+        }
+
+        /**
+         * Creates a scope for scoped services, for example one per request. The
+         * scope has to be closed, which disposes the AutoCloseable services it
+         * created
+         *
+         * @return Scope
+         */
+        public Scope createScope() {
+            return new Scope();
+        }
+
+        /**
+         * Runs action in a new scope that is the ambient scope of the running
+         * thread until action returns. Within action getService of this context,
+         * of its children and of Providers and Lazy services resolves scoped
+         * services from the ambient scope instead of failing, so code that has
+         * no access to the scope, such as a handler deep in a request, still
+         * gets the instances of its request. The scope is closed when action
+         * returns or throws
+         *
+         * The binding uses ScopedValue where the JDK has it: binding and lookup
+         * allocate nothing per thread and the binding ends with the call, which
+         * suits a virtual thread per request. On older JDKs a ThreadLocal is
+         * set and restored instead. Like any Scope, the ambient scope must not
+         * be used by several threads at once
+         *
+         * @param action code to run, typically the handling of one request
+         * @throws IllegalArgumentException if action is null
+         * @throws IllegalStateException    if closing the scope fails
+         */
+        @Override
+        public void runInScope(final Runnable action) {
+            runInScope(new Scope(), action);
+        }
+
+        /**
+         * Calls action in a new ambient scope, see runInScope
+         *
+         * @param action code to run, typically the handling of one request
+         * @return what action returned
+         * @throws IllegalArgumentException if action is null
+         * @throws Exception                what action threw
+         */
+        @Override
+        public <T> T callInScope(final Callable<T> action) throws Exception {
+            return callInScope(new Scope(), action);
+        }
+
+        /**
+         * Returns an instance of a service according to its lifetime
+         *
+         * @param id    id of the service
+         * @param scope scope resolving the service or null when resolving from the
+         *              context itself
+         * @return instance of the service
+         */
+        private Object resolve(final int id, final Scope scope) {
+            if (id >= this.serviceClasses.length) {
+                return resolveInherited(id, scope);
+            }
+
+            if (this.listener != null) {
+                this.listener.serviceResolved(this.serviceInterfaces[id]);
+            }
+
+            switch (this.lifetimes[id]) {
+                case SINGLETON:
+                    return instance(id);
+                case SCOPED:
+                    Scope resolving = scope == null ? ambientScope() : scope;
+                    if (resolving == null) {
+                        throw new IllegalStateException("Scoped service " + this.serviceClasses[id].getName()
+                                + " can only be resolved from a scope or within runInScope");
+                    }
+                    return resolving.scopedInstance(id);
+                case POOLED:
+                    throw new IllegalStateException("Pooled service " + this.serviceClasses[id].getName()
+                            + " can only be used through lease");
+                default:
+                    Object instance = createInstance(id, scope);
+                    if (scope != null && !isDecorated(id)) {
+                        scope.track(instance);
+                    }
+                    injectDependencies(id, instance, scope);
+                    initialize(id, instance);
+                    if (!isDecorated(id)) {
+                        return instance;
+                    }
+                    instance = decorated(id, instance);
+                    if (scope != null) {
+                        scope.track(instance);
+                    }
+                    return instance;
+            }
+        }
+
+        /**
+         * @return the part of the scope bound by runInScope that belongs to this
+         *         context, or null if no scope is bound or it was created by an
+         *         unrelated context
+         */
+        private Scope ambientScope() {
+            if (AmbientScope.current() instanceof Scope ambient) {
+                for (Context context = ambient.context(); context != null; context = context.parent) {
+                    if (context == this) {
+                        return ambient.scopeOf(this);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Runs action with scope bound as the ambient scope and closes scope
+         * when action returns or throws
+         */
+        private void runInScope(final Scope scope, final Runnable action) {
+            if (action == null) {
+                scope.close();
+                throw new IllegalArgumentException("Action can not be null");
+            }
+            try (scope) {
+                AmbientScope.runWith(scope, action);
+            }
+        }
+
+        /**
+         * Calls action through runInScope, rethrowing what it throws
+         */
+        @SuppressWarnings("unchecked")
+        private <T> T callInScope(final Scope scope, final Callable<T> action) throws Exception {
+            if (action == null) {
+                scope.close();
+                throw new IllegalArgumentException("Action can not be null");
+            }
+            Object[] result = new Object[1];
+            Exception[] failure = new Exception[1];
+            runInScope(scope, () -> {
+                try {
+                    result[0] = action.call();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return (T) result[0];
+        }
+
+        /**
+         * Resolves a service registered in an ancestor context through the context
+         * that owns it, within the owner's part of scope
+         */
+        private Object resolveInherited(final int id, final Scope scope) {
+            int inherited = id - this.serviceClasses.length;
+            Context owner = this.inheritedOwners[inherited];
+            return owner.resolve(this.inheritedIds[inherited], scope == null ? null : scope.scopeOf(owner));
+        }
+
+        /**
+         * @param id id in the flattened index
+         * @return implementation class of the service
+         */
+        private Class<?> classOf(final int id) {
+            if (id < this.serviceClasses.length) {
+                return this.serviceClasses[id];
+            }
+            int inherited = id - this.serviceClasses.length;
+            return this.inheritedOwners[inherited].serviceClasses[this.inheritedIds[inherited]];
+        }
+
+        /**
+         * @param id id in the flattened index
+         * @return registered interface of the service
+         */
+        private Class<?> interfaceOf(final int id) {
+            if (id < this.serviceClasses.length) {
+                return this.serviceInterfaces[id];
+            }
+            int inherited = id - this.serviceClasses.length;
+            return this.inheritedOwners[inherited].serviceInterfaces[this.inheritedIds[inherited]];
+        }
+
+        /**
+         * @param id id in the flattened index
+         * @return lifetime of the service
+         */
+        private ServiceLifetime lifetimeOf(final int id) {
+            if (id < this.serviceClasses.length) {
+                return this.lifetimes[id];
+            }
+            int inherited = id - this.serviceClasses.length;
+            return this.inheritedOwners[inherited].lifetimes[this.inheritedIds[inherited]];
+        }
+
+        /**
+         * @param id id in the flattened index of a pooled service
+         * @return pool of the service, owned by the context that registered it
+         */
+        private ServicePool poolOf(final int id) {
+            if (id >= this.serviceClasses.length) {
+                int inherited = id - this.serviceClasses.length;
+                return this.inheritedOwners[inherited].poolOf(this.inheritedIds[inherited]);
+            }
+            return (ServicePool) this.serviceInstances[id];
+        }
+
+        /**
+         * Creates the pool of service id, which creates, wires and initializes
+         * its instances like those of a singleton when a lease finds no idle
+         * one
+         */
+        private ServicePool createPool(final int id, final PoolConfig config) {
+            return new ServicePool(this.serviceClasses[id], config, () -> {
+                Object instance = createInstance(id, null);
+                injectDependencies(id, instance, null);
+                initialize(id, instance);
+                return decorated(id, instance);
+            }, this.listener == null ? null
+                    : failure -> this.listener.serviceFailed(this.serviceInterfaces[id], this.serviceClasses[id],
+                            failure));
+        }
+
+        /**
+         * Returns the instance of a singleton, creating it first if it is lazy and
+         * has not been used yet. Once a singleton exists this is a single acquiring
+         * array read without locking
+         *
+         * @param id id of the service
+         * @return instance of the service
+         */
+        private Object instance(final int id) {
+            Object instance = INSTANCES.getAcquire(this.serviceInstances, id);
+            if (instance != null) {
+                return instance;
+            }
+            return initializeSingleton(id);
+        }
+
+        /**
+         * Creates and wires a singleton. Creation is serialized on a single lock so
+         * that dependency cycles between singletons can not deadlock. A field cycle
+         * re-entering from the same thread gets the instance that is still being
+         * wired, or CONSTRUCTING while its constructor is still running
+         *
+         * @param id id of the service
+         * @return instance of the service or CONSTRUCTING
+         */
+        private Object initializeSingleton(final int id) {
+            synchronized (this.singletonLock) {
+                Object instance = this.serviceInstances[id];
+                if (instance != null) {
+                    return instance;
+                }
+
+                instance = this.pendingInstances[id];
+                if (instance != null) {
+                    return instance;
+                }
+                if (this.closed) {
+                    throw new IllegalStateException("Context has been closed, singleton "
+                            + this.serviceClasses[id].getName() + " can no longer be created");
+                }
+
+                try {
+                    this.pendingInstances[id] = CONSTRUCTING;
+                    instance = createInstance(id, null);
+                    this.pendingInstances[id] = instance;
+                    completeDeferredInjections(id, instance);
+                    injectDependencies(id, instance, null);
+                    initialize(id, instance);
+                    instance = decorated(id, instance);
+                } finally {
+                    this.pendingInstances[id] = null;
+                }
+
+                INSTANCES.setRelease(this.serviceInstances, id, instance);
+                return instance;
+            }
+        }
+
+        /**
+         * @return instance wrapped by the decorator of service id, or instance
+         *         if the service is not decorated
+         */
+        private Object decorated(final int id, final Object instance) {
+            return isDecorated(id) ? this.decorators[id].apply(instance) : instance;
+        }
+
+        private boolean isDecorated(final int id) {
+            return this.decorators != null && this.decorators[id] != null;
+        }
+
+        /**
+         * Assigns the fields that ran into a singleton while its constructor was
+         * running
+         */
+        private void completeDeferredInjections(final int id, final Object instance) {
+            for (int i = this.deferredInjections.size() - 1; i >= 0; i--) {
+                DeferredInjection deferred = this.deferredInjections.get(i);
+                if (deferred.waitingFor() == id) {
+                    deferred.plan().inject(deferred.field(), deferred.target(),
+                            injected(deferred.plan().fieldKind(deferred.field()), instance));
+                    this.deferredInjections.remove(i);
+                }
+            }
+        }
+
+        private Object requireService(final Object instance, final int id) {
+            if (instance == CONSTRUCTING) {
+                throw new IllegalStateException("Circular dependency detected: " + classOf(id).getName()
+                        + " was requested while its constructor is running");
+            }
+            if (instance instanceof MultiBinding) {
+                throw multipleImplementations(interfaceOf(id));
+            }
+            return instance;
+        }
+
+        private IllegalStateException multipleImplementations(final Class<?> serviceInterface) {
+            return new IllegalStateException(serviceInterface.getName()
+                    + " was added with addServices, resolve it with getServices or inject List or an array of it");
+        }
+
+        /**
+         * @param scope scope resolving the services or null
+         * @return every implementation of serviceInterface
+         */
+        @SuppressWarnings("unchecked")
+        private <T> List<T> servicesOf(final Class<T> serviceInterface, final Scope scope) {
+            int id = this.serviceIndex.idOf(serviceInterface);
+            if (id == ServiceIndex.MISSING) {
+                return List.of();
+            }
+
+            Object instance = resolve(id, scope);
+            if (instance instanceof MultiBinding binding) {
+                return (List<T>) binding.list();
+            }
+            return List.of((T) requireService(instance, id));
+        }
+
+        /**
+         * Generates and wires every singleton that is not lazy. Singletons are
+         * created on demand, so a service whose constructor needs another singleton
+         * gets it created first and field cycles between singletons are wired like
+         * before
+         *
+         * @param eager per service flag for singletons created with the context
+         */
+        private void generateInstances(final boolean[] eager) {
+            for (int i = 0; i < this.serviceClasses.length; i++) {
+                if (eager[i]) {
+                    instance(i);
+                }
+            }
+        }
+
+        /**
+         * Generates and wires the singletons that are not lazy on executor. Each
+         * service is started once every service it depends on has been created
+         * and wired, so startup takes roughly as long as the slowest dependency
+         * chain
+         *
+         * @param eager    per service flag for singletons created with the context
+         * @param executor executor running the constructors
+         * @throws IllegalStateException if services depend on each other in a cycle
+         * @throws Exception
+         */
+        private void generateInstancesConcurrently(final boolean[] eager, final Executor executor)
+                throws Exception {
+            boolean[] everyService = new boolean[eager.length];
+            Arrays.fill(everyService, true);
+
+            /**
+             * Services that are not created here stay in the graph, so a service
+             * that pulls in a lazy or transient dependency still waits for the
+             * services that one will need
+             */
+            DependencyGraph graph = new DependencyGraph(allDependencies(), everyService);
+            graph.checkAcyclic(this.serviceClasses);
+            graph.runInDependencyOrder(executor, id -> {
+                if (!eager[id]) {
+                    return;
+                }
+
+                Object instance = createInstance(id, null);
+                injectDependencies(id, instance, null);
+                initialize(id, instance);
+                INSTANCES.setRelease(this.serviceInstances, id, decorated(id, instance));
+            });
+        }
+
+        /**
+         * Creates an instance of a service and reports the time it took, including
+         * the constructor dependencies created for it, to the listener and to
+         * Flight Recorder
+         *
+         * @param scope scope the service is resolved in or null
+         */
+        private Object createInstance(final int id, final Scope scope) {
+            ServiceConstructionEvent event = CONSTRUCTION_EVENT.isEnabled() ? new ServiceConstructionEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            long start = this.listener == null ? 0L : System.nanoTime();
+
+            Object instance;
+            try {
+                instance = invokeConstructor(id, scope);
+            } catch (RuntimeException | Error e) {
+                if (this.listener != null) {
+                    this.listener.serviceFailed(this.serviceInterfaces[id], this.serviceClasses[id], e);
+                }
+                throw e;
+            }
+
+            if (this.listener != null) {
+                this.listener.serviceConstructed(this.serviceInterfaces[id], this.serviceClasses[id],
+                        System.nanoTime() - start);
+            }
+            if (event != null && event.shouldCommit()) {
+                event.serviceInterface = this.serviceInterfaces[id];
+                event.serviceClass = this.serviceClasses[id];
+                event.lifetime = this.lifetimes[id].name();
+                event.commit();
+            }
+            return instance;
+        }
+
+        /**
+         * Calls the constructor of a service through its InjectionPlan with the
+         * constructor dependencies resolved. Up to three arguments are passed
+         * without allocating an argument array
+         *
+         * @param scope scope the service is resolved in or null
+         */
+        private Object invokeConstructor(final int id, final Scope scope) {
+            InjectionPlan plan = this.plans[id];
+            int[] ids = this.dependencyIds;
+            int first = this.firstDependency[id];
+
+            switch (plan.parameterCount()) {
+                case 0:
+                    return plan.construct();
+                case 1:
+                    return plan.construct(inject(plan.parameterKind(0), ids[first], scope));
+                case 2:
+                    return plan.construct(inject(plan.parameterKind(0), ids[first], scope),
+                            inject(plan.parameterKind(1), ids[first + 1], scope));
+                case 3:
+                    return plan.construct(inject(plan.parameterKind(0), ids[first], scope),
+                            inject(plan.parameterKind(1), ids[first + 1], scope),
+                            inject(plan.parameterKind(2), ids[first + 2], scope));
+                default:
+                    Object[] arguments = new Object[plan.parameterCount()];
+                    for (int i = 0; i < arguments.length; i++) {
+                        arguments[i] = inject(plan.parameterKind(i), ids[first + i], scope);
+                    }
+                    return plan.construct(arguments);
+            }
+        }
+
+        /**
+         * Returns what is injected for a dependency: the instance itself, a
+         * Provider or Lazy that resolves it within scope later, or the
+         * implementations of a multi-binding
+         *
+         * @param kind  what the injection point declares
+         * @param id    id of the dependency
+         * @param scope scope the dependent service is resolved in or null
+         */
+        private Object inject(final InjectionKind kind, final int id, final Scope scope) {
+            switch (kind) {
+                case PROVIDER:
+                    return new ServiceProvider(id, scope);
+                case LAZY:
+                    return new LazyService(id, scope);
+                case INSTANCE:
+                    return resolveInstance(id, scope);
+                default:
+                    return injected(kind, resolve(id, scope));
+            }
+        }
+
+        /**
+         * Same as resolve, but reads a singleton that exists already directly.
+         * resolve is compiled together with the transient services it creates,
+         * too big to be inlined into every injection point, most of which
+         * depend on a singleton
+         *
+         * @param scope scope the dependent service is resolved in or null
+         */
+        private Object resolveInstance(final int id, final Scope scope) {
+            if (this.listener == null && id < this.lifetimes.length
+                    && this.lifetimes[id] == ServiceLifetime.SINGLETON) {
+                Object instance = INSTANCES.getAcquire(this.serviceInstances, id);
+                if (instance != null) {
+                    return instance;
+                }
+            }
+            return resolve(id, scope);
+        }
+
+        /**
+         * @param instance resolved dependency, a MultiBinding for a LIST or ARRAY
+         *                 injection point unless it is still CONSTRUCTING
+         * @return what is assigned to an injection point of kind
+         */
+        private Object injected(final InjectionKind kind, final Object instance) {
+            if (instance == CONSTRUCTING) {
+                return instance;
+            }
+            switch (kind) {
+                case LIST:
+                    return ((MultiBinding) instance).list();
+                case ARRAY:
+                    return ((MultiBinding) instance).array();
+                default:
+                    return instance;
+            }
+        }
+
+        /**
+         * Runs the initialization hook of a new instance and waits for the stage
+         * of an asynchronous one, so the instance is only handed out once it is
+         * ready. Reports the time it took to the listener
+         *
+         * @throws IllegalStateException if the hook fails with a checked exception
+         */
+        private void initialize(final int id, final Object instance) {
+            InjectionPlan plan = this.plans[id];
+            if (!plan.hasInitializer() || this.initializingLater
+                    && this.lifetimes[id] == ServiceLifetime.SINGLETON && !isDecorated(id)) {
+                return;
+            }
+
+            long start = this.listener == null ? 0L : System.nanoTime();
+            try {
+                CompletionStage<?> stage = plan.initialize(instance);
+                if (stage != null) {
+                    stage.toCompletableFuture().join();
+                }
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                reportInitialization(id, start, cause);
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException("Initializing " + this.serviceClasses[id].getName() + " failed", cause);
+            } catch (RuntimeException | Error e) {
+                reportInitialization(id, start, e);
+                throw e;
+            }
+            reportInitialization(id, start, null);
+        }
+
+        /**
+         * Runs the initialization hooks the singletons created by the context
+         * constructor skipped. A hook is started on executor once the hooks of
+         * every service the singleton depends on have completed, directly or
+         * through services without a hook
+         *
+         * @param executor executor running the hooks
+         * @return future completing when every hook has completed, or
+         *         exceptionally with the failure of a hook
+         * @throws IllegalStateException if services depend on each other in a
+         *                               cycle
+         */
+        private CompletableFuture<Void> initializeSingletons(final Executor executor) {
+            boolean[] everyService = new boolean[this.lifetimes.length];
+            Arrays.fill(everyService, true);
+            DependencyGraph graph = new DependencyGraph(withoutDeferred(allDependencies(), false), everyService);
+            graph.checkAcyclic(this.serviceClasses);
+
+            return graph.completeInDependencyOrder(executor, id -> {
+                Object instance = INSTANCES.getAcquire(this.serviceInstances, id);
+                if (instance == null || this.lifetimes[id] != ServiceLifetime.SINGLETON
+                        || !this.plans[id].hasInitializer() || isDecorated(id)) {
+                    return null;
+                }
+
+                long start = this.listener == null ? 0L : System.nanoTime();
+                CompletionStage<?> stage;
+                try {
+                    stage = this.plans[id].initialize(instance);
+                } catch (RuntimeException | Error e) {
+                    reportInitialization(id, start, e);
+                    throw e;
+                }
+                if (stage == null) {
+                    reportInitialization(id, start, null);
+                    return null;
+                }
+                return stage.whenComplete((ignored, failure) -> reportInitialization(id, start,
+                        failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+                                : failure));
+            });
+        }
+
+        private void reportInitialization(final int id, final long start, final Throwable failure) {
+            if (this.listener == null) {
+                return;
+            }
+            if (failure == null) {
+                this.listener.serviceInitialized(this.serviceInterfaces[id], this.serviceClasses[id],
+                        System.nanoTime() - start);
+            } else {
+                this.listener.serviceFailed(this.serviceInterfaces[id], this.serviceClasses[id], failure);
+            }
+        }
+
+        /**
+         * Injects the dependencies of a service and reports the time it took to the
+         * listener
+         *
+         * @param scope scope the service is resolved in or null
+         */
+        private void injectDependencies(final int id, final Object serviceInstance, final Scope scope) {
+            if (this.listener == null) {
+                assignFields(id, serviceInstance, scope);
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                assignFields(id, serviceInstance, scope);
+            } catch (RuntimeException | Error e) {
+                this.listener.serviceFailed(this.serviceInterfaces[id], this.serviceClasses[id], e);
+                throw e;
+            }
+            this.listener.serviceInjected(this.serviceInterfaces[id], this.serviceClasses[id],
+                    System.nanoTime() - start);
+        }
+
+        /**
+         * Writes the resolved dependencies of a service into its @Inject fields
+         * through the class' cached InjectionPlan. Fields that only hold
+         * singletons are assigned from fieldValues in one call, without resolving
+         * them again
+         *
+         * @param scope scope the service is resolved in or null
+         */
+        private void assignFields(final int id, final Object serviceInstance, final Scope scope) {
+            InjectionPlan plan = this.plans[id];
+            Object[] values = (Object[]) FIELD_VALUES.getAcquire(this.fieldValues, id);
+            if (values != null && values != NO_FIELD_VALUES) {
+                plan.injectAll(serviceInstance, values);
+                return;
+            }
+
+            int first = this.firstDependency[id] + plan.parameterCount();
+            for (int field = 0; field < plan.size(); field++) {
+                int dependencyId = this.dependencyIds[first + field];
+                if (dependencyId == ServiceIndex.MISSING) {
+                    continue;
+                }
+
+                Object dependency = inject(plan.fieldKind(field), dependencyId, scope);
+                if (dependency == CONSTRUCTING) {
+                    this.deferredInjections.add(new DeferredInjection(dependencyId, plan, field, serviceInstance));
+                } else {
+                    plan.inject(field, serviceInstance, dependency);
+                }
+            }
+
+            if (values == null) {
+                FIELD_VALUES.setRelease(this.fieldValues, id, singletonFieldValues(plan, first));
+            }
+        }
+
+        /**
+         * @param first index of the first field dependency in dependencyIds
+         * @return the singletons assigned to the fields of plan, null if one of
+         *         them does not exist yet, or NO_FIELD_VALUES if a field holds
+         *         anything else or the listener has to see every resolve
+         */
+        private Object[] singletonFieldValues(final InjectionPlan plan, final int first) {
+            if (this.listener != null || plan.size() == 0) {
+                return NO_FIELD_VALUES;
+            }
+
+            Object[] values = new Object[plan.size()];
+            for (int field = 0; field < values.length; field++) {
+                int dependencyId = this.dependencyIds[first + field];
+                if (plan.fieldKind(field) != InjectionKind.INSTANCE || dependencyId == ServiceIndex.MISSING
+                        || dependencyId >= this.lifetimes.length
+                        || this.lifetimes[dependencyId] != ServiceLifetime.SINGLETON) {
+                    return NO_FIELD_VALUES;
+                }
+
+                values[field] = INSTANCES.getAcquire(this.serviceInstances, dependencyId);
+                if (values[field] == null) {
+                    return null;
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Makes sure every service can be created: constructors must not depend on
+         * each other in a cycle, neither may transient services, and singletons must
+         * not capture a scoped service directly or through transient services
+         *
+         * @throws IllegalStateException
+         */
+        private void validateDependencies() {
+            boolean[] everyService = new boolean[this.lifetimes.length];
+            boolean[] transients = new boolean[this.lifetimes.length];
+            for (int i = 0; i < this.lifetimes.length; i++) {
+                everyService[i] = true;
+                transients[i] = this.lifetimes[i] == ServiceLifetime.TRANSIENT;
+            }
+            int[][] allDependencies = allDependencies();
+            int[][] constructorDependencies = new int[this.lifetimes.length][];
+            for (int i = 0; i < this.lifetimes.length; i++) {
+                constructorDependencies[i] = Arrays.copyOf(allDependencies[i], this.plans[i].parameterCount());
+            }
+            new DependencyGraph(withoutDeferred(constructorDependencies, true), everyService)
+                    .checkAcyclic(this.serviceClasses);
+            new DependencyGraph(withoutDeferred(allDependencies, false), transients).checkAcyclic(this.serviceClasses);
+
+            Boolean[] needsScope = new Boolean[this.lifetimes.length];
+            for (int i = 0; i < this.lifetimes.length; i++) {
+                checkPooledDependencies(i);
+                checkSingletonScope(i, needsScope);
+            }
+        }
+
+        /**
+         * @throws IllegalStateException if service id is a singleton or pooled
+         *                               and depends on a scoped service directly
+         *                               or through transient services
+         */
+        private void checkSingletonScope(final int id, final Boolean[] needsScope) {
+            ServiceLifetime lifetime = this.lifetimes[id];
+            if (lifetime != ServiceLifetime.SINGLETON && lifetime != ServiceLifetime.POOLED) {
+                return;
+            }
+            for (int i = this.firstDependency[id]; i < this.firstDependency[id + 1]; i++) {
+                int dependency = this.dependencyIds[i];
+                if (dependency != ServiceIndex.MISSING && needsScope(dependency, needsScope)) {
+                    throw new IllegalStateException((lifetime == ServiceLifetime.POOLED ? "Pooled service "
+                            : "Singleton ") + this.serviceClasses[id].getName() + " can not depend on scoped service "
+                            + classOf(dependency).getName());
+                }
+            }
+        }
+
+        /**
+         * A pooled instance is only lent out through a lease, so nothing can
+         * hold one for good
+         *
+         * @throws IllegalStateException if service id depends on a pooled
+         *                               service, with any kind of injection
+         *                               point
+         */
+        private void checkPooledDependencies(final int id) {
+            for (int i = this.firstDependency[id]; i < this.firstDependency[id + 1]; i++) {
+                int dependency = this.dependencyIds[i];
+                if (dependency != ServiceIndex.MISSING && lifetimeOf(dependency) == ServiceLifetime.POOLED) {
+                    throw new IllegalStateException(this.serviceClasses[id].getName()
+                            + " can not depend on pooled service " + classOf(dependency).getName()
+                            + ", lease it from the context instead");
+                }
+            }
+        }
+
+        /**
+         * Resolves the injection points of a replaced service like
+         * resolveConstructorDependencies and resolveDependencies, building the
+         * assignability index only if an interface lookup misses
+         *
+         * @return dependency ids of the constructor followed by the fields
+         * @throws IllegalStateException if the service can not be wired
+         */
+        private int[] resolveReplacement(final int id) {
+            InjectionPlan plan = this.plans[id];
+            int[] resolved = new int[plan.parameterCount() + plan.size()];
+            AssignabilityIndex assignabilityIndex = null;
+            for (int i = 0; i < resolved.length; i++) {
+                boolean parameter = i < plan.parameterCount();
+                Class<?> type = parameter ? plan.parameterType(i) : plan.fieldType(i - plan.parameterCount());
+                resolved[i] = this.serviceIndex.idOf(type);
+                if (resolved[i] == ServiceIndex.MISSING) {
+                    if (assignabilityIndex == null) {
+                        assignabilityIndex = new AssignabilityIndex(this.serviceClasses);
+                    }
+                    resolved[i] = assignabilityIndex.resolve(type);
+                }
+
+                if (resolved[i] != ServiceIndex.MISSING) {
+                    checkMultiBinding(kindAt(plan, i), type, resolved[i], id);
+                } else if (parameter) {
+                    throw new IllegalStateException("No service registered for " + type.getName()
+                            + " required by the constructor of " + this.serviceClasses[id].getName());
+                }
+            }
+            return resolved;
+        }
+
+        /**
+         * Finds the services depending on a service directly or through other
+         * services of this context, with any kind of injection point, and
+         * checks that those depending on it directly can take its class
+         *
+         * @return per service true if it is id or depends on it
+         * @throws IllegalStateException if an injection point of a dependent
+         *                               service can not be assigned the class
+         */
+        private boolean[] dependentsOf(final int id) {
+            int count = this.serviceClasses.length;
+            int[] firstDependent = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                for (int p = this.firstDependency[i]; p < this.firstDependency[i + 1]; p++) {
+                    int dependency = this.dependencyIds[p];
+                    if (dependency >= 0 && dependency < count) {
+                        firstDependent[dependency + 1]++;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                firstDependent[i + 1] += firstDependent[i];
+            }
+
+            int[] dependents = new int[firstDependent[count]];
+            int[] next = Arrays.copyOf(firstDependent, count);
+            for (int i = 0; i < count; i++) {
+                InjectionPlan plan = this.plans[i];
+                for (int p = this.firstDependency[i]; p < this.firstDependency[i + 1]; p++) {
+                    int dependency = this.dependencyIds[p];
+                    if (dependency < 0 || dependency >= count) {
+                        continue;
+                    }
+                    dependents[next[dependency]++] = i;
+
+                    int index = p - this.firstDependency[i];
+                    Class<?> type = index < plan.parameterCount() ? plan.parameterType(index)
+                            : plan.fieldType(index - plan.parameterCount());
+                    if (dependency == id && i != id && !type.isAssignableFrom(this.serviceClasses[id])) {
+                        throw new IllegalStateException(this.serviceClasses[i].getName() + " injects "
+                                + type.getName() + ", which " + this.serviceClasses[id].getName()
+                                + " does not implement");
+                    }
+                }
+            }
+
+            boolean[] affected = new boolean[count];
+            int[] queue = new int[count];
+            int size = 0;
+            affected[id] = true;
+            queue[size++] = id;
+            for (int head = 0; head < size; head++) {
+                int service = queue[head];
+                for (int d = firstDependent[service]; d < firstDependent[service + 1]; d++) {
+                    if (!affected[dependents[d]]) {
+                        affected[dependents[d]] = true;
+                        queue[size++] = dependents[d];
+                    }
+                }
+            }
+            return affected;
+        }
+
+        /**
+         * Runs the checks of validateDependencies that the replacement of one
+         * service can change: a cycle has to pass through the replaced service,
+         * and only the singletons depending on it can now capture a scoped
+         * service
+         *
+         * @param id       id of the replaced service
+         * @param affected services depending on it, see dependentsOf
+         * @throws IllegalStateException
+         */
+        private void validateReplacement(final int id, final boolean[] affected) {
+            if (reaches(id, id, true, false)) {
+                throw new IllegalStateException("Circular dependency detected: the constructor of "
+                        + this.serviceClasses[id].getName() + " depends on itself");
+            }
+            if (this.lifetimes[id] == ServiceLifetime.TRANSIENT && reaches(id, id, false, true)) {
+                throw new IllegalStateException("Circular dependency detected: transient service "
+                        + this.serviceClasses[id].getName() + " depends on itself");
+            }
+            checkPooledDependencies(id);
+
+            Boolean[] needsScope = new Boolean[this.lifetimes.length];
+            for (int i = 0; i < affected.length; i++) {
+                if (affected[i]) {
+                    checkSingletonScope(i, needsScope);
+                }
+            }
+        }
+
+        /**
+         * Searches the dependencies of from for target, leaving out Provider and
+         * Lazy injection points and services of ancestor contexts, which can not
+         * depend on this context
+         *
+         * @param constructorOnly true to only follow constructor parameters
+         * @param transientsOnly  true to only pass through transient services
+         * @return true if target is reached
+         */
+        private boolean reaches(final int from, final int target, final boolean constructorOnly,
+                final boolean transientsOnly) {
+            int count = this.serviceClasses.length;
+            boolean[] visited = new boolean[count];
+            int[] stack = new int[count];
+            int size = 0;
+            stack[size++] = from;
+            visited[from] = true;
+            while (size > 0) {
+                int service = stack[--size];
+                InjectionPlan plan = this.plans[service];
+                int first = this.firstDependency[service];
+                int end = constructorOnly ? first + plan.parameterCount() : this.firstDependency[service + 1];
+                for (int p = first; p < end; p++) {
+                    int dependency = this.dependencyIds[p];
+                    if (dependency < 0 || dependency >= count || kindAt(plan, p - first).isDeferred()) {
+                        continue;
+                    }
+                    if (dependency == target) {
+                        return true;
+                    }
+                    if (!visited[dependency]
+                            && (!transientsOnly || this.lifetimes[dependency] == ServiceLifetime.TRANSIENT)) {
+                        visited[dependency] = true;
+                        stack[size++] = dependency;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param index constructor parameter, or injection point after the
+         *              parameters
+         * @return what plan injects at index
+         */
+        private static InjectionKind kindAt(final InjectionPlan plan, final int index) {
+            return index < plan.parameterCount() ? plan.parameterKind(index)
+                    : plan.fieldKind(index - plan.parameterCount());
+        }
+
+        private boolean needsScope(final int id, final Boolean[] needsScope) {
+            if (id >= this.serviceClasses.length) {
+                int inherited = id - this.serviceClasses.length;
+                Context owner = this.inheritedOwners[inherited];
+                return owner.needsScope(this.inheritedIds[inherited], new Boolean[owner.serviceClasses.length]);
+            }
+
+            if (needsScope[id] == null) {
+                boolean result = this.lifetimes[id] == ServiceLifetime.SCOPED;
+                if (this.lifetimes[id] == ServiceLifetime.TRANSIENT) {
+                    for (int i = this.firstDependency[id]; i < this.firstDependency[id + 1]; i++) {
+                        int dependency = this.dependencyIds[i];
+                        result |= dependency != ServiceIndex.MISSING && needsScope(dependency, needsScope);
+                    }
+                }
+                needsScope[id] = result;
+            }
+            return needsScope[id];
+        }
+
+        /**
+         * Leaves out the Provider and Lazy injection points, which are not
+         * resolved while the service is created and so can not form a cycle
+         *
+         * @param dependencies    dependency ids per service
+         * @param constructorOnly true if dependencies only has the constructor
+         *                        parameters, false if the fields follow them
+         * @return copy of dependencies with deferred entries set to MISSING
+         */
+        private int[][] withoutDeferred(final int[][] dependencies, final boolean constructorOnly) {
+            int[][] direct = new int[dependencies.length][];
+            for (int i = 0; i < dependencies.length; i++) {
+                InjectionPlan plan = this.plans[i];
+                direct[i] = dependencies[i].clone();
+                for (int parameter = 0; parameter < plan.parameterCount(); parameter++) {
+                    if (plan.parameterKind(parameter).isDeferred()) {
+                        direct[i][parameter] = ServiceIndex.MISSING;
+                    }
+                }
+                if (constructorOnly) {
+                    continue;
+                }
+                for (int field = 0; field < plan.size(); field++) {
+                    if (plan.fieldKind(field).isDeferred()) {
+                        direct[i][plan.parameterCount() + field] = ServiceIndex.MISSING;
+                    }
+                }
+            }
+            return direct;
+        }
+
+        /**
+         * @return constructor and field dependencies of every service combined
+         */
+        private int[][] allDependencies() {
+            int[][] combined = new int[this.serviceClasses.length][];
+            for (int i = 0; i < combined.length; i++) {
+                combined[i] = Arrays.copyOfRange(this.dependencyIds, this.firstDependency[i],
+                        this.firstDependency[i + 1]);
+            }
+            return combined;
+        }
+
+        /**
+         * Resolves the constructor parameters of every registered implementation
+         * once. Unlike fields, every parameter must be satisfied. The constructor
+         * of a multi-binding takes its implementations
+         *
+         * @param assignabilityIndex supertypes of the registered implementations
+         * @param members            ids of the implementations of every
+         *                           multi-binding, null for other services
+         * @return dependency ids per service
+         * @throws IllegalStateException if a parameter can not be resolved
+         */
+        private int[][] resolveConstructorDependencies(final AssignabilityIndex assignabilityIndex,
+                final int[][] members) {
+            int[][] resolved = new int[this.serviceClasses.length][];
+            for (int i = 0; i < this.serviceClasses.length; i++) {
+                if (members[i] != null) {
+                    resolved[i] = members[i];
+                    continue;
+                }
+
+                InjectionPlan plan = this.plans[i];
+                resolved[i] = new int[plan.parameterCount()];
+                for (int parameter = 0; parameter < plan.parameterCount(); parameter++) {
+                    resolved[i][parameter] = resolveDependency(plan.parameterType(parameter), assignabilityIndex);
+                    if (resolved[i][parameter] == ServiceIndex.MISSING) {
+                        throw new IllegalStateException("No service registered for " + plan.parameterType(parameter)
+                                .getName() + " required by the constructor of " + this.serviceClasses[i].getName());
+                    }
+                    checkMultiBinding(plan.parameterKind(parameter), plan.parameterType(parameter),
+                            resolved[i][parameter], i);
+                }
+            }
+            return resolved;
+        }
+
+        /**
+         * Resolves the injection points of every registered implementation once
+         *
+         * @param assignabilityIndex supertypes of the registered implementations
+         * @return dependency ids per service
+         */
+        private int[][] resolveDependencies(final AssignabilityIndex assignabilityIndex) {
+            int[][] resolved = new int[this.serviceClasses.length][];
+            for (int i = 0; i < this.serviceClasses.length; i++) {
+                InjectionPlan plan = this.plans[i];
+                resolved[i] = new int[plan.size()];
+                for (int field = 0; field < plan.size(); field++) {
+                    resolved[i][field] = resolveDependency(plan.fieldType(field), assignabilityIndex);
+                    if (resolved[i][field] != ServiceIndex.MISSING) {
+                        checkMultiBinding(plan.fieldKind(field), plan.fieldType(field), resolved[i][field], i);
+                    }
+                }
+            }
+            return resolved;
+        }
+
+        /**
+         * Makes sure a List or array injection point depends on a multi-binding
+         * and any other does not
+         *
+         * @param kind       what the injection point declares
+         * @param type       type of the service it depends on
+         * @param dependency id of the resolved dependency
+         * @param id         id of the service declaring the injection point
+         * @throws IllegalStateException
+         */
+        private void checkMultiBinding(final InjectionKind kind, final Class<?> type, final int dependency,
+                final int id) {
+            boolean multiBinding = classOf(dependency) == MultiBinding.class;
+            boolean collection = kind == InjectionKind.LIST || kind == InjectionKind.ARRAY;
+            if (collection && !multiBinding) {
+                throw new IllegalStateException(this.serviceClasses[id].getName() + " injects every implementation of "
+                        + type.getName() + ", which was not added with addServices");
+            }
+            if (!collection && multiBinding) {
+                throw new IllegalStateException(this.serviceClasses[id].getName() + " injects " + type.getName()
+                        + ", which was added with addServices, inject List or an array of it instead");
+            }
+        }
+
+        /**
+         * @param services registrations in id order
+         * @return per service the ids of its implementations if it is a
+         *         multi-binding, null otherwise
+         */
+        private static int[][] membersOf(final List<ServiceRegistration> services) {
+            Map<Class<?>, List<Integer>> members = new HashMap<>();
+            for (int id = 0; id < services.size(); id++) {
+                if (services.get(id).member()) {
+                    members.computeIfAbsent(services.get(id).serviceInterface(), key -> new ArrayList<>()).add(id);
+                }
+            }
+
+            int[][] resolved = new int[services.size()][];
+            for (int id = 0; id < services.size(); id++) {
+                ServiceRegistration service = services.get(id);
+                if (service.serviceClass() == MultiBinding.class) {
+                    resolved[id] = members.getOrDefault(service.serviceInterface(), List.of()).stream()
+                            .mapToInt(Integer::intValue).toArray();
+                }
+            }
+            return resolved;
+        }
+
+        /**
+         * Finds the registration that satisfies an injection point. A registration
+         * made for exactly the requested interface wins, otherwise the only
+         * implementation assignable to it is used
+         *
+         * @param type               type of the injection point
+         * @param assignabilityIndex supertypes of the registered implementations
+         * @return id of the registration or ServiceIndex.MISSING
+         * @throws IllegalStateException if several implementations match
+         */
+        private int resolveDependency(final Class<?> type, final AssignabilityIndex assignabilityIndex) {
+            int id = this.serviceIndex.idOf(type);
+            if (id != ServiceIndex.MISSING) {
+                return id;
+            }
+            return assignabilityIndex.resolve(type);
+        }
+
+        /**
+         * Provider injected for a Provider<X> injection point, resolving X within
+         * the scope its owner was created in
+         */
+        private final class ServiceProvider implements Provider<Object> {
+            private final int id;
+            private final Scope scope;
+
+            ServiceProvider(final int id, final Scope scope) {
+                this.id = id;
+                this.scope = scope;
+            }
+
+            @Override
+            public Object get() {
+                return requireService(resolve(this.id, this.scope), this.id);
+            }
+        }
+
+        /**
+         * Lazy injected for a Lazy<X> injection point. The instance is published
+         * with a releasing compare and exchange and read with an acquiring load,
+         * so after the first call get() is a single field read and a null check
+         */
+        private final class LazyService implements Lazy<Object> {
+            private final int id;
+            private final Scope scope;
+
+            @SuppressWarnings("unused")
+            private Object value;
+
+            LazyService(final int id, final Scope scope) {
+                this.id = id;
+                this.scope = scope;
+            }
+
+            @Override
+            public Object get() {
+                Object instance = LAZY_VALUE.getAcquire(this);
+                if (instance != null) {
+                    return instance;
+                }
+                return initialize();
+            }
+
+            private Object initialize() {
+                Object created = requireService(resolve(this.id, this.scope), this.id);
+                Object published = LAZY_VALUE.compareAndExchangeRelease(this, null, created);
+                return published == null ? created : published;
+            }
+        }
+
+        /**
+         * Scope that owns one instance of every scoped service. Singletons are
+         * shared with the context and transients are created per request as usual.
+         * A scope is meant to be used by one request at a time and is not thread
+         * safe
+         *
+         * @author Hannu Korvala
+         */
+        public class Scope implements DependencyInjectionScope {
+            private final Object[] scopedInstances = new Object[scopedServiceCount];
+
+            /**
+             * AutoCloseable instances created by this scope in creation order,
+             * allocated when the first one is created
+             */
+            private AutoCloseable[] disposables;
+            private int disposableCount;
+            private boolean closed;
+            private final ScopeEvent event = SCOPE_EVENT.isEnabled() ? new ScopeEvent() : null;
+
+            /**
+             * Scope of the parent context holding the inherited scoped services,
+             * created when the first one is requested and closed with this scope
+             */
+            private Context.Scope parentScope;
+
+            private Scope() {
+                if (this.event != null) {
+                    this.event.begin();
+                }
+            }
+
+            /**
+             * Use to get an instance for a service within this scope
+             *
+             * @param serviceInterface interface type of what service you wish to
+             *                         receive
+             * @return instance of the service you want or null if it has not been
+             *         registered
+             * @throws IllegalArgumentException if serviceInterface is null
+             * @throws IllegalStateException    if the scope has been closed
+             */
+            @SuppressWarnings("unchecked")
+            public <T> T getService(final Class<T> serviceInterface) {
+                if (serviceInterface == null) {
+                    throw new IllegalArgumentException("Service interface can not be null");
+                }
+
+                if (this.closed) {
+                    throw new IllegalStateException("Scope has been closed");
+                }
+
+                int id = serviceIndex.idOf(serviceInterface);
+                if (id == ServiceIndex.MISSING) {
+                    return null;
+                }
+                return (T) requireService(resolve(id, this), id);
+            }
+
+            /**
+             * Use to get every implementation of a service within this scope,
+             * see Context.getServices
+             *
+             * @param serviceInterface interface type of the services
+             * @return immutable List of the services, empty if none has been
+             *         registered
+             * @throws IllegalArgumentException if serviceInterface is null
+             * @throws IllegalStateException    if the scope has been closed
+             */
+            @Override
+            public <T> List<T> getServices(final Class<T> serviceInterface) {
+                if (serviceInterface == null) {
+                    throw new IllegalArgumentException("Service interface can not be null");
+                }
+
+                if (this.closed) {
+                    throw new IllegalStateException("Scope has been closed");
+                }
+                return servicesOf(serviceInterface, this);
+            }
+
+            /**
+             * Use to get an instance for a service within this scope through its
+             * key
+             *
+             * @param key key returned by keyOf of the context of this scope
+             * @return instance of the service
+             * @throws IllegalArgumentException if key is null or belongs to another
+             *                                  context
+             * @throws IllegalStateException    if the scope has been closed
+             */
+            @SuppressWarnings("unchecked")
+            public <T> T getServiceByKey(final ServiceKey<T> key) {
+                int id = checkKey(key);
+                if (this.closed) {
+                    throw new IllegalStateException("Scope has been closed");
+                }
+                return (T) requireService(resolve(id, this), id);
+            }
+
+            /**
+             * Creates a new scope next to this one, it does not share scoped
+             * instances with this scope
+             *
+             * @return Scope
+             */
+            public Scope createScope() {
+                return new Scope();
+            }
+
+            /**
+             * Runs action in a new scope next to this one, see
+             * Context.runInScope
+             *
+             * @param action code to run
+             * @throws IllegalArgumentException if action is null
+             */
+            @Override
+            public void runInScope(final Runnable action) {
+                Context.this.runInScope(new Scope(), action);
+            }
+
+            /**
+             * Calls action in a new scope next to this one, see
+             * Context.callInScope
+             *
+             * @param action code to run
+             * @return what action returned
+             * @throws IllegalArgumentException if action is null
+             * @throws Exception                what action threw
+             */
+            @Override
+            public <T> T callInScope(final Callable<T> action) throws Exception {
+                return Context.this.callInScope(new Scope(), action);
+            }
+
+            /**
+             * @return context that created this scope
+             */
+            private Context context() {
+                return Context.this;
+            }
+
+            /**
+             * Disposes the AutoCloseable services created by this scope in reverse
+             * creation order. Every service is closed even if some of them fail
+             *
+             * @throws IllegalStateException carrying the failures as suppressed
+             *                               exceptions
+             */
+            public void close() {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+
+                IllegalStateException failure = null;
+                for (int i = this.disposableCount - 1; i >= 0; i--) {
+                    try {
+                        this.disposables[i].close();
+                    } catch (Exception e) {
+                        if (failure == null) {
+                            failure = new IllegalStateException("Closing scoped services failed");
+                        }
+                        failure.addSuppressed(e);
+                    }
+                }
+
+                if (this.parentScope != null) {
+                    try {
+                        this.parentScope.close();
+                    } catch (IllegalStateException e) {
+                        if (failure == null) {
+                            failure = new IllegalStateException("Closing scoped services failed");
+                        }
+                        for (Throwable suppressed : e.getSuppressed()) {
+                            failure.addSuppressed(suppressed);
+                        }
+                    }
+                    this.parentScope = null;
+                }
+
+                if (this.event != null) {
+                    this.event.end();
+                    if (this.event.shouldCommit()) {
+                        this.event.disposedCount = this.disposableCount;
+                        this.event.failedCount = failure == null ? 0 : failure.getSuppressed().length;
+                        this.event.commit();
+                    }
+                }
+                this.disposables = null;
+                this.disposableCount = 0;
+
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+
+            /**
+             * @param owner this scope's context or one of its ancestors
+             * @return the part of this scope that belongs to owner
+             */
+            private Context.Scope scopeOf(final Context owner) {
+                if (owner == Context.this) {
+                    return this;
+                }
+                if (this.parentScope == null) {
+                    this.parentScope = parent.createScope();
+                }
+                return this.parentScope.scopeOf(owner);
+            }
+
+            private Object scopedInstance(final int id) {
+                int slot = scopeSlots[id];
+                Object instance = this.scopedInstances[slot];
+                if (instance == null) {
+                    instance = createInstance(id, this);
+                    this.scopedInstances[slot] = instance;
+                    if (!isDecorated(id)) {
+                        track(instance);
+                    }
+                    injectDependencies(id, instance, this);
+                    initialize(id, instance);
+                    if (isDecorated(id)) {
+                        instance = decorated(id, instance);
+                        this.scopedInstances[slot] = instance;
+                        track(instance);
+                    }
+                }
+                return instance;
+            }
+
+            private void track(final Object instance) {
+                if (!(instance instanceof AutoCloseable disposable)) {
+                    return;
+                }
+
+                if (this.disposables == null) {
+                    this.disposables = new AutoCloseable[4];
+                } else if (this.disposableCount == this.disposables.length) {
+                    this.disposables = Arrays.copyOf(this.disposables, this.disposableCount * 2);
+                }
+                this.disposables[this.disposableCount++] = disposable;
+            }
+        }
+    }
+
+    private List<ServiceRegistration> serviceRegstrationContainer = new ArrayList<>();
+
+    /**
+     * First registration of every interface, the multi-binding of one added
+     * with addServices, so checking for duplicates does not scan every
+     * registration
+     */
+    private final Map<Class<?>, ServiceRegistration> registrationsByInterface = new HashMap<>();
+    private boolean lazyByDefault = false;
+    private Executor executor = null;
+    private final List<DependencyInjectionListener> listeners = new ArrayList<>();
+    private Wiring wiring = null;
+    private Duration initializationTimeout = null;
+    private Duration disposalTimeout = null;
+    private final Map<Class<?>, List<Function<Object, Object>>> decorators = new LinkedHashMap<>();
+    private final List<InterceptingClass.Binding> interceptors = new ArrayList<>();
+
+    /**
+     * Add a service to dependency injection. The service is a singleton, same as
+     * with addSingleton
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addService(final Class<?> serviceInterface, final Class<?> service)
+            throws IllegalArgumentException {
+        return register(serviceInterface, service, ServiceLifetime.SINGLETON, false);
+    }
+
+    /**
+     * Add a service that has one instance shared by the whole context
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addSingleton(final Class<?> serviceInterface, final Class<?> service)
+            throws IllegalArgumentException {
+        return register(serviceInterface, service, ServiceLifetime.SINGLETON, false);
+    }
+
+    /**
+     * Add a service that has one instance per scope created with createScope.
+     * Scoped services can not be resolved from the context itself
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addScoped(final Class<?> serviceInterface, final Class<?> service)
+            throws IllegalArgumentException {
+        return register(serviceInterface, service, ServiceLifetime.SCOPED, false);
+    }
+
+    /**
+     * Add a service that is created again every time it is requested or injected
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addTransient(final Class<?> serviceInterface, final Class<?> service)
+            throws IllegalArgumentException {
+        return register(serviceInterface, service, ServiceLifetime.TRANSIENT, false);
+    }
+
+    /**
+     * Add a service that is expensive to create and not thread safe, such as a
+     * parser or a codec, and keep up to config.maxSize instances of it for
+     * reuse. A pooled service is only handed out through Context.lease, which
+     * gives one caller an instance at a time and takes it back when the lease
+     * is closed, resetting it first if it is a ResettableService. Instances
+     * are created on demand and wired like singletons. No service can
+     * depend on a pooled one, lease it from the context where it is used
+     * instead
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @param config           bounds of the pool
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addPooled(final Class<?> serviceInterface, final Class<?> service,
+            final PoolConfig config) throws IllegalArgumentException {
+        if (config == null) {
+            throw new IllegalArgumentException("Pool config can not be null");
+        }
+
+        return register(serviceInterface, service, ServiceLifetime.POOLED, false, config);
+    }
+
+    /**
+     * Add several implementations of one interface, for example a chain of
+     * handlers or validators. Each implementation is a singleton of its own.
+     * The context resolves all of them at once with getServices and injects
+     * them into fields and constructor parameters declared as List or an array
+     * of the interface, in registration order. The List is created once with
+     * the context. Adding more implementations of the same interface later
+     * appends them
+     *
+     * getService, Provider and Lazy can not resolve an interface added this way
+     *
+     * @param serviceInterface Interface the services implement
+     * @param services         Implementations of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if no implementation is given, one does
+     *                                  not implement the interface or the
+     *                                  interface was added with another method
+     */
+    @Override
+    public DependencyInjectionBuilder addServices(final Class<?> serviceInterface, final Class<?>... services)
+            throws IllegalArgumentException {
+        if (serviceInterface == null) {
+            throw new IllegalArgumentException("Service interface can not be null");
+        }
+
+        if (services == null || services.length == 0) {
+            throw new IllegalArgumentException("At least one service implementation is required");
+        }
+
+        for (Class<?> service : services) {
+            if (service == null) {
+                throw new IllegalArgumentException("Service implementation can not be null");
+            }
+            if (doesInterfaceMatchWithClass(serviceInterface, service) == false) {
+                throw new IllegalArgumentException("Service does not implement designated interface");
+            }
+        }
+
+        ServiceRegistration registered = registrationOf(serviceInterface);
+        if (registered == null) {
+            addRegistration(new ServiceRegistration(serviceInterface, MultiBinding.class, ServiceLifetime.SINGLETON,
+                    false, false, null));
+        } else if (registered.serviceClass() != MultiBinding.class) {
+            throw new IllegalArgumentException("Service with interface has already been added");
+        }
+
+        for (Class<?> service : services) {
+            addRegistration(new ServiceRegistration(serviceInterface, service, ServiceLifetime.SINGLETON, false, true,
+                    null));
+        }
+        this.wiring = null;
+        return this;
+    }
+
+    /**
+     * Add a singleton that is created when it is first requested or injected
+     * instead of when the context is built
+     *
+     * @param serviceInterface Interface the service implements
+     * @param service          Implementation of said interface
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addLazyService(final Class<?> serviceInterface, final Class<?> service)
+            throws IllegalArgumentException {
+        return register(serviceInterface, service, ServiceLifetime.SINGLETON, true);
+    }
+
+    /**
+     * Add every class annotated with @Service in the service indexes the
+     * annotation processor wrote into the jars and class directories of the
+     * context class loader of the current thread, see addIndexed(ClassLoader)
+     *
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if an indexed interface has already been
+     *                                  added
+     * @throws IllegalStateException    if an index is malformed or refers to a
+     *                                  class that does not exist
+     * @throws IOException
+     */
+    public DependencyInjectionBuilder addIndexed() throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return addIndexed(loader == null ? DependencyInjectionBuilder.class.getClassLoader() : loader);
+    }
+
+    /**
+     * Add every class annotated with @Service in the service indexes visible to
+     * loader, with the interface and lifetime given in the annotation. Each
+     * jar or class directory contributes its own index, found with a single
+     * resource lookup instead of a scan of the class path, and the indexes of
+     * all of them are merged in class path order. A fat jar has to keep the
+     * indexes of its dependencies by concatenating them like the other files
+     * in META-INF/services, as the assembly descriptor of this project does
+     *
+     * @param loader class loader finding the indexes and loading the services
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if loader is null or an indexed
+     *                                  interface has already been added
+     * @throws IllegalStateException    if an index is malformed or refers to a
+     *                                  class that does not exist
+     * @throws IOException
+     */
+    public DependencyInjectionBuilder addIndexed(final ClassLoader loader) throws IOException {
+        if (loader == null) {
+            throw new IllegalArgumentException("Class loader can not be null");
+        }
+
+        for (IndexedServices.Entry entry : IndexedServices.read(loader)) {
+            try {
+                register(entry.serviceInterface(), entry.serviceClass(), entry.lifetime(), false);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(e.getMessage() + ": " + entry.serviceInterface().getName()
+                        + ", indexed for " + entry.serviceClass().getName() + " in " + entry.source(), e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Create every singleton on first use, as if all of them had been added with
+     * addLazyService
+     *
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     */
+    public DependencyInjectionBuilder useLazyInstantiation() {
+        this.lazyByDefault = true;
+        return this;
+    }
+
+    /**
+     * Create services concurrently on executor when the context is built. A
+     * service is started as soon as the services it depends on are ready, which
+     * requires the dependencies between them to be free of cycles
+     *
+     * @param executor executor such as a ForkJoinPool running the constructors
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder useExecutor(final Executor executor) throws IllegalArgumentException {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can not be null");
+        }
+
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Report construction and injection timings, resolutions and failures of
+     * every registration to listener. Listeners are called on the thread doing
+     * the work, in the order they were added
+     *
+     * @param listener listener receiving the reports
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException
+     */
+    public DependencyInjectionBuilder addListener(final DependencyInjectionListener listener)
+            throws IllegalArgumentException {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+
+        this.listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Fail buildAsync when the initialization hooks have not completed within
+     * timeout. Hooks that are still running are not interrupted
+     *
+     * @param timeout time allowed for every hook together
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if timeout is null or negative
+     */
+    public DependencyInjectionBuilder useInitializationTimeout(final Duration timeout)
+            throws IllegalArgumentException {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout can not be null or negative");
+        }
+
+        this.initializationTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Give up waiting for a service closed by Context.close after timeout and
+     * report it as failed. The close call is not interrupted
+     *
+     * @param timeout time allowed for the close method of every service
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if timeout is null or negative
+     */
+    public DependencyInjectionBuilder useDisposalTimeout(final Duration timeout) throws IllegalArgumentException {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout can not be null or negative");
+        }
+
+        this.disposalTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Wrap every instance created for serviceInterface with decorator, for
+     * example to cache, retry or time its calls. The decorator receives the
+     * instance once it has been wired and initialized, and what it returns is
+     * what the context hands out and injects. Decorators of the same
+     * interface are applied in the order they were added, each wrapping the
+     * result of the one before, after the interceptors. A decorator added
+     * for a multi-binding wraps every implementation
+     *
+     * A decorated service is only visible through its interface, and a
+     * singleton in a field cycle is injected undecorated into the services of
+     * the cycle that are created while it is being wired. The context closes
+     * the decorator instead of the instance, so a decorator has to pass close
+     * on if the instance is AutoCloseable
+     *
+     * @param serviceInterface interface of the services to decorate
+     * @param decorator        returns the instance to use in place of its
+     *                         argument
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if an argument is null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> DependencyInjectionBuilder decorate(final Class<T> serviceInterface,
+            final Function<? super T, ? extends T> decorator) throws IllegalArgumentException {
+        if (serviceInterface == null) {
+            throw new IllegalArgumentException("Service interface can not be null");
+        }
+        if (decorator == null) {
+            throw new IllegalArgumentException("Decorator can not be null");
+        }
+
+        this.decorators.computeIfAbsent(serviceInterface, key -> new ArrayList<>())
+                .add((Function<Object, Object>) decorator);
+        return this;
+    }
+
+    /**
+     * Intercept the methods of the services that carry annotation on the
+     * method or the type, in the implementation or the interface. The
+     * context implements the interface of such a service with a generated
+     * class calling the handles built by the interceptors, see
+     * MethodInterceptor, so an intercepted call costs little more than a
+     * direct one. Interceptors of the same method are chained in the order
+     * they were added, the first one outermost. The same limits apply as to
+     * decorate
+     *
+     * @param annotation  annotation marking the methods to intercept, retained
+     *                    at run time
+     * @param interceptor builds the handles of the intercepted methods
+     * @return For fluent building, returns an instance of itself
+     *         (DependencyInjectionBuilder)
+     * @throws IllegalArgumentException if an argument is null or annotation is
+     *                                  not retained at run time
+     */
+    public DependencyInjectionBuilder addInterceptor(final Class<? extends Annotation> annotation,
+            final MethodInterceptor interceptor) throws IllegalArgumentException {
+        if (annotation == null) {
+            throw new IllegalArgumentException("Annotation can not be null");
+        }
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Interceptor can not be null");
+        }
+        Retention retention = annotation.getAnnotation(Retention.class);
+        if (retention == null || retention.value() != RetentionPolicy.RUNTIME) {
+            throw new IllegalArgumentException(annotation.getName() + " is not retained at run time");
+        }
+
+        this.interceptors.add(new InterceptingClass.Binding(annotation, interceptor));
+        return this;
+    }
+
+    public static DependencyInjectionBuilder startBuild() {
+        return new DependencyInjectionBuilder();
+    }
+
+    /**
+     * Builds the context. Initialization hooks of every service created are
+     * run, and asynchronous hooks waited for, one by one right after the
+     * service has been wired
+     *
+     * @return Context
+     * @throws Exception
+     */
+    public Context build() throws Exception {
+        return build(null, false);
+    }
+
+    /**
+     * Builds the context like build, but leaves the initialization hooks of
+     * its singletons to the returned future: the hooks, see PostInject,
+     * InitializingService and AsyncInitializingService, run concurrently on
+     * the executor set with useExecutor, or on threads started for the build.
+     * A hook starts once the hooks of every service the singleton depends on
+     * have completed, so like useExecutor this requires the dependencies to be
+     * free of cycles. Services created later run their hooks when they are
+     * created
+     *
+     * @return future completing with the context once every hook has
+     *         completed, or exceptionally with the first failing hook or a
+     *         TimeoutException after the timeout set with
+     *         useInitializationTimeout
+     * @throws IllegalStateException if the services depend on each other in a
+     *                               cycle
+     * @throws Exception             if the services can not be created
+     */
+    public CompletableFuture<Context> buildAsync() throws Exception {
+        Context context = build(null, true);
+
+        Executor initializers = this.executor;
+        ExecutorService threads = null;
+        if (initializers == null) {
+            AtomicInteger count = new AtomicInteger();
+            threads = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "service-initializer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            initializers = threads;
+        }
+
+        CompletableFuture<Context> ready;
+        try {
+            ready = context.initializeSingletons(initializers).thenApply(ignored -> context);
+        } catch (RuntimeException e) {
+            if (threads != null) {
+                threads.shutdown();
+            }
+            throw e;
+        }
+        if (this.initializationTimeout != null) {
+            ready.orTimeout(this.initializationTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (threads != null) {
+            ExecutorService started = threads;
+            ready.whenComplete((ignored, failure) -> started.shutdown());
+        }
+        return ready;
+    }
+
+    /**
+     * @param parent          context of the services not registered in this
+     *                        builder or null
+     * @param initializeLater true to leave the initialization hooks of the
+     *                        singletons to Context.initializeSingletons
+     */
+    private Context build(final Context parent, final boolean initializeLater) throws Exception {
+        DependencyInjectionListener listener = switch (this.listeners.size()) {
+            case 0 -> null;
+            case 1 -> this.listeners.get(0);
+            default -> new ListenerGroup(this.listeners.toArray(new DependencyInjectionListener[0]));
+        };
+        Decorations decorations = this.decorators.isEmpty() && this.interceptors.isEmpty() ? null
+                : new Decorations(this.decorators, this.interceptors);
+        return new Context(this.serviceRegstrationContainer, this.lazyByDefault, this.executor, this.disposalTimeout,
+                decorations, listener, parent, this.wiring, initializeLater);
+    }
+
+    /**
+     * Starts a build from a snapshot written with Context.writeSnapshot, using
+     * the context class loader of the current thread to load the services
+     *
+     * @param path snapshot file
+     * @return builder with the registrations of the snapshot
+     * @throws IllegalArgumentException if path is null
+     * @throws IllegalStateException    if the file is not a valid snapshot or
+     *                                  refers to a class that does not exist
+     * @throws IOException
+     * @see #fromSnapshot(Path, ClassLoader)
+     */
+    public static DependencyInjectionBuilder fromSnapshot(final Path path) throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return fromSnapshot(path, loader == null ? DependencyInjectionBuilder.class.getClassLoader() : loader);
+    }
+
+    /**
+     * Starts a build from a snapshot written with Context.writeSnapshot. The
+     * file is memory mapped and checked against its checksum. While the class
+     * files of the services are unchanged, the context is built straight from
+     * the recorded wiring: constructors and fields are looked up by name and
+     * registration checks, field scanning, dependency resolution and validation
+     * are skipped. Otherwise the registrations are replayed and the context is
+     * built as if they had been added one by one
+     *
+     * Settings such as lazy instantiation, the executor and listeners are not
+     * part of the snapshot. Registering another service discards the recorded
+     * wiring
+     *
+     * @param path   snapshot file
+     * @param loader class loader loading the services
+     * @return builder with the registrations of the snapshot
+     * @throws IllegalArgumentException if path or loader is null
+     * @throws IllegalStateException    if the file is not a valid snapshot or
+     *                                  refers to a class that does not exist
+     * @throws IOException
+     */
+    public static DependencyInjectionBuilder fromSnapshot(final Path path, final ClassLoader loader)
+            throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path can not be null");
+        }
+        if (loader == null) {
+            throw new IllegalArgumentException("Class loader can not be null");
+        }
+
+        WiringSnapshot snapshot = WiringSnapshot.read(path);
+        WiringSnapshot.Service[] services = snapshot.services();
+        Class<?>[] serviceInterfaces = new Class<?>[services.length];
+        Class<?>[] serviceClasses = new Class<?>[services.length];
+        Map<String, Class<?>> loaded = new HashMap<>();
+        loaded.put(MultiBinding.class.getName(), MultiBinding.class);
+        try {
+            for (int i = 0; i < services.length; i++) {
+                serviceInterfaces[i] = load(services[i].serviceInterface(), loader, loaded);
+                serviceClasses[i] = load(services[i].serviceClass(), loader, loaded);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Snapshot refers to a class that does not exist", e);
+        }
+
+        DependencyInjectionBuilder builder = new DependencyInjectionBuilder();
+        if (snapshot.fingerprint() == WiringSnapshot.fingerprintOf(serviceInterfaces, serviceClasses)) {
+            try {
+                builder.wiring = restore(services, serviceInterfaces, serviceClasses, loader, loaded);
+                for (int i = 0; i < services.length; i++) {
+                    builder.addRegistration(new ServiceRegistration(serviceInterfaces[i], serviceClasses[i],
+                            services[i].lifetime(), services[i].lazy(), services[i].member(), null));
+                }
+                return builder;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // the classes are unchanged but can not be wired as recorded, replay
+            }
+        }
+
+        for (int i = 0; i < services.length; i++) {
+            if (services[i].member()) {
+                builder.addServices(serviceInterfaces[i], serviceClasses[i]);
+            } else if (serviceClasses[i] != MultiBinding.class) {
+                builder.register(serviceInterfaces[i], serviceClasses[i], services[i].lifetime(), services[i].lazy());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Restores the injection plans of services, the dependencies are taken over
+     * as recorded
+     */
+    private static Wiring restore(final WiringSnapshot.Service[] services, final Class<?>[] serviceInterfaces,
+            final Class<?>[] serviceClasses, final ClassLoader loader, final Map<String, Class<?>> loaded)
+            throws ReflectiveOperationException {
+        InjectionPlan[] plans = new InjectionPlan[services.length];
+        int[][] constructorDependencies = new int[services.length][];
+        int[][] dependencies = new int[services.length][];
+
+        for (int i = 0; i < services.length; i++) {
+            WiringSnapshot.Service service = services[i];
+            constructorDependencies[i] = service.constructorDependencies();
+            dependencies[i] = service.dependencies();
+            if (serviceClasses[i] == MultiBinding.class) {
+                plans[i] = InjectionPlan.collecting(serviceInterfaces[i], service.signature().length);
+                continue;
+            }
+
+            Class<?>[] signature = new Class<?>[service.signature().length];
+            for (int parameter = 0; parameter < signature.length; parameter++) {
+                signature[parameter] = load(service.signature()[parameter], loader, loaded);
+            }
+            plans[i] = InjectionPlan.restore(serviceClasses[i], signature, service.parameterKinds(),
+                    service.fieldNames(), service.fieldKinds());
+        }
+        return new Wiring(plans, constructorDependencies, dependencies);
+    }
+
+    /**
+     * Loads a class without initializing it, most names of a snapshot are
+     * repeated in the signatures of the services depending on them
+     */
+    private static Class<?> load(final String name, final ClassLoader loader, final Map<String, Class<?>> loaded)
+            throws ClassNotFoundException {
+        Class<?> type = loaded.get(name);
+        if (type == null) {
+            type = Class.forName(name, false, loader);
+            loaded.put(name, type);
+        }
+        return type;
+    }
+
+    private DependencyInjectionBuilder register(final Class<?> serviceInterface, final Class<?> service,
+            final ServiceLifetime lifetime, final boolean lazy) throws IllegalArgumentException {
+        return register(serviceInterface, service, lifetime, lazy, null);
+    }
+
+    private DependencyInjectionBuilder register(final Class<?> serviceInterface, final Class<?> service,
+            final ServiceLifetime lifetime, final boolean lazy, final PoolConfig pool)
+            throws IllegalArgumentException {
+
+        if (serviceInterface == null) {
+            throw new IllegalArgumentException("Service interface can not be null");
+        }
+
+        if (service == null) {
+            throw new IllegalArgumentException("Service implementation can not be null");
+        }
+
+        if (doesInterfaceMatchWithClass(serviceInterface, service) == false) {
+            throw new IllegalArgumentException("Service does not implement designated interface");
+        }
+
+        if (registrationOf(serviceInterface) != null) {
+            throw new IllegalArgumentException("Service with interface has already been added");
+        }
+
+        addRegistration(new ServiceRegistration(serviceInterface, service, lifetime, lazy, false, pool));
+        this.wiring = null;
+        return this;
+    }
+
+    /**
+     * Helper class that checks if a class implements an interface
+     *
+     * @param serviceInterface interface that should be implemented
+     * @param service          implementing class that should implement interface
+     * @return boolean: true if interface matches with implementation
+     */
+    private static boolean doesInterfaceMatchWithClass(final Class<?> serviceInterface, final Class<?> service) {
+        Class<?>[] interfaces = ClassMetadata.of(service).interfaces();
+        boolean isValidInterface = false;
+
+        for (Class<?> currentInterface : interfaces) {
+            if (currentInterface.getSimpleName().equals(serviceInterface.getSimpleName())) {
+                isValidInterface = true;
+            }
+        }
+
+        return isValidInterface;
+    }
+
+    /**
+     * @return the first registration of serviceInterface, the multi-binding if
+     *         it was added with addServices, or null
+     */
+    private ServiceRegistration registrationOf(final Class<?> serviceInterface) {
+        return this.registrationsByInterface.get(serviceInterface);
+    }
+
+    private void addRegistration(final ServiceRegistration registration) {
+        this.serviceRegstrationContainer.add(registration);
+        this.registrationsByInterface.putIfAbsent(registration.serviceInterface(), registration);
     }
 }
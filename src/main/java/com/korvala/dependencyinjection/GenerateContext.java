@@ -0,0 +1,18 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// Apply attribute to a class to generate a DependencyInjectionContext for the
+/// listed services at compile time. The generated class is called name, lives in
+/// the package of the annotated class and wires everything without reflection.
+/// Requires dependencyinjection-processor on the annotation processor path
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateContext {
+    String name();
+
+    Registration[] services();
+}
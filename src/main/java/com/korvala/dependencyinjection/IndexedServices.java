@@ -0,0 +1,109 @@
+package com.korvala.dependencyinjection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IndexedServices: reads the service indexes written by the annotation
+ * processor for the classes annotated with @Service
+ *
+ * Every jar or class directory carries at most one index at Service.INDEX,
+ * so finding all of them is one resource lookup per class path entry, which
+ * for a jar is a lookup in its already opened table of contents. No jar is
+ * walked and no class is loaded besides the indexed ones. The indexes are
+ * merged in class path order, an entry found in several of them, as happens
+ * when a fat jar concatenates the indexes of its dependencies next to the
+ * originals, is taken once.
+ *
+ * @author Hannu Korvala
+ */
+final class IndexedServices {
+
+    /**
+     * Record of one indexed class and the index it was found in
+     */
+    record Entry(Class<?> serviceInterface, Class<?> serviceClass, ServiceLifetime lifetime, URL source) {
+    }
+
+    private IndexedServices() {
+    }
+
+    /**
+     * @param loader class loader finding the indexes and loading the classes,
+     *               which are not initialized
+     * @return entries of every index visible to loader
+     * @throws IllegalStateException if an index is malformed or refers to a
+     *                               class that does not exist
+     * @throws IOException
+     */
+    static List<Entry> read(final ClassLoader loader) throws IOException {
+        Set<String> seen = new HashSet<>();
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Class<?>> loaded = new HashMap<>();
+
+        Enumeration<URL> indexes = loader.getResources(Service.INDEX);
+        while (indexes.hasMoreElements()) {
+            URL index = indexes.nextElement();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                int number = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    number++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#") || !seen.add(line)) {
+                        continue;
+                    }
+                    entries.add(parse(line, index, number, loader, loaded));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static Entry parse(final String line, final URL index, final int number, final ClassLoader loader,
+            final Map<String, Class<?>> loaded) {
+        String[] fields = line.split("\\s+");
+        if (fields.length < 2 || fields.length > 3) {
+            throw new IllegalStateException(index + " line " + number + " is not a service entry: " + line);
+        }
+
+        ServiceLifetime lifetime = ServiceLifetime.SINGLETON;
+        if (fields.length == 3) {
+            try {
+                lifetime = ServiceLifetime.valueOf(fields[2]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException(index + " line " + number + " has an unknown lifetime " + fields[2]);
+            }
+            if (lifetime == ServiceLifetime.POOLED) {
+                throw new IllegalStateException(index + " line " + number
+                        + " is pooled, pooled services have to be added with addPooled");
+            }
+        }
+        try {
+            return new Entry(load(fields[0], loader, loaded), load(fields[1], loader, loaded), lifetime, index);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(index + " line " + number + " refers to a class that does not exist",
+                    e);
+        }
+    }
+
+    private static Class<?> load(final String name, final ClassLoader loader, final Map<String, Class<?>> loaded)
+            throws ClassNotFoundException {
+        Class<?> type = loaded.get(name);
+        if (type == null) {
+            type = Class.forName(name, false, loader);
+            loaded.put(name, type);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,21 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * InitializingService: implemented by a service that needs blocking work done
+ * once it has been constructed and its @Inject fields assigned, such as opening
+ * a connection pool
+ *
+ * The container calls initialize before the service is handed out. Services
+ * the service depends on have been initialized already, unless they depend on
+ * each other in a cycle. The same can be done without implementing this
+ * interface by annotating a method with @PostInject.
+ *
+ * @author Hannu Korvala
+ */
+public interface InitializingService {
+
+    /**
+     * @throws Exception if the service can not be used
+     */
+    void initialize() throws Exception;
+}
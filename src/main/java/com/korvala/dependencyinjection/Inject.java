@@ -5,8 +5,9 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
-/// Apply attribute to class field to enable dependency injection on it
-@Target(ElementType.FIELD)
+/// Apply attribute to class field to enable dependency injection on it,
+/// or to the constructor the container should call with resolved dependencies
+@Target({ ElementType.FIELD, ElementType.CONSTRUCTOR })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Inject {
 
@@ -0,0 +1,167 @@
+package com.korvala.dependencyinjection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.korvala.dependencyinjection.ClassFileWriter.Bytecode;
+import com.korvala.dependencyinjection.ClassFileWriter.ConstantPool;
+
+/**
+ * InjectingClass: generates the Injector that calls the constructor, the
+ * setters and the initialization hook of one InjectionPlan through constant
+ * handles
+ *
+ * The class is a hidden class next to InjectionPlan. It holds the constructor
+ * handle, the setters combined into one tableSwitch handle selecting the
+ * field by its index, the hook and every setter on its own in static final
+ * fields set from the class data. A call of such a handle is folded into the
+ * constructor call or the field store itself, where the same handles in the
+ * fields of the plan are called indirectly. injectAll stores every field one
+ * after the other with the setter of each index as a constant.
+ *
+ * The class is not tied to the class loader of the container, it is unloaded
+ * together with the plan holding its only instance.
+ *
+ * @author Hannu Korvala
+ */
+final class InjectingClass {
+
+    private static final String INJECTOR = ClassFileWriter.internalName(InjectionPlan.Injector.class);
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+
+    private InjectingClass() {
+    }
+
+    /**
+     * @param serviceClass class the plan creates, names the generated class
+     * @param constructor  handle of the constructor taking and returning
+     *                     Objects, or an Object[]
+     * @param injection    handle taking the index of an injection point, the
+     *                     target and the value
+     * @param initializer  handle taking the target and returning the stage of
+     *                     an asynchronous hook or null
+     * @param setters      handle per injection point taking the target and the
+     *                     value
+     * @return instance of the generated class
+     * @throws IllegalStateException if the class can not be defined
+     */
+    static InjectionPlan.Injector injectorOf(final Class<?> serviceClass, final MethodHandle constructor,
+            final MethodHandle injection, final MethodHandle initializer, final MethodHandle[] setters) {
+        List<MethodHandle> classData = new ArrayList<>(List.of(constructor, injection, initializer));
+        classData.addAll(Arrays.asList(setters));
+        try {
+            MethodHandles.Lookup generated = MethodHandles.lookup().defineHiddenClassWithClassData(
+                    classFile(serviceClass, setters.length), classData, true);
+            return (InjectionPlan.Injector) generated.findConstructor(generated.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Can not define the injector of " + serviceClass.getName(), t);
+        }
+    }
+
+    private static byte[] classFile(final Class<?> serviceClass, final int setters) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(INJECTOR + "$" + serviceClass.getSimpleName());
+        int superClass = pool.classRef(INJECTOR);
+        int methodHandle = pool.classRef(METHOD_HANDLE);
+
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeShort(0x0030);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            List<String> fields = new ArrayList<>(List.of("constructor", "injection", "initializer"));
+            for (int i = 0; i < setters; i++) {
+                fields.add("setter" + i);
+            }
+            out.writeShort(fields.size());
+            for (String field : fields) {
+                ClassFileWriter.writeMember(out, 0x001A, pool.utf8(field), pool.utf8(METHOD_HANDLE_DESCRIPTOR));
+            }
+
+            out.writeShort(10);
+
+            Bytecode constructor = new Bytecode();
+            constructor.op(0x2a).op(0xb7).u2(pool.memberRef(10, superClass, "<init>", "()V")).op(0xb1);
+            ClassFileWriter.writeMethod(out, pool, 0x0001, "<init>", "()V", constructor, 1, 1);
+            ClassFileWriter.writeClassDataInitializer(out, pool, thisClass, fields);
+
+            for (int parameters = 0; parameters <= 3; parameters++) {
+                Bytecode call = new Bytecode();
+                for (int i = 1; i <= parameters; i++) {
+                    call.op(0x2a + i);
+                }
+                writeCall(out, pool, thisClass, methodHandle, "construct",
+                        MethodType.genericMethodType(parameters).toMethodDescriptorString(), "constructor", call, 0xb0,
+                        parameters + 1);
+            }
+            writeCall(out, pool, thisClass, methodHandle, "construct", "([" + OBJECT_DESCRIPTOR + ")"
+                    + OBJECT_DESCRIPTOR, "constructor", new Bytecode().op(0x2b), 0xb0, 2);
+
+            writeCall(out, pool, thisClass, methodHandle, "inject", "(I" + OBJECT_DESCRIPTOR + OBJECT_DESCRIPTOR
+                    + ")V", "injection", new Bytecode().op(0x1b).op(0x2c).op(0x2d), 0xb1, 4);
+            writeCall(out, pool, thisClass, methodHandle, "initialize", "(" + OBJECT_DESCRIPTOR + ")"
+                    + OBJECT_DESCRIPTOR, "initializer", new Bytecode().op(0x2b), 0xb0, 2);
+            writeInjectAll(out, pool, thisClass, methodHandle, setters);
+
+            out.writeShort(0);
+            out.flush();
+            return ClassFileWriter.toClassFile(pool, body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes injectAll(Object target, Object[] values), calling the handle in
+     * field setter i with the target and values[i] for every i in turn
+     */
+    private static void writeInjectAll(final DataOutputStream out, final ConstantPool pool, final int thisClass,
+            final int methodHandle, final int setters) throws IOException {
+        String setterDescriptor = "(" + OBJECT_DESCRIPTOR + OBJECT_DESCRIPTOR + ")V";
+        int invokeExact = pool.memberRef(10, methodHandle, "invokeExact", setterDescriptor);
+        Bytecode stores = new Bytecode();
+        for (int i = 0; i < setters; i++) {
+            stores.op(0xb2).u2(pool.memberRef(9, thisClass, "setter" + i, METHOD_HANDLE_DESCRIPTOR));
+            stores.op(0x2b).op(0x2c).op(0x11).u2(i).op(0x32);
+            stores.op(0xb6).u2(invokeExact);
+        }
+        stores.op(0xb1);
+        ClassFileWriter.writeMethod(out, pool, 0x0001, "injectAll", "(" + OBJECT_DESCRIPTOR + "[" + OBJECT_DESCRIPTOR
+                + ")V", stores, 4, 3);
+    }
+
+    /**
+     * Writes a method passing its arguments to the handle in field with
+     * invokeExact and returning what the handle returns
+     *
+     * @param arguments instructions loading the arguments
+     * @param returns   return instruction
+     * @param slots     stack and local variable slots the method needs
+     */
+    private static void writeCall(final DataOutputStream out, final ConstantPool pool, final int thisClass,
+            final int methodHandle, final String name, final String descriptor, final String field,
+            final Bytecode arguments, final int returns, final int slots) throws IOException {
+        Bytecode call = new Bytecode();
+        call.op(0xb2).u2(pool.memberRef(9, thisClass, field, METHOD_HANDLE_DESCRIPTOR));
+        for (byte instruction : arguments.toByteArray()) {
+            call.op(instruction & 0xff);
+        }
+        call.op(0xb6).u2(pool.memberRef(10, methodHandle, "invokeExact", descriptor)).op(returns);
+        ClassFileWriter.writeMethod(out, pool, 0x0001, name, descriptor, call, slots, slots);
+    }
+}
@@ -0,0 +1,785 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * InjectionPlan: the constructor and the @Inject fields of one implementation
+ * class compiled into method handles
+ *
+ * Plans are compiled the first time a class is wired and cached in its
+ * ClassMetadata for the lifetime of the class, so later builds skip
+ * constructor and field scanning, annotation lookups and access checks
+ * altogether.
+ *
+ * The constructor is chosen in this order: the constructor marked with
+ * @Inject, the only public constructor, the public no argument constructor.
+ *
+ * A constructor parameter or field declared as Provider<X> or Lazy<X> is
+ * recorded with the type X and the kind of wrapper to inject, one declared as
+ * List<X> or X[] with the type X of the multi-binding to inject.
+ *
+ * The initialization hook is InitializingService.initialize,
+ * AsyncInitializingService.initializeAsync or the method marked with
+ * @PostInject, compiled into a handle returning the CompletionStage of an
+ * asynchronous hook or null.
+ *
+ * The handles live in the fields of a plan shared by every context, so the
+ * JIT calls them indirectly. Once a plan has created INJECTOR_THRESHOLD
+ * instances it calls them through the class InjectingClass generates for it
+ * instead, which holds them in constants the JIT folds into the constructor
+ * call and plain field stores, and assigns every field in one call with
+ * injectAll when the context knows all the values already. A singleton is
+ * created once and never costs a generated class.
+ *
+ * @author Hannu Korvala
+ */
+final class InjectionPlan {
+
+    /**
+     * What is injected into a constructor parameter or field for the service it
+     * depends on
+     */
+    enum InjectionKind {
+        /**
+         * The instance itself
+         */
+        INSTANCE,
+
+        /**
+         * A Provider resolving the instance on every call
+         */
+        PROVIDER,
+
+        /**
+         * A Lazy resolving the instance on the first call
+         */
+        LAZY,
+
+        /**
+         * The immutable List of every implementation of a multi-binding
+         */
+        LIST,
+
+        /**
+         * A copy of the array of every implementation of a multi-binding
+         */
+        ARRAY;
+
+        /**
+         * @return true if the dependency is not resolved while the service is
+         *         created, so it can not take part in a cycle
+         */
+        boolean isDeferred() {
+            return this == PROVIDER || this == LAZY;
+        }
+    }
+
+    /**
+     * Constructors with more parameters than this are called with the arguments
+     * spread from an array, fewer are called with invokeExact directly
+     */
+    private static final int MAX_DIRECT_ARGUMENTS = 3;
+
+    /**
+     * Instances a plan creates through the handles in its fields before it
+     * generates its Injector, about as many as the time defining the class
+     * takes saves
+     */
+    private static final int INJECTOR_THRESHOLD = 1000;
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType INITIALIZER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandle NO_INJECTION_POINT;
+
+    static {
+        try {
+            NO_INJECTION_POINT = MethodHandles.lookup().findStatic(InjectionPlan.class, "noInjectionPoint",
+                    MethodType.methodType(void.class, int.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?> serviceClass;
+    private final Class<?>[] parameterTypes;
+    private final InjectionKind[] parameterKinds;
+    private final Class<?>[] signature;
+    private final MethodHandle constructor;
+    private final Class<?>[] fieldTypes;
+    private final InjectionKind[] fieldKinds;
+    private final String[] fieldNames;
+    private final MethodHandle[] setters;
+
+    /**
+     * Initialization hook taking the instance and returning the stage of an
+     * asynchronous hook, null if the class has none
+     */
+    private record Initializer(MethodHandle hook, boolean asynchronous) {
+    }
+
+    private final Initializer initializer;
+
+    /**
+     * Calls the handles, replaced by the generated Injector once the plan has
+     * created INJECTOR_THRESHOLD instances. A race may generate it twice,
+     * either copy is as good as the other
+     */
+    private Injector injector = new HandleInjector();
+
+    /**
+     * Calls the constructor, the setters and the initialization hook of a plan,
+     * with the same arguments as the plan's methods of the same name
+     */
+    abstract static class Injector {
+
+        abstract Object construct() throws Throwable;
+
+        abstract Object construct(Object first) throws Throwable;
+
+        abstract Object construct(Object first, Object second) throws Throwable;
+
+        abstract Object construct(Object first, Object second, Object third) throws Throwable;
+
+        abstract Object construct(Object[] arguments) throws Throwable;
+
+        abstract void inject(int injectionPoint, Object target, Object value) throws Throwable;
+
+        abstract void injectAll(Object target, Object[] values) throws Throwable;
+
+        abstract Object initialize(Object target) throws Throwable;
+    }
+
+    /**
+     * Injector calling the handles in the fields of the plan and counting the
+     * instances it creates
+     */
+    private final class HandleInjector extends Injector {
+        private int constructions;
+
+        @Override
+        Object construct() throws Throwable {
+            count();
+            return InjectionPlan.this.constructor.invokeExact();
+        }
+
+        @Override
+        Object construct(final Object first) throws Throwable {
+            count();
+            return InjectionPlan.this.constructor.invokeExact(first);
+        }
+
+        @Override
+        Object construct(final Object first, final Object second) throws Throwable {
+            count();
+            return InjectionPlan.this.constructor.invokeExact(first, second);
+        }
+
+        @Override
+        Object construct(final Object first, final Object second, final Object third) throws Throwable {
+            count();
+            return InjectionPlan.this.constructor.invokeExact(first, second, third);
+        }
+
+        @Override
+        Object construct(final Object[] arguments) throws Throwable {
+            count();
+            return InjectionPlan.this.constructor.invokeExact(arguments);
+        }
+
+        @Override
+        void inject(final int injectionPoint, final Object target, final Object value) throws Throwable {
+            InjectionPlan.this.setters[injectionPoint].invokeExact(target, value);
+        }
+
+        @Override
+        void injectAll(final Object target, final Object[] values) throws Throwable {
+            for (int i = 0; i < values.length; i++) {
+                InjectionPlan.this.setters[i].invokeExact(target, values[i]);
+            }
+        }
+
+        @Override
+        Object initialize(final Object target) throws Throwable {
+            return (Object) InjectionPlan.this.initializer.hook().invokeExact(target);
+        }
+
+        /**
+         * Generates the Injector of the plan when this one has created
+         * INJECTOR_THRESHOLD instances. Threads racing past the threshold at
+         * most generate it twice, increments are only lost to threads reading
+         * the same count
+         */
+        private void count() {
+            if (++this.constructions == INJECTOR_THRESHOLD) {
+                InjectionPlan.this.injector = generateInjector();
+            }
+        }
+    }
+
+    private InjectionPlan(final Class<?> serviceClass, final Class<?>[] parameterTypes,
+            final InjectionKind[] parameterKinds, final Class<?>[] signature, final MethodHandle constructor,
+            final Class<?>[] fieldTypes, final InjectionKind[] fieldKinds, final String[] fieldNames,
+            final MethodHandle[] setters, final Initializer initializer) {
+        this.serviceClass = serviceClass;
+        this.parameterTypes = parameterTypes;
+        this.parameterKinds = parameterKinds;
+        this.signature = signature;
+        this.constructor = constructor;
+        this.fieldTypes = fieldTypes;
+        this.fieldKinds = fieldKinds;
+        this.fieldNames = fieldNames;
+        this.setters = setters;
+        this.initializer = initializer;
+    }
+
+    /**
+     * Plan of the MultiBinding of serviceInterface: its constructor takes one
+     * instance of every implementation. Not cached, the number of
+     * implementations differs between contexts
+     *
+     * @param serviceInterface interface of the multi-binding
+     * @param members          number of implementations
+     * @return InjectionPlan
+     */
+    static InjectionPlan collecting(final Class<?> serviceInterface, final int members) {
+        MethodHandle factory;
+        try {
+            factory = MethodHandles.lookup().findConstructor(MultiBinding.class,
+                    MethodType.methodType(void.class, Class.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        factory = MethodHandles.insertArguments(factory, 0, serviceInterface)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        if (members <= MAX_DIRECT_ARGUMENTS) {
+            factory = factory.asCollector(Object[].class, members);
+        }
+
+        Class<?>[] parameterTypes = new Class<?>[members];
+        InjectionKind[] parameterKinds = new InjectionKind[members];
+        Arrays.fill(parameterTypes, serviceInterface);
+        Arrays.fill(parameterKinds, InjectionKind.INSTANCE);
+        return new InjectionPlan(MultiBinding.class, parameterTypes, parameterKinds, parameterTypes, factory,
+                new Class<?>[0], new InjectionKind[0], new String[0], new MethodHandle[0], null);
+    }
+
+    /**
+     * Returns the cached plan of a class, compiling it on first use
+     *
+     * @param serviceClass implementation class
+     * @return InjectionPlan
+     * @throws IllegalStateException if no constructor can be chosen
+     */
+    static InjectionPlan of(final Class<?> serviceClass) {
+        return ClassMetadata.of(serviceClass).plan();
+    }
+
+    /**
+     * @return number of constructor parameters
+     */
+    int parameterCount() {
+        return this.parameterTypes.length;
+    }
+
+    /**
+     * @param parameter index of the constructor parameter
+     * @return type of the service the parameter depends on
+     */
+    Class<?> parameterType(final int parameter) {
+        return this.parameterTypes[parameter];
+    }
+
+    /**
+     * @param parameter index of the constructor parameter
+     * @return what is passed to the parameter
+     */
+    InjectionKind parameterKind(final int parameter) {
+        return this.parameterKinds[parameter];
+    }
+
+    /**
+     * @param parameter index of the constructor parameter
+     * @return type the constructor declares for the parameter
+     */
+    Class<?> declaredParameterType(final int parameter) {
+        return this.signature[parameter];
+    }
+
+    /**
+     * @return number of injection points
+     */
+    int size() {
+        return this.fieldTypes.length;
+    }
+
+    /**
+     * @param injectionPoint index of the injection point
+     * @return type of the service the field depends on
+     */
+    Class<?> fieldType(final int injectionPoint) {
+        return this.fieldTypes[injectionPoint];
+    }
+
+    /**
+     * @param injectionPoint index of the injection point
+     * @return name of the field
+     */
+    String fieldName(final int injectionPoint) {
+        return this.fieldNames[injectionPoint];
+    }
+
+    /**
+     * @param injectionPoint index of the injection point
+     * @return what is assigned to the field
+     */
+    InjectionKind fieldKind(final int injectionPoint) {
+        return this.fieldKinds[injectionPoint];
+    }
+
+    /**
+     * Calls a constructor without parameters
+     */
+    Object construct() {
+        try {
+            return this.injector.construct();
+        } catch (Throwable t) {
+            throw constructionFailure(t);
+        }
+    }
+
+    /**
+     * Calls a constructor with one parameter
+     */
+    Object construct(final Object first) {
+        try {
+            return this.injector.construct(first);
+        } catch (Throwable t) {
+            throw constructionFailure(t);
+        }
+    }
+
+    /**
+     * Calls a constructor with two parameters
+     */
+    Object construct(final Object first, final Object second) {
+        try {
+            return this.injector.construct(first, second);
+        } catch (Throwable t) {
+            throw constructionFailure(t);
+        }
+    }
+
+    /**
+     * Calls a constructor with three parameters
+     */
+    Object construct(final Object first, final Object second, final Object third) {
+        try {
+            return this.injector.construct(first, second, third);
+        } catch (Throwable t) {
+            throw constructionFailure(t);
+        }
+    }
+
+    /**
+     * Calls a constructor with more than three parameters
+     *
+     * @param arguments one value per constructor parameter
+     */
+    Object construct(final Object[] arguments) {
+        try {
+            return this.injector.construct(arguments);
+        } catch (Throwable t) {
+            throw constructionFailure(t);
+        }
+    }
+
+    /**
+     * Assigns a value to an injection point of target
+     *
+     * @param injectionPoint index of the injection point
+     * @param target         instance of the class this plan was compiled for
+     * @param value          value to assign
+     */
+    void inject(final int injectionPoint, final Object target, final Object value) {
+        try {
+            this.injector.inject(injectionPoint, target, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Injection into " + target.getClass().getName() + " failed", t);
+        }
+    }
+
+    /**
+     * Assigns a value to every injection point of target
+     *
+     * @param target instance of the class this plan was compiled for
+     * @param values one value per injection point
+     */
+    void injectAll(final Object target, final Object[] values) {
+        try {
+            this.injector.injectAll(target, values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Injection into " + target.getClass().getName() + " failed", t);
+        }
+    }
+
+    /**
+     * @return true if the class has an initialization hook
+     */
+    boolean hasInitializer() {
+        return this.initializer != null;
+    }
+
+    /**
+     * Calls the initialization hook of target
+     *
+     * @param target instance of the class this plan was compiled for, with its
+     *               fields assigned
+     * @return stage of an asynchronous hook, null once a synchronous hook has
+     *         returned
+     * @throws IllegalStateException if the hook throws a checked exception or
+     *                               an asynchronous hook returns null
+     */
+    CompletionStage<?> initialize(final Object target) {
+        Object stage;
+        try {
+            stage = this.injector.initialize(target);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Initializing " + this.serviceClass.getName() + " failed", t);
+        }
+        if (stage == null && this.initializer.asynchronous()) {
+            throw new IllegalStateException(this.serviceClass.getName() + " returned no CompletionStage to wait for");
+        }
+        return (CompletionStage<?>) stage;
+    }
+
+    /**
+     * @return Injector calling the handles of this plan as constants
+     */
+    private Injector generateInjector() {
+        MethodHandle injection = NO_INJECTION_POINT;
+        if (this.setters.length > 0) {
+            MethodHandle[] cases = new MethodHandle[this.setters.length];
+            for (int i = 0; i < cases.length; i++) {
+                cases[i] = MethodHandles.dropArguments(this.setters[i], 0, int.class);
+            }
+            injection = MethodHandles.tableSwitch(NO_INJECTION_POINT, cases);
+        }
+        MethodHandle hook = this.initializer == null ? MethodHandles.empty(INITIALIZER_TYPE) : this.initializer.hook();
+        return InjectingClass.injectorOf(this.serviceClass, this.constructor, injection, hook, this.setters);
+    }
+
+    /**
+     * Fallback of the generated Injector for an index no setter has
+     */
+    @SuppressWarnings("unused")
+    private static void noInjectionPoint(final int injectionPoint, final Object target, final Object value) {
+        throw new IndexOutOfBoundsException(injectionPoint);
+    }
+
+    private RuntimeException constructionFailure(final Throwable t) {
+        if (t instanceof RuntimeException e) {
+            return e;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        return new IllegalStateException("Could not create service " + this.serviceClass.getName(), t);
+    }
+
+    /**
+     * Compiles a new plan, use of() to get the cached one
+     */
+    static InjectionPlan compile(final Class<?> serviceClass) {
+        Constructor<?> constructor = chooseConstructor(serviceClass);
+        MethodHandle factory = factoryOf(constructor);
+        int parameters = constructor.getParameterCount();
+
+        Class<?>[] signature = constructor.getParameterTypes();
+        InjectionKind[] parameterKinds = new InjectionKind[parameters];
+        for (int i = 0; i < parameters; i++) {
+            parameterKinds[i] = kindOf(signature[i]);
+        }
+        Class<?>[] parameterTypes = parameterTypesOf(constructor, parameterKinds);
+
+        List<Class<?>> fieldTypes = new ArrayList<>();
+        List<InjectionKind> fieldKinds = new ArrayList<>();
+        List<String> fieldNames = new ArrayList<>();
+        List<MethodHandle> setters = new ArrayList<>();
+
+        for (Field field : serviceClass.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(Inject.class)) {
+                continue;
+            }
+
+            setters.add(setterOf(field));
+            InjectionKind kind = kindOf(field.getType());
+            fieldKinds.add(kind);
+            fieldNames.add(field.getName());
+            fieldTypes.add(dependencyType(kind, field.getType(), field.getGenericType(), "Field " + field));
+        }
+
+        return new InjectionPlan(serviceClass, parameterTypes, parameterKinds, signature, factory,
+                fieldTypes.toArray(new Class<?>[0]), fieldKinds.toArray(new InjectionKind[0]),
+                fieldNames.toArray(new String[0]), setters.toArray(new MethodHandle[0]), initializerOf(serviceClass));
+    }
+
+    /**
+     * Rebuilds a plan from the constructor signature and the field names of an
+     * earlier compiled plan, looking each member up by name instead of choosing
+     * the constructor and scanning the fields and their annotations. The plan
+     * is cached like a compiled one, a plan already cached for the class is
+     * returned if it has the same members
+     *
+     * @param serviceClass   implementation class
+     * @param signature      declared parameter types of the constructor to call
+     * @param parameterKinds what is passed to each parameter
+     * @param fieldNames     names of the @Inject fields
+     * @param fieldKinds     what is assigned to each field
+     * @return InjectionPlan
+     * @throws NoSuchMethodException if the constructor no longer exists
+     * @throws NoSuchFieldException  if a field no longer exists
+     */
+    static InjectionPlan restore(final Class<?> serviceClass, final Class<?>[] signature,
+            final InjectionKind[] parameterKinds, final String[] fieldNames, final InjectionKind[] fieldKinds)
+            throws NoSuchMethodException, NoSuchFieldException {
+        ClassMetadata metadata = ClassMetadata.of(serviceClass);
+        InjectionPlan cached = metadata.cachedPlan();
+        if (cached != null && Arrays.equals(cached.signature, signature) && Arrays.equals(cached.fieldNames,
+                fieldNames)) {
+            return cached;
+        }
+
+        Constructor<?> constructor = serviceClass.getDeclaredConstructor(signature);
+        MethodHandle factory = factoryOf(constructor);
+
+        Class<?>[] fieldTypes = new Class<?>[fieldNames.length];
+        MethodHandle[] setters = new MethodHandle[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            Field field = serviceClass.getDeclaredField(fieldNames[i]);
+            fieldTypes[i] = dependencyType(fieldKinds[i], field.getType(), field.getGenericType(), "Field " + field);
+            setters[i] = setterOf(field);
+        }
+
+        InjectionPlan restored = new InjectionPlan(serviceClass, parameterTypesOf(constructor, parameterKinds),
+                parameterKinds, signature, factory, fieldTypes, fieldKinds, fieldNames, setters,
+                initializerOf(serviceClass));
+        metadata.cachePlan(restored);
+        return restored;
+    }
+
+    /**
+     * @return types of the services passed to the constructor parameters, the
+     *         type provided for a Provider or Lazy parameter and the type of
+     *         the multi-binding for a List or array parameter
+     */
+    private static Class<?>[] parameterTypesOf(final Constructor<?> constructor,
+            final InjectionKind[] parameterKinds) {
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Type[] genericParameterTypes = constructor.getGenericParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterKinds[i] != InjectionKind.INSTANCE) {
+                /**
+                 * Generic parameter types leave out synthetic parameters, which
+                 * only classes the container can not construct anyway have
+                 */
+                Type generic = genericParameterTypes.length == parameterTypes.length ? genericParameterTypes[i]
+                        : parameterTypes[i];
+                parameterTypes[i] = dependencyType(parameterKinds[i], parameterTypes[i], generic,
+                        "Parameter " + i + " of " + constructor);
+            }
+        }
+        return parameterTypes;
+    }
+
+    /**
+     * @return handle of the constructor taking Objects, or an Object[] with more
+     *         than MAX_DIRECT_ARGUMENTS parameters
+     */
+    private static MethodHandle factoryOf(final Constructor<?> constructor) {
+        MethodHandle factory;
+        constructor.setAccessible(true);
+        try {
+            factory = MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Constructor " + constructor + " can not be called", e);
+        }
+
+        int parameters = constructor.getParameterCount();
+        factory = factory.asType(MethodType.genericMethodType(parameters));
+        if (parameters > MAX_DIRECT_ARGUMENTS) {
+            factory = factory.asSpreader(Object[].class, parameters);
+        }
+        return factory;
+    }
+
+    private static MethodHandle setterOf(final Field field) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Field " + field + " can not be injected", e);
+        }
+    }
+
+    /**
+     * Finds the initialization hook: an InitializingService or
+     * AsyncInitializingService method, or the @PostInject method declared by
+     * the class or its nearest superclass declaring one
+     *
+     * @return hook or null
+     * @throws IllegalStateException if the class has several hooks or the
+     *                               @PostInject method can not be called
+     */
+    private static Initializer initializerOf(final Class<?> serviceClass) {
+        Method annotated = null;
+        for (Class<?> type = serviceClass; type != null && annotated == null; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(PostInject.class)) {
+                    continue;
+                }
+                if (annotated != null) {
+                    throw new IllegalStateException(type.getName() + " has more than one @PostInject method");
+                }
+                annotated = method;
+            }
+        }
+
+        Method implemented = null;
+        try {
+            if (AsyncInitializingService.class.isAssignableFrom(serviceClass)) {
+                implemented = AsyncInitializingService.class.getMethod("initializeAsync");
+            }
+            if (InitializingService.class.isAssignableFrom(serviceClass)) {
+                if (implemented != null) {
+                    throw new IllegalStateException(serviceClass.getName()
+                            + " can not be both an InitializingService and an AsyncInitializingService");
+                }
+                implemented = InitializingService.class.getMethod("initialize");
+            }
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        if (implemented != null && annotated != null && !(annotated.getName().equals(implemented.getName())
+                && annotated.getParameterCount() == 0)) {
+            throw new IllegalStateException(serviceClass.getName()
+                    + " has both a @PostInject method and an initialization interface");
+        }
+        Method hook = implemented != null ? implemented : annotated;
+        if (hook == null) {
+            return null;
+        }
+
+        if (hook.getParameterCount() != 0 || Modifier.isStatic(hook.getModifiers())) {
+            throw new IllegalStateException(
+                    "@PostInject method " + hook + " must be an instance method without parameters");
+        }
+        boolean asynchronous = CompletionStage.class.isAssignableFrom(hook.getReturnType());
+        if (!asynchronous && hook.getReturnType() != void.class) {
+            throw new IllegalStateException("@PostInject method " + hook + " must return void or a CompletionStage");
+        }
+
+        hook.setAccessible(true);
+        try {
+            return new Initializer(MethodHandles.lookup().unreflect(hook).asType(INITIALIZER_TYPE), asynchronous);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("@PostInject method " + hook + " can not be called", e);
+        }
+    }
+
+    private static InjectionKind kindOf(final Class<?> declaredType) {
+        if (declaredType == Provider.class) {
+            return InjectionKind.PROVIDER;
+        }
+        if (declaredType == Lazy.class) {
+            return InjectionKind.LAZY;
+        }
+        if (declaredType == List.class) {
+            return InjectionKind.LIST;
+        }
+        if (declaredType.isArray()) {
+            return InjectionKind.ARRAY;
+        }
+        return InjectionKind.INSTANCE;
+    }
+
+    /**
+     * @return type of the service an injection point of kind depends on
+     */
+    private static Class<?> dependencyType(final InjectionKind kind, final Class<?> declaredType,
+            final Type genericType, final String injectionPoint) {
+        switch (kind) {
+            case INSTANCE:
+                return declaredType;
+            case ARRAY:
+                return declaredType.getComponentType();
+            default:
+                return providedType(genericType, injectionPoint);
+        }
+    }
+
+    /**
+     * @param genericType Provider<X>, Lazy<X> or List<X>
+     * @return X, or its raw type if X is parameterized itself
+     * @throws IllegalStateException if the type argument is missing or not a
+     *                               concrete type
+     */
+    private static Class<?> providedType(final Type genericType, final String injectionPoint) {
+        if (genericType instanceof ParameterizedType parameterized) {
+            Type argument = parameterized.getActualTypeArguments()[0];
+            if (argument instanceof Class<?> type) {
+                return type;
+            }
+            if (argument instanceof ParameterizedType parameterizedArgument) {
+                return (Class<?>) parameterizedArgument.getRawType();
+            }
+        }
+        throw new IllegalStateException(injectionPoint + " must name the service type it provides");
+    }
+
+    private static Constructor<?> chooseConstructor(final Class<?> serviceClass) {
+        Constructor<?> chosen = null;
+        for (Constructor<?> constructor : serviceClass.getDeclaredConstructors()) {
+            if (!constructor.isAnnotationPresent(Inject.class)) {
+                continue;
+            }
+            if (chosen != null) {
+                throw new IllegalStateException(serviceClass.getName() + " has more than one @Inject constructor");
+            }
+            chosen = constructor;
+        }
+        if (chosen != null) {
+            return chosen;
+        }
+
+        Constructor<?>[] publicConstructors = serviceClass.getConstructors();
+        if (publicConstructors.length == 1) {
+            return publicConstructors[0];
+        }
+
+        try {
+            return serviceClass.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(serviceClass.getName()
+                    + " needs an @Inject constructor, a single public constructor or a public no argument constructor");
+        }
+    }
+}
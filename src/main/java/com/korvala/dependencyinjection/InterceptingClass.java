@@ -0,0 +1,264 @@
+package com.korvala.dependencyinjection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.korvala.dependencyinjection.ClassFileWriter.Bytecode;
+import com.korvala.dependencyinjection.ClassFileWriter.ConstantPool;
+
+/**
+ * InterceptingClass: generates the class that implements a service interface
+ * by calling the interceptor chain of every method
+ *
+ * The class is a hidden class defined in the package of the interface. It
+ * holds the service in a final field and the chain of every method, built
+ * once from the MethodInterceptors, in a static final MethodHandle field set
+ * from the class data. A method loads its handle and calls invokeExact with
+ * the service and its own arguments unchanged, so the JIT sees a constant
+ * handle and inlines the chain as if the calls had been written by hand, with
+ * no boxing and no argument array. An implementation that is AutoCloseable
+ * stays closeable through the generated class.
+ *
+ * The class file is written with ClassFileWriter.
+ *
+ * @author Hannu Korvala
+ */
+final class InterceptingClass {
+
+    /**
+     * Interceptor registered for the methods carrying annotation
+     */
+    record Binding(Class<? extends Annotation> annotation, MethodInterceptor interceptor) {
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+    private static final MethodType WRAPPER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private InterceptingClass() {
+    }
+
+    /**
+     * Builds the interceptor chains of the methods of serviceInterface and
+     * generates the class calling them
+     *
+     * @param serviceInterface interface the generated class implements
+     * @param serviceClass     implementation it wraps
+     * @param bindings         interceptors, the first one outermost
+     * @return handle taking an instance of serviceClass and returning the
+     *         instance of the generated class wrapping it, or null if no
+     *         interceptor applies to any method
+     * @throws IllegalStateException if an interceptor fails or returns an
+     *                               unusable handle, or the class can not be
+     *                               defined next to serviceInterface
+     */
+    static MethodHandle wrapperOf(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final List<Binding> bindings) {
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(serviceInterface, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can not intercept " + serviceInterface.getName(), e);
+        }
+
+        List<Method> methods = methodsOf(serviceInterface);
+        List<MethodHandle> chains = new ArrayList<>(methods.size());
+        boolean intercepted = false;
+        for (Method method : methods) {
+            MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                    .insertParameterTypes(0, serviceInterface);
+            MethodHandle chain;
+            try {
+                chain = lookup.unreflect(method).asType(type);
+                for (int i = bindings.size() - 1; i >= 0; i--) {
+                    Annotation annotation = annotationOf(method, serviceInterface, serviceClass,
+                            bindings.get(i).annotation());
+                    if (annotation == null) {
+                        continue;
+                    }
+                    MethodHandle next = bindings.get(i).interceptor().intercept(method, annotation, chain);
+                    if (next == null) {
+                        throw new IllegalStateException(bindings.get(i).interceptor().getClass().getName()
+                                + " returned no handle for " + method);
+                    }
+                    chain = next.asType(type);
+                    intercepted = true;
+                }
+            } catch (ReflectiveOperationException | WrongMethodTypeException e) {
+                throw new IllegalStateException("Intercepting " + method + " failed", e);
+            }
+            chains.add(chain);
+        }
+        if (!intercepted) {
+            return null;
+        }
+
+        boolean closeable = AutoCloseable.class.isAssignableFrom(serviceClass)
+                && methods.stream().noneMatch(method -> method.getName().equals("close")
+                        && method.getParameterCount() == 0);
+        byte[] classFile = classFile(serviceInterface, methods, closeable);
+        try {
+            MethodHandles.Lookup generated = lookup.defineHiddenClassWithClassData(classFile, chains, true);
+            return generated.findConstructor(generated.lookupClass(),
+                    MethodType.methodType(void.class, serviceInterface)).asType(WRAPPER_TYPE);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Can not define the intercepting class of " + serviceInterface.getName()
+                    + ", it has to be loaded by the same class loader as the container", e);
+        }
+    }
+
+    /**
+     * @return instance methods of serviceInterface and its superinterfaces,
+     *         one per name and descriptor
+     */
+    private static List<Method> methodsOf(final Class<?> serviceInterface) {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : serviceInterface.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.putIfAbsent(method.getName() + MethodType.methodType(method.getReturnType(),
+                        method.getParameterTypes()).toMethodDescriptorString(), method);
+            }
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private static Annotation annotationOf(final Method method, final Class<?> serviceInterface,
+            final Class<?> serviceClass, final Class<? extends Annotation> annotationType) {
+        try {
+            Annotation annotation = serviceClass.getMethod(method.getName(), method.getParameterTypes())
+                    .getAnnotation(annotationType);
+            if (annotation != null) {
+                return annotation;
+            }
+        } catch (NoSuchMethodException e) {
+            // a default method the implementation does not override
+        }
+
+        Annotation annotation = method.getAnnotation(annotationType);
+        if (annotation == null) {
+            annotation = serviceClass.getAnnotation(annotationType);
+        }
+        if (annotation == null) {
+            annotation = method.getDeclaringClass().getAnnotation(annotationType);
+        }
+        if (annotation == null) {
+            annotation = serviceInterface.getAnnotation(annotationType);
+        }
+        return annotation;
+    }
+
+    /**
+     * @param methods   methods to implement, method i calls the handle at index
+     *                  i of the class data
+     * @param closeable true to implement AutoCloseable by closing the service
+     */
+    private static byte[] classFile(final Class<?> serviceInterface, final List<Method> methods,
+            final boolean closeable) {
+        String interfaceName = ClassFileWriter.internalName(serviceInterface);
+        String interfaceDescriptor = serviceInterface.descriptorString();
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(interfaceName + "$Intercepted");
+        int superClass = pool.classRef(OBJECT);
+        int implemented = pool.classRef(interfaceName);
+        int autoCloseable = pool.classRef("java/lang/AutoCloseable");
+        int methodHandle = pool.classRef(METHOD_HANDLE);
+        int target = pool.memberRef(9, thisClass, "target", interfaceDescriptor);
+
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeShort(0x0030);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(closeable ? 2 : 1);
+            out.writeShort(implemented);
+            if (closeable) {
+                out.writeShort(autoCloseable);
+            }
+
+            out.writeShort(1 + methods.size());
+            ClassFileWriter.writeMember(out, 0x0012, pool.utf8("target"), pool.utf8(interfaceDescriptor));
+            for (int i = 0; i < methods.size(); i++) {
+                ClassFileWriter.writeMember(out, 0x001A, pool.utf8("chain" + i), pool.utf8(METHOD_HANDLE_DESCRIPTOR));
+            }
+
+            out.writeShort(2 + methods.size() + (closeable ? 1 : 0));
+
+            Bytecode constructor = new Bytecode();
+            constructor.op(0x2a).op(0xb7).u2(pool.memberRef(10, superClass, "<init>", "()V"));
+            constructor.op(0x2a).op(0x2b).op(0xb5).u2(target).op(0xb1);
+            ClassFileWriter.writeMethod(out, pool, 0x0001, "<init>", "(" + interfaceDescriptor + ")V", constructor, 2,
+                    2);
+
+            List<String> chainFields = new ArrayList<>(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                chainFields.add("chain" + i);
+            }
+            ClassFileWriter.writeClassDataInitializer(out, pool, thisClass, chainFields);
+
+            for (int i = 0; i < methods.size(); i++) {
+                Method method = methods.get(i);
+                MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+                Bytecode call = new Bytecode();
+                call.op(0xb2).u2(pool.memberRef(9, thisClass, "chain" + i, METHOD_HANDLE_DESCRIPTOR));
+                call.op(0x2a).op(0xb4).u2(target);
+                int slot = 1;
+                for (Class<?> parameter : method.getParameterTypes()) {
+                    call.op(0x15 + typeOffset(parameter)).op(slot);
+                    slot += parameter == long.class || parameter == double.class ? 2 : 1;
+                }
+                call.op(0xb6).u2(pool.memberRef(10, methodHandle, "invokeExact",
+                        type.insertParameterTypes(0, serviceInterface).toMethodDescriptorString()));
+                call.op(method.getReturnType() == void.class ? 0xb1 : 0xac + typeOffset(method.getReturnType()));
+                ClassFileWriter.writeMethod(out, pool, 0x0001, method.getName(), type.toMethodDescriptorString(), call,
+                        slot + 1, slot);
+            }
+
+            if (closeable) {
+                Bytecode close = new Bytecode();
+                close.op(0x2a).op(0xb4).u2(target).op(0xc0).u2(autoCloseable);
+                close.op(0xb9).u2(pool.memberRef(11, autoCloseable, "close", "()V")).op(1).op(0).op(0xb1);
+                ClassFileWriter.writeMethod(out, pool, 0x0001, "close", "()V", close, 1, 1);
+            }
+
+            out.writeShort(0);
+            out.flush();
+            return ClassFileWriter.toClassFile(pool, body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return distance of the load and return instructions for type from
+     *         those for int
+     */
+    private static int typeOffset(final Class<?> type) {
+        if (!type.isPrimitive()) {
+            return 4;
+        }
+        if (type == long.class) {
+            return 1;
+        }
+        if (type == float.class) {
+            return 2;
+        }
+        if (type == double.class) {
+            return 3;
+        }
+        return 0;
+    }
+}
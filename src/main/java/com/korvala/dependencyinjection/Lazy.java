@@ -0,0 +1,23 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * Lazy: injected in place of a service to create it on first use and keep it
+ *
+ * Declare an @Inject field or a constructor parameter as Lazy<IService> and
+ * the service is resolved the first time get() is called. Every later call
+ * returns that same instance, even for a transient service, at about the cost
+ * of reading a field.
+ *
+ * Initialization is lock free: threads racing on the first call may each
+ * resolve the service, but all of them return the instance that was published
+ * first.
+ *
+ * @author Hannu Korvala
+ */
+public interface Lazy<T> {
+
+    /**
+     * @return instance of the service, the same one on every call
+     */
+    T get();
+}
@@ -0,0 +1,47 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * Lease: exclusive use of one instance of a pooled service, taken with
+ * Context.lease and returned to the pool when closed
+ *
+ * Use it with try-with-resources and do not keep the instance past close.
+ * Like a Scope, a lease is meant to be used by one thread at a time.
+ *
+ * @author Hannu Korvala
+ */
+public final class Lease<T> implements AutoCloseable {
+
+    private final ServicePool pool;
+    private T instance;
+
+    Lease(final ServicePool pool, final T instance) {
+        this.pool = pool;
+        this.instance = instance;
+    }
+
+    /**
+     * @return leased instance
+     * @throws IllegalStateException if the lease has been closed
+     */
+    public T get() {
+        T leased = this.instance;
+        if (leased == null) {
+            throw new IllegalStateException("Lease has been closed");
+        }
+        return leased;
+    }
+
+    /**
+     * Resets the instance and returns it to the pool, or closes it if the pool
+     * has been closed. Closing again does nothing
+     */
+    @Override
+    public void close() {
+        T leased = this.instance;
+        if (leased == null) {
+            return;
+        }
+        this.instance = null;
+        this.pool.release(leased);
+    }
+}
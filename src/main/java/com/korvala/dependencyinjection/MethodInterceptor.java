@@ -0,0 +1,39 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * MethodInterceptor: wraps the calls of the service methods carrying the
+ * annotation it was registered for with addInterceptor, for example to time,
+ * retry or cache them
+ *
+ * An interceptor does not receive calls. It is asked once per intercepted
+ * method, when the context generates the class implementing the service
+ * interface, for a method handle that the generated class then calls
+ * directly. next takes the service as its first argument followed by the
+ * arguments of method, and calls the next interceptor or the service itself.
+ * Built from MethodHandles combinators, such as foldArguments or
+ * tryFinally, the whole chain is inlined into the calling code: arguments
+ * are not boxed and no argument array is allocated.
+ *
+ * The annotation is searched for on the method of the implementation class,
+ * the method of the interface, the implementation class and the interface,
+ * in that order.
+ *
+ * @author Hannu Korvala
+ */
+@FunctionalInterface
+public interface MethodInterceptor {
+
+    /**
+     * @param method     intercepted method of the service interface
+     * @param annotation annotation the interceptor was registered for
+     * @param next       handle calling the rest of the chain
+     * @return handle with the type of next
+     * @throws ReflectiveOperationException if a handle can not be looked up
+     */
+    MethodHandle intercept(Method method, Annotation annotation, MethodHandle next)
+            throws ReflectiveOperationException;
+}
@@ -0,0 +1,47 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.reflect.Array;
+import java.util.List;
+
+/**
+ * MultiBinding: every implementation registered for one interface with
+ * addServices, in registration order
+ *
+ * A multi-binding is a singleton service of its own whose constructor takes
+ * the implementations, so it is created once with the context and validated,
+ * ordered and shared like any other singleton. The implementations are kept
+ * in an array of the interface type and in an immutable List over the same
+ * instances, iterating either allocates nothing beyond what the caller does.
+ *
+ * @author Hannu Korvala
+ */
+final class MultiBinding {
+
+    private final Object[] services;
+    private final List<Object> list;
+
+    /**
+     * @param serviceInterface interface of the multi-binding
+     * @param services         instances of the implementations
+     */
+    MultiBinding(final Class<?> serviceInterface, final Object[] services) {
+        this.services = (Object[]) Array.newInstance(serviceInterface, services.length);
+        System.arraycopy(services, 0, this.services, 0, services.length);
+        this.list = List.of(this.services);
+    }
+
+    /**
+     * @return immutable List of the implementations, the same instance on every
+     *         call
+     */
+    List<Object> list() {
+        return this.list;
+    }
+
+    /**
+     * @return new array of the interface type holding the implementations
+     */
+    Object[] array() {
+        return this.services.clone();
+    }
+}
@@ -0,0 +1,61 @@
+package com.korvala.dependencyinjection;
+
+import java.time.Duration;
+
+/**
+ * PoolConfig: how the pool of a service added with addPooled is bounded
+ *
+ * maxSize caps the instances of the service that exist at once, leased or
+ * idle. An idle instance that has not been leased for idleTimeout is closed
+ * and dropped, null keeps idle instances until the context is closed. A
+ * lease that finds every instance leased waits up to acquireTimeout for one
+ * to be returned, null waits as long as it takes.
+ *
+ * @author Hannu Korvala
+ */
+public record PoolConfig(int maxSize, Duration idleTimeout, Duration acquireTimeout) {
+
+    /**
+     * @throws IllegalArgumentException if maxSize is less than one, idleTimeout
+     *                                  is not positive or acquireTimeout is
+     *                                  negative
+     */
+    public PoolConfig {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least one");
+        }
+        if (idleTimeout != null && (idleTimeout.isNegative() || idleTimeout.isZero())) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        if (acquireTimeout != null && acquireTimeout.isNegative()) {
+            throw new IllegalArgumentException("Acquire timeout can not be negative");
+        }
+    }
+
+    /**
+     * @param maxSize most instances that exist at once
+     * @return config that keeps idle instances and waits for a lease as long
+     *         as it takes
+     * @throws IllegalArgumentException if maxSize is less than one
+     */
+    public static PoolConfig of(final int maxSize) {
+        return new PoolConfig(maxSize, null, null);
+    }
+
+    /**
+     * @param idleTimeout time an idle instance is kept or null to keep it
+     * @return copy of this config with idleTimeout
+     */
+    public PoolConfig withIdleTimeout(final Duration idleTimeout) {
+        return new PoolConfig(this.maxSize, idleTimeout, this.acquireTimeout);
+    }
+
+    /**
+     * @param acquireTimeout time a lease waits for an instance or null to wait
+     *                       as long as it takes
+     * @return copy of this config with acquireTimeout
+     */
+    public PoolConfig withAcquireTimeout(final Duration acquireTimeout) {
+        return new PoolConfig(this.maxSize, this.idleTimeout, acquireTimeout);
+    }
+}
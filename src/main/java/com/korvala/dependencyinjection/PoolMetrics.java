@@ -0,0 +1,17 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * PoolMetrics: counters of the pool of a service added with addPooled, taken
+ * with Context.poolMetrics
+ *
+ * hits counts leases served by an idle instance, misses those that created a
+ * new one and waits those that found the pool exhausted and had to wait for
+ * an instance to be returned. evictions counts idle instances dropped after
+ * the idle timeout. size is the number of instances that exist, leased or
+ * idle, and idle the number waiting in the pool. The counters are read one
+ * by one while the pool is in use, so they need not add up exactly.
+ *
+ * @author Hannu Korvala
+ */
+public record PoolMetrics(long hits, long misses, long waits, long evictions, int size, int idle) {
+}
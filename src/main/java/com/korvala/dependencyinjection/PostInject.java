@@ -0,0 +1,15 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// Apply attribute to a method without parameters that the container calls once
+/// the service has been constructed and its @Inject fields assigned. The method
+/// returns void, or a CompletionStage to initialize the service asynchronously
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PostInject {
+
+}
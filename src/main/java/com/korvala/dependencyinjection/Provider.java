@@ -0,0 +1,21 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * Provider: injected in place of a service to resolve it on demand
+ *
+ * Declare an @Inject field or a constructor parameter as Provider<IService>
+ * and the container injects a provider instead of the service. Every get()
+ * resolves the service again according to its lifetime: a singleton is created
+ * on first use, a transient is created on every call, a scoped service comes
+ * from the scope the owner of the provider was created in.
+ *
+ * @author Hannu Korvala
+ */
+@FunctionalInterface
+public interface Provider<T> {
+
+    /**
+     * @return instance of the service
+     */
+    T get();
+}
@@ -0,0 +1,17 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// One service of a GenerateContext: the interface, the class implementation of
+/// said interface and its lifetime
+@Target({})
+@Retention(RetentionPolicy.SOURCE)
+public @interface Registration {
+    Class<?> service();
+
+    Class<?> implementation();
+
+    ServiceLifetime lifetime() default ServiceLifetime.SINGLETON;
+}
@@ -0,0 +1,20 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * ResettableService: implemented by a pooled service that keeps state between
+ * uses, such as a parser holding the input it last read
+ *
+ * The container calls reset when a lease of the service is closed, before the
+ * instance goes back to the pool, so the next lease gets it clean. An
+ * instance whose reset fails is closed and dropped from the pool instead.
+ * A decorator of the service hides the interface unless it implements it too.
+ *
+ * @author Hannu Korvala
+ */
+public interface ResettableService {
+
+    /**
+     * @throws Exception if the instance can not be used again
+     */
+    void reset() throws Exception;
+}
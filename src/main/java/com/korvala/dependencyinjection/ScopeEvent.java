@@ -0,0 +1,26 @@
+package com.korvala.dependencyinjection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ScopeEvent: Flight Recorder event spanning a scope from createScope() to
+ * close(), committed when the scope is closed
+ *
+ * @author Hannu Korvala
+ */
+@Name("com.korvala.dependencyinjection.Scope")
+@Label("Scope")
+@Category("Dependency Injection")
+@Description("Lifetime of a dependency injection scope")
+final class ScopeEvent extends jdk.jfr.Event {
+
+    @Label("Disposed Services")
+    @Description("AutoCloseable services closed with the scope")
+    int disposedCount;
+
+    @Label("Failed Disposals")
+    int failedCount;
+}
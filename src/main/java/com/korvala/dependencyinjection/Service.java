@@ -0,0 +1,27 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// Apply attribute to a class to register it for the interface value when a
+/// builder calls addIndexed. The annotation is not read at run time: with
+/// dependencyinjection-processor on the annotation processor path, the compiler
+/// lists every annotated class of the module in the service index at INDEX,
+/// which addIndexed reads back without scanning the class path
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface Service {
+
+    /// Resource every module lists its annotated classes in, one line per class:
+    /// the binary names of the interface and the implementation and the lifetime,
+    /// separated by spaces. Lines starting with # are comments. The index is kept
+    /// in META-INF/services, although ServiceLoader does not read it, so that
+    /// tools merging jars concatenate the indexes like the other service files
+    String INDEX = "META-INF/services/com.korvala.dependencyinjection.Service";
+
+    Class<?> value();
+
+    ServiceLifetime lifetime() default ServiceLifetime.SINGLETON;
+}
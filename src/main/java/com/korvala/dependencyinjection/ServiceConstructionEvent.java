@@ -0,0 +1,29 @@
+package com.korvala.dependencyinjection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ServiceConstructionEvent: Flight Recorder event spanning the creation of one
+ * service instance, from resolving its constructor dependencies to the last
+ * injected field. Events of the dependencies created meanwhile nest inside it
+ *
+ * @author Hannu Korvala
+ */
+@Name("com.korvala.dependencyinjection.ServiceConstruction")
+@Label("Service Construction")
+@Category("Dependency Injection")
+@Description("Creating and wiring a service instance")
+final class ServiceConstructionEvent extends jdk.jfr.Event {
+
+    @Label("Service Interface")
+    Class<?> serviceInterface;
+
+    @Label("Service Class")
+    Class<?> serviceClass;
+
+    @Label("Lifetime")
+    String lifetime;
+}
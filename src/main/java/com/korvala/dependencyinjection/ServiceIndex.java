@@ -0,0 +1,130 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * ServiceIndex: immutable open-addressed table that maps service interfaces to
+ * dense service ids
+ *
+ * Keys are compared by identity, so a lookup is a single hash and usually a
+ * single probe no matter how many services are registered. The table is
+ * filled once when a Context is built and never modified afterwards. A child
+ * context starts from a copy of its parent's table instead of rehashing every
+ * inherited interface.
+ *
+ * @author Hannu Korvala
+ */
+final class ServiceIndex {
+
+    /**
+     * Returned by idOf when the interface has not been registered
+     */
+    static final int MISSING = -1;
+
+    private final Class<?>[] keys;
+    private final int[] ids;
+    private final int mask;
+    private int size;
+
+    /**
+     * @param serviceInterfaces interfaces in service id order, the position of an
+     *                          interface is used as its id. Null entries are
+     *                          services not resolved by interface
+     */
+    ServiceIndex(final Class<?>[] serviceInterfaces) {
+        int capacity = tableSizeFor(serviceInterfaces.length);
+        this.keys = new Class<?>[capacity];
+        this.ids = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int id = 0; id < serviceInterfaces.length; id++) {
+            if (serviceInterfaces[id] != null) {
+                put(serviceInterfaces[id], id);
+            }
+        }
+    }
+
+    /**
+     * Index of a child context: every entry of inherited with its id moved up
+     * by the number of own interfaces, then the own interfaces with ids in
+     * position order replacing the inherited entries of the same interface
+     *
+     * @param inherited         index of the parent context
+     * @param serviceInterfaces interfaces registered in the child, null entries
+     *                          are left out
+     */
+    ServiceIndex(final ServiceIndex inherited, final Class<?>[] serviceInterfaces) {
+        int offset = serviceInterfaces.length;
+        int capacity = tableSizeFor(inherited.size + serviceInterfaces.length);
+        this.mask = capacity - 1;
+
+        if (capacity == inherited.keys.length) {
+            this.keys = inherited.keys.clone();
+            this.ids = new int[capacity];
+            for (int slot = 0; slot < capacity; slot++) {
+                this.ids[slot] = inherited.ids[slot] + offset;
+            }
+            this.size = inherited.size;
+        } else {
+            this.keys = new Class<?>[capacity];
+            this.ids = new int[capacity];
+            for (int slot = 0; slot < inherited.keys.length; slot++) {
+                if (inherited.keys[slot] != null) {
+                    put(inherited.keys[slot], inherited.ids[slot] + offset);
+                }
+            }
+        }
+
+        for (int id = 0; id < serviceInterfaces.length; id++) {
+            if (serviceInterfaces[id] != null) {
+                put(serviceInterfaces[id], id);
+            }
+        }
+    }
+
+    /**
+     * Finds the id of a service interface
+     *
+     * @param serviceInterface interface to look for, must not be null
+     * @return id of the service or MISSING
+     */
+    int idOf(final Class<?> serviceInterface) {
+        int slot = hash(serviceInterface) & this.mask;
+        while (true) {
+            Class<?> key = this.keys[slot];
+            if (key == serviceInterface) {
+                return this.ids[slot];
+            }
+            if (key == null) {
+                return MISSING;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    private void put(final Class<?> serviceInterface, final int id) {
+        int slot = hash(serviceInterface) & this.mask;
+        while (this.keys[slot] != null && this.keys[slot] != serviceInterface) {
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.keys[slot] == null) {
+            this.keys[slot] = serviceInterface;
+            this.size++;
+        }
+        this.ids[slot] = id;
+    }
+
+    /**
+     * Keeps the load factor at or below one half so probe chains stay short
+     */
+    private static int tableSizeFor(final int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(final Class<?> key) {
+        int h = System.identityHashCode(key);
+        return h ^ (h >>> 16);
+    }
+}
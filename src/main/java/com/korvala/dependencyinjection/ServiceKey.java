@@ -0,0 +1,48 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * ServiceKey: handle of a service registered in one context, carrying the
+ * dense id the context stores the service under
+ *
+ * Get a key once with keyOf and resolve it with getServiceByKey as often as
+ * needed: resolving a key skips hashing the interface, a singleton is a bounds
+ * checked array load. Keys are only valid for the context that issued them
+ * and for its scopes.
+ *
+ * @author Hannu Korvala
+ */
+public final class ServiceKey<T> {
+
+    private final Class<T> serviceInterface;
+    private final int id;
+    private final Object context;
+
+    ServiceKey(final Class<T> serviceInterface, final int id, final Object context) {
+        this.serviceInterface = serviceInterface;
+        this.id = id;
+        this.context = context;
+    }
+
+    /**
+     * @return interface the key resolves
+     */
+    public Class<T> serviceInterface() {
+        return this.serviceInterface;
+    }
+
+    int id() {
+        return this.id;
+    }
+
+    /**
+     * @return context that issued the key
+     */
+    Object context() {
+        return this.context;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceKey[" + this.serviceInterface.getName() + "#" + this.id + "]";
+    }
+}
@@ -0,0 +1,28 @@
+package com.korvala.dependencyinjection;
+
+/**
+ * ServiceLifetime: how long an instance of a registered service lives
+ *
+ * @author Hannu Korvala
+ */
+public enum ServiceLifetime {
+    /**
+     * One instance shared by the whole context
+     */
+    SINGLETON,
+
+    /**
+     * One instance per scope, disposed when the scope is closed
+     */
+    SCOPED,
+
+    /**
+     * A new instance every time the service is requested or injected
+     */
+    TRANSIENT,
+
+    /**
+     * Up to a bounded number of instances, each leased to one user at a time
+     */
+    POOLED
+}
@@ -0,0 +1,425 @@
+package com.korvala.dependencyinjection;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ServicePool: the idle instances of a service added with addPooled
+ *
+ * Idle instances sit in a slot array split into stripes, one per core up to
+ * the pool size, each padded to its own cache lines. A thread takes and
+ * returns instances starting from the stripe its identity hashes to and
+ * moves on to the next stripes only when that one is empty or full, so
+ * threads on different cores rarely touch the same slots. Taking and
+ * returning is a compare-and-set on a slot, and the number of instances is
+ * bounded by a counter claimed with compare-and-set before an instance is
+ * created. Only a lease finding the pool exhausted parks, in a queue that
+ * returning an instance wakes the head of.
+ *
+ * Idle timeouts are enforced by one daemon thread shared by every pool,
+ * which only holds a weak reference to the pool, so an unreachable context
+ * does not keep its pool alive.
+ *
+ * @author Hannu Korvala
+ */
+final class ServicePool implements AutoCloseable {
+
+    /**
+     * References between two stripes, keeping stripes of compressed
+     * references on separate cache lines
+     */
+    private static final int PADDING = 16;
+
+    private final Class<?> serviceClass;
+    private final PoolConfig config;
+    private final int maxSize;
+    private final long acquireTimeout;
+    private final long idleTimeout;
+    private final Supplier<Object> factory;
+    private final Consumer<Throwable> failures;
+
+    private final AtomicReferenceArray<Object> slots;
+    /**
+     * When each slot was filled, only kept if the pool has an idle timeout
+     */
+    private final AtomicLongArray idleSince;
+    private final int stripeMask;
+    private final int stripeWidth;
+    private final int stripeStride;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final ScheduledFuture<?> eviction;
+    private volatile boolean closed;
+
+    /**
+     * @param serviceClass implementation of the pooled service
+     * @param config       bounds of the pool
+     * @param factory      creates a wired and initialized instance
+     * @param failures     receives the failures of reset and close calls or
+     *                     null
+     */
+    ServicePool(final Class<?> serviceClass, final PoolConfig config, final Supplier<Object> factory,
+            final Consumer<Throwable> failures) {
+        this.serviceClass = serviceClass;
+        this.config = config;
+        this.maxSize = config.maxSize();
+        this.acquireTimeout = config.acquireTimeout() == null ? -1L : config.acquireTimeout().toNanos();
+        this.idleTimeout = config.idleTimeout() == null ? -1L : config.idleTimeout().toNanos();
+        this.factory = factory;
+        this.failures = failures;
+
+        int stripes = Integer.highestOneBit(Math.min(this.maxSize, Runtime.getRuntime().availableProcessors()));
+        this.stripeMask = stripes - 1;
+        this.stripeWidth = (this.maxSize + stripes - 1) / stripes;
+        this.stripeStride = this.stripeWidth + PADDING;
+        this.slots = new AtomicReferenceArray<>(stripes * this.stripeStride);
+        this.idleSince = this.idleTimeout < 0 ? null : new AtomicLongArray(stripes * this.stripeStride);
+
+        this.eviction = this.idleTimeout < 0 ? null : Eviction.schedule(this, config.idleTimeout());
+    }
+
+    /**
+     * @return bounds of this pool
+     */
+    PoolConfig config() {
+        return this.config;
+    }
+
+    /**
+     * Takes an idle instance, creates one if the pool has room or waits for
+     * one to be returned
+     *
+     * @return instance for the exclusive use of the caller
+     * @throws IllegalStateException if the pool is closed, the acquire timeout
+     *                               passed or the thread was interrupted
+     */
+    Object acquire() {
+        checkOpen();
+        Object instance = poll();
+        if (instance != null) {
+            this.hits.increment();
+            return instance;
+        }
+        instance = tryCreate();
+        if (instance != null) {
+            return instance;
+        }
+        this.waits.increment();
+        return await();
+    }
+
+    /**
+     * Resets instance and makes it idle, or closes it if its reset fails or
+     * the pool is closed
+     */
+    void release(final Object instance) {
+        if (!this.closed && instance instanceof ResettableService resettable) {
+            try {
+                resettable.reset();
+            } catch (Exception e) {
+                report(e);
+                discard(instance);
+                return;
+            }
+        }
+        if (this.closed) {
+            discard(instance);
+            return;
+        }
+
+        int slot = offer(instance);
+        if (this.closed && this.slots.compareAndSet(slot, instance, null)) {
+            discard(instance);
+            return;
+        }
+        signal();
+    }
+
+    /**
+     * @return counters of this pool
+     */
+    PoolMetrics metrics() {
+        int idle = 0;
+        for (int i = 0; i < this.slots.length(); i++) {
+            if (this.slots.get(i) != null) {
+                idle++;
+            }
+        }
+        return new PoolMetrics(this.hits.sum(), this.misses.sum(), this.waits.sum(), this.evictions.sum(),
+                this.size.get(), idle);
+    }
+
+    /**
+     * Closes the idle instances and fails the waiting leases. Instances still
+     * leased are closed when their lease is. Closing again does nothing
+     *
+     * @throws IllegalStateException carrying the failures as suppressed
+     *                               exceptions
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.eviction != null) {
+            this.eviction.cancel(false);
+        }
+
+        IllegalStateException failure = null;
+        for (int i = 0; i < this.slots.length(); i++) {
+            Object instance = this.slots.getAndSet(i, null);
+            if (instance == null) {
+                continue;
+            }
+            this.size.decrementAndGet();
+            try {
+                dispose(instance);
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Closing pooled " + this.serviceClass.getName() + " failed");
+                }
+                failure.addSuppressed(e);
+            }
+        }
+        for (Thread waiter : this.waiters) {
+            LockSupport.unpark(waiter);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes the instances that have been idle for longer than the idle
+     * timeout
+     *
+     * @param now System.nanoTime of the check
+     */
+    void evictIdle(final long now) {
+        for (int i = 0; i < this.slots.length(); i++) {
+            Object instance = this.slots.get(i);
+            if (instance != null && now - this.idleSince.get(i) >= this.idleTimeout
+                    && this.slots.compareAndSet(i, instance, null)) {
+                this.evictions.increment();
+                discard(instance);
+            }
+        }
+    }
+
+    /**
+     * @return idle instance taken from the stripes, starting from the home
+     *         stripe of the running thread, or null if every slot is empty
+     */
+    private Object poll() {
+        int home = homeStripe();
+        for (int n = 0; n <= this.stripeMask; n++) {
+            int first = ((home + n) & this.stripeMask) * this.stripeStride;
+            for (int i = first; i < first + this.stripeWidth; i++) {
+                Object instance = this.slots.get(i);
+                if (instance != null && this.slots.compareAndSet(i, instance, null)) {
+                    return instance;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts instance into an empty slot, starting from the home stripe of the
+     * running thread. The pool has a slot for every instance that can exist,
+     * so a slot is found once the concurrent releases have moved on
+     *
+     * @return slot of instance
+     */
+    private int offer(final Object instance) {
+        int home = homeStripe();
+        for (;;) {
+            for (int n = 0; n <= this.stripeMask; n++) {
+                int first = ((home + n) & this.stripeMask) * this.stripeStride;
+                for (int i = first; i < first + this.stripeWidth; i++) {
+                    if (this.slots.get(i) == null) {
+                        if (this.idleSince != null) {
+                            this.idleSince.set(i, System.nanoTime());
+                        }
+                        if (this.slots.compareAndSet(i, null, instance)) {
+                            return i;
+                        }
+                    }
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int homeStripe() {
+        return System.identityHashCode(Thread.currentThread()) & this.stripeMask;
+    }
+
+    /**
+     * @return new instance if fewer than maxSize exist, otherwise null
+     */
+    private Object tryCreate() {
+        for (int current = this.size.get(); current < this.maxSize; current = this.size.get()) {
+            if (this.size.compareAndSet(current, current + 1)) {
+                this.misses.increment();
+                try {
+                    return this.factory.get();
+                } catch (RuntimeException | Error e) {
+                    this.size.decrementAndGet();
+                    signal();
+                    throw e;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parks until an instance is returned or the pool has room again. The
+     * slots are checked again after enqueuing, so a release between the
+     * failed poll and the park is not missed
+     */
+    private Object await() {
+        Thread current = Thread.currentThread();
+        long deadline = this.acquireTimeout < 0 ? 0L : System.nanoTime() + this.acquireTimeout;
+        this.waiters.add(current);
+        try {
+            for (;;) {
+                checkOpen();
+                Object instance = poll();
+                if (instance != null) {
+                    return instance;
+                }
+                instance = tryCreate();
+                if (instance != null) {
+                    return instance;
+                }
+
+                if (this.acquireTimeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        throw new IllegalStateException("No instance of " + this.serviceClass.getName()
+                                + " was returned to its pool within " + Duration.ofNanos(this.acquireTimeout));
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    current.interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for pooled "
+                            + this.serviceClass.getName());
+                }
+            }
+        } finally {
+            this.waiters.remove(current);
+            signal();
+        }
+    }
+
+    /**
+     * Wakes the longest waiting lease, which wakes the next one when it
+     * leaves, so an instance returned while the head is already awake is not
+     * left idle
+     */
+    private void signal() {
+        Thread waiter = this.waiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Pool of " + this.serviceClass.getName() + " has been closed");
+        }
+    }
+
+    /**
+     * Closes an instance that leaves the pool for good and makes room for a
+     * new one
+     */
+    private void discard(final Object instance) {
+        this.size.decrementAndGet();
+        try {
+            dispose(instance);
+        } catch (Exception e) {
+            report(e);
+        }
+        signal();
+    }
+
+    private static void dispose(final Object instance) throws Exception {
+        if (instance instanceof AutoCloseable disposable) {
+            disposable.close();
+        }
+    }
+
+    private void report(final Exception failure) {
+        if (this.failures != null) {
+            this.failures.accept(failure);
+        }
+    }
+
+    /**
+     * Periodic idle check of one pool on the shared evicting thread, which
+     * cancels itself once the pool is no longer reachable
+     */
+    private static final class Eviction implements Runnable {
+        private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "service-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final WeakReference<ServicePool> pool;
+        private volatile ScheduledFuture<?> future;
+
+        private Eviction(final ServicePool pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        /**
+         * Checks pool twice per idleTimeout, so an instance is closed at most
+         * half a timeout late
+         */
+        static ScheduledFuture<?> schedule(final ServicePool pool, final Duration idleTimeout) {
+            Eviction eviction = new Eviction(pool);
+            long period = Math.max(idleTimeout.toNanos() / 2, TimeUnit.MILLISECONDS.toNanos(1));
+            eviction.future = EVICTOR.scheduleWithFixedDelay(eviction, period, period, TimeUnit.NANOSECONDS);
+            return eviction.future;
+        }
+
+        @Override
+        public void run() {
+            ServicePool pool = this.pool.get();
+            if (pool == null) {
+                ScheduledFuture<?> scheduled = this.future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            pool.evictIdle(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.korvala.dependencyinjection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.korvala.dependencyinjection.InjectionPlan.InjectionKind;
+
+/**
+ * WiringSnapshot: the resolved wiring of a context in a compact binary file
+ *
+ * The file holds the registrations in id order, multi-bindings included, with,
+ * for every service, the constructor signature and the @Inject field names to
+ * look the handles up by name, and the ids of the services injected into them.
+ * A context built from a snapshot skips registration checks, field scanning,
+ * dependency resolution and graph validation.
+ *
+ * Layout, big endian: magic, version, CRC32 of everything after it, class
+ * fingerprint, service count, services. The fingerprint covers where every
+ * registered interface and implementation was loaded from: the size and
+ * modification time of its class file when loaded from a directory, of the
+ * whole jar when loaded from a jar. It is taken from the loaded classes, so
+ * checking it costs a few file system calls and no class path searches. A
+ * snapshot whose fingerprint no longer matches is replayed as plain
+ * registrations instead.
+ *
+ * @author Hannu Korvala
+ */
+final class WiringSnapshot {
+
+    private static final int MAGIC = 0x4B444953;
+    private static final int VERSION = 2;
+    private static final int CHECKSUMMED_FROM = 16;
+
+    private static final ServiceLifetime[] LIFETIMES = ServiceLifetime.values();
+    private static final InjectionKind[] KINDS = InjectionKind.values();
+
+    /**
+     * Record of one registration and its resolved wiring, dependencies are
+     * service ids within the snapshot
+     */
+    record Service(String serviceInterface, String serviceClass, ServiceLifetime lifetime, boolean lazy,
+            boolean member, String[] signature, InjectionKind[] parameterKinds, int[] constructorDependencies,
+            String[] fieldNames, InjectionKind[] fieldKinds, int[] dependencies) {
+    }
+
+    private final long fingerprint;
+    private final Service[] services;
+
+    private WiringSnapshot(final long fingerprint, final Service[] services) {
+        this.fingerprint = fingerprint;
+        this.services = services;
+    }
+
+    /**
+     * @return services in id order
+     */
+    Service[] services() {
+        return this.services;
+    }
+
+    /**
+     * @return fingerprint of the classes the snapshot was written for
+     */
+    long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Writes services to path, replacing the file atomically where the file
+     * system allows it
+     *
+     * @param fingerprint fingerprintOf the services
+     * @throws IOException
+     */
+    static void write(final Path path, final Service[] services, final long fingerprint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(0L);
+        out.writeLong(fingerprint);
+        out.writeInt(services.length);
+
+        for (Service service : services) {
+            writeString(out, service.serviceInterface());
+            writeString(out, service.serviceClass());
+            out.writeByte(service.lifetime().ordinal());
+            out.writeBoolean(service.lazy());
+            out.writeBoolean(service.member());
+
+            out.writeInt(service.signature().length);
+            for (int i = 0; i < service.signature().length; i++) {
+                writeString(out, service.signature()[i]);
+                out.writeByte(service.parameterKinds()[i].ordinal());
+                out.writeInt(service.constructorDependencies()[i]);
+            }
+
+            out.writeInt(service.fieldNames().length);
+            for (int i = 0; i < service.fieldNames().length; i++) {
+                writeString(out, service.fieldNames()[i]);
+                out.writeByte(service.fieldKinds()[i].ordinal());
+                out.writeInt(service.dependencies()[i]);
+            }
+        }
+        out.flush();
+
+        ByteBuffer file = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 checksum = new CRC32();
+        checksum.update(file.duplicate().position(CHECKSUMMED_FROM));
+        file.putLong(8, checksum.getValue());
+
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(),
+                ".tmp");
+        try {
+            Files.write(temporary, file.array());
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Maps the file into memory and parses it
+     *
+     * @return WiringSnapshot
+     * @throws IOException
+     * @throws IllegalStateException if the file is not a snapshot, was written
+     *                               by another version or is corrupted
+     */
+    static WiringSnapshot read(final Path path) throws IOException {
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (file.getInt() != MAGIC) {
+                throw new IllegalStateException(path + " is not a wiring snapshot");
+            }
+            if (file.getInt() != VERSION) {
+                throw new IllegalStateException(path + " was written by another version");
+            }
+            long expected = file.getLong();
+            CRC32 checksum = new CRC32();
+            checksum.update(file.duplicate().position(CHECKSUMMED_FROM));
+            if (checksum.getValue() != expected) {
+                throw new IllegalStateException(path + " is corrupted, its checksum does not match");
+            }
+
+            long fingerprint = file.getLong();
+            Service[] services = new Service[file.getInt()];
+            for (int id = 0; id < services.length; id++) {
+                String serviceInterface = readString(file);
+                String serviceClass = readString(file);
+                ServiceLifetime lifetime = LIFETIMES[file.get()];
+                boolean lazy = file.get() != 0;
+                boolean member = file.get() != 0;
+
+                int parameters = file.getInt();
+                String[] signature = new String[parameters];
+                InjectionKind[] parameterKinds = new InjectionKind[parameters];
+                int[] constructorDependencies = new int[parameters];
+                for (int i = 0; i < parameters; i++) {
+                    signature[i] = readString(file);
+                    parameterKinds[i] = KINDS[file.get()];
+                    constructorDependencies[i] = readDependency(file, services.length, false);
+                }
+
+                int fields = file.getInt();
+                String[] fieldNames = new String[fields];
+                InjectionKind[] fieldKinds = new InjectionKind[fields];
+                int[] dependencies = new int[fields];
+                for (int i = 0; i < fields; i++) {
+                    fieldNames[i] = readString(file);
+                    fieldKinds[i] = KINDS[file.get()];
+                    dependencies[i] = readDependency(file, services.length, true);
+                }
+
+                services[id] = new Service(serviceInterface, serviceClass, lifetime, lazy, member, signature,
+                        parameterKinds,
+                        constructorDependencies, fieldNames, fieldKinds, dependencies);
+            }
+            return new WiringSnapshot(fingerprint, services);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalStateException(path + " is corrupted", e);
+        }
+    }
+
+    /**
+     * Combines the names of the services with the identity of the files they
+     * were loaded from. Classes without a code source, such as classes defined
+     * at run time, only contribute their name
+     *
+     * @param serviceInterfaces registered interfaces in id order
+     * @param serviceClasses    registered implementations in id order
+     * @return fingerprint
+     */
+    static long fingerprintOf(final Class<?>[] serviceInterfaces, final Class<?>[] serviceClasses) {
+        CRC32 fingerprint = new CRC32();
+        ByteBuffer identity = ByteBuffer.allocate(16);
+        Map<String, ByteBuffer> archives = new HashMap<>();
+        for (int id = 0; id < serviceClasses.length; id++) {
+            for (Class<?> type : new Class<?>[] { serviceInterfaces[id], serviceClasses[id] }) {
+                fingerprint.update(type.getName().getBytes(StandardCharsets.UTF_8));
+                fingerprint.update(sourceIdentity(type, identity.clear(), archives).flip());
+            }
+        }
+        return fingerprint.getValue();
+    }
+
+    private static ByteBuffer sourceIdentity(final Class<?> type, final ByteBuffer identity,
+            final Map<String, ByteBuffer> archives) {
+        CodeSource source = type.getProtectionDomain().getCodeSource();
+        URL location = source == null ? null : source.getLocation();
+        if (location == null) {
+            return identity.putLong(0L).putLong(0L);
+        }
+        if (!location.getProtocol().equals("file")) {
+            return identity.putLong(location.toExternalForm().hashCode()).putLong(0L);
+        }
+
+        try {
+            Path path = Path.of(location.toURI());
+            if (Files.isDirectory(path)) {
+                return fileIdentity(path.resolve(type.getName().replace('.', '/') + ".class"), identity);
+            }
+            ByteBuffer archive = archives.get(location.toExternalForm());
+            if (archive == null) {
+                archive = fileIdentity(path, ByteBuffer.allocate(16)).flip();
+                archives.put(location.toExternalForm(), archive);
+            }
+            return identity.put(archive.duplicate());
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return identity.putLong(-1L).putLong(-1L);
+        }
+    }
+
+    private static ByteBuffer fileIdentity(final Path file, final ByteBuffer identity) throws IOException {
+        return identity.putLong(Files.size(file)).putLong(Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private static int readDependency(final ByteBuffer file, final int serviceCount, final boolean optional) {
+        int dependency = file.getInt();
+        if (dependency >= serviceCount || dependency < (optional ? ServiceIndex.MISSING : 0)) {
+            throw new IndexOutOfBoundsException("Dependency " + dependency + " is not a service of the snapshot");
+        }
+        return dependency;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer file) {
+        byte[] bytes = new byte[file.getInt()];
+        file.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,19 @@
 package com.korvala.dependencyinjection.abstractions;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+
 // @author Hannu Korvala
 public interface DependencyInjectionContext {
     public <T> T getService(final Class<T> serviceClass);
+
+    public DependencyInjectionScope createScope();
+
+    // Every implementation registered for the interface, in registration order
+    public <T> List<T> getServices(final Class<T> serviceClass);
+
+    // Runs action in a new scope that getService resolves scoped services from until action returns
+    public void runInScope(final Runnable action);
+
+    public <T> T callInScope(final Callable<T> action) throws Exception;
 }
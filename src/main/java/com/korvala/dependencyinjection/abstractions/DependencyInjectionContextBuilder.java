@@ -1,8 +1,32 @@
 package com.korvala.dependencyinjection.abstractions;
 
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 // @author Hannu Korvala
 public interface DependencyInjectionContextBuilder {
     public DependencyInjectionContextBuilder addService(final Class<?> serviceInterface, final Class<?> service);
 
+    public DependencyInjectionContextBuilder addSingleton(final Class<?> serviceInterface, final Class<?> service);
+
+    public DependencyInjectionContextBuilder addScoped(final Class<?> serviceInterface, final Class<?> service);
+
+    public DependencyInjectionContextBuilder addTransient(final Class<?> serviceInterface, final Class<?> service);
+
+    public DependencyInjectionContextBuilder addLazyService(final Class<?> serviceInterface, final Class<?> service);
+
+    // Registers several implementations of one interface, resolved together with getServices
+    public DependencyInjectionContextBuilder addServices(final Class<?> serviceInterface, final Class<?>... services);
+
+    // Wraps every instance created for the interface with what decorator returns for it
+    public <T> DependencyInjectionContextBuilder decorate(final Class<T> serviceInterface,
+            final Function<? super T, ? extends T> decorator);
+
+    public DependencyInjectionContextBuilder useLazyInstantiation();
+
+    public DependencyInjectionContextBuilder useExecutor(final Executor executor);
+
+    public DependencyInjectionContextBuilder addListener(final DependencyInjectionListener listener);
+
     public DependencyInjectionContext build() throws Exception;
 }
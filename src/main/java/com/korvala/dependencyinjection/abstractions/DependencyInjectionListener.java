@@ -0,0 +1,38 @@
+package com.korvala.dependencyinjection.abstractions;
+
+// @author Hannu Korvala
+// Receives timings and failures of a context, every method does nothing by default.
+// Called on the thread that does the work, implementations must be thread safe
+public interface DependencyInjectionListener {
+    // Constructor call of serviceClass, including the constructor dependencies created for it
+    public default void serviceConstructed(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final long nanos) {
+    }
+
+    // Assignment of the @Inject fields of a new instance, including the dependencies created for them
+    public default void serviceInjected(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final long nanos) {
+    }
+
+    // Initialization hook of a new instance, until the stage of an asynchronous one completes
+    public default void serviceInitialized(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final long nanos) {
+    }
+
+    // Close call of an AutoCloseable singleton when its context is closed
+    public default void serviceDisposed(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final long nanos) {
+    }
+
+    // Every getService call and every injected dependency, including already created singletons
+    public default void serviceResolved(final Class<?> serviceInterface) {
+    }
+
+    // Reported for the failing service and for every service being created that needed it
+    public default void serviceFailed(final Class<?> serviceInterface, final Class<?> serviceClass,
+            final Throwable failure) {
+    }
+
+    public default void contextBuilt(final int serviceCount, final long nanos) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.korvala.dependencyinjection.abstractions;
+
+// @author Hannu Korvala
+public interface DependencyInjectionScope extends DependencyInjectionContext, AutoCloseable {
+    @Override
+    public void close();
+}
@@ -0,0 +1,164 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class AmbientScopeTests {
+    @Test
+    public void contextShouldResolveScopedServicesWithinRunInScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        AtomicReference<IServiceC> first = new AtomicReference<>();
+        AtomicReference<IServiceC> second = new AtomicReference<>();
+        context.runInScope(() -> {
+            first.set(context.getService(IServiceC.class));
+            assertTrue(first.get() == context.getService(IServiceC.class));
+        });
+        context.runInScope(() -> second.set(context.getService(IServiceC.class)));
+
+        assertTrue(first.get() != null);
+        assertTrue(first.get() != second.get());
+    }
+
+    @Test
+    public void ambientScopeShouldBeClosedWhenRunReturns() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceI.class, ServiceI.class)
+                .build();
+
+        AtomicReference<IServiceI> service = new AtomicReference<>();
+        context.runInScope(() -> {
+            service.set(context.getService(IServiceI.class));
+            assertFalse(service.get().isClosed());
+        });
+
+        assertTrue(service.get().isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ambientScopeShouldEndWhenRunReturns() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.runInScope(() -> context.getService(IServiceC.class));
+        context.getService(IServiceC.class);
+    }
+
+    @Test
+    public void transientServiceShouldGetScopedDependencyFromAmbientScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceD.class, ServiceD.class)
+                .build();
+
+        context.runInScope(() -> assertTrue(
+                context.getService(IServiceD.class).getServiceC() == context.getService(IServiceC.class)));
+    }
+
+    @Test
+    public void nestedRunInScopeShouldRestoreOuterScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.runInScope(() -> {
+            IServiceC outer = context.getService(IServiceC.class);
+            context.runInScope(() -> assertTrue(outer != context.getService(IServiceC.class)));
+            assertTrue(outer == context.getService(IServiceC.class));
+        });
+    }
+
+    @Test
+    public void parentShouldResolveFromAmbientScopeOfChild() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+        var child = parent.createChild(builder -> builder.addTransient(IServiceD.class, ServiceD.class));
+
+        child.runInScope(() -> {
+            assertTrue(parent.getService(IServiceC.class) == child.getService(IServiceC.class));
+            assertTrue(child.getService(IServiceD.class).getServiceC() == parent.getService(IServiceC.class));
+        });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unrelatedContextShouldNotUseAmbientScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+        var other = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.runInScope(() -> other.getService(IServiceC.class));
+    }
+
+    @Test
+    public void otherThreadsShouldNotSeeAmbientScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        context.runInScope(() -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    context.getService(IServiceC.class);
+                } catch (IllegalStateException e) {
+                    failure.set(e);
+                }
+            });
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void callInScopeShouldReturnResult() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .addScoped(IServiceE.class, ServiceE.class)
+                .build();
+
+        assertEquals("jobE(jobC())", context.callInScope(() -> context.getService(IServiceE.class).jobE()));
+    }
+
+    @Test(expected = IOException.class)
+    public void callInScopeShouldRethrowException() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.callInScope(() -> {
+            throw new IOException("failed");
+        });
+    }
+}
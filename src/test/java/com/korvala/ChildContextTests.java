@@ -0,0 +1,94 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class ChildContextTests {
+    @Test
+    public void childShouldShareParentSingletons() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        var child = parent.createChild(builder -> builder.addService(IServiceD.class, ServiceD.class));
+
+        assertTrue(child.getService(IServiceA.class) == parent.getService(IServiceA.class));
+        assertTrue(child.getService(IServiceC.class) == parent.getService(IServiceC.class));
+        assertTrue(child.getService(IServiceD.class).getServiceC() == parent.getService(IServiceC.class));
+        assertEquals(null, parent.getService(IServiceD.class));
+    }
+
+    @Test
+    public void childShouldOverrideRegistrations() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        var child = parent.createChild(builder -> builder
+                .addService(IServiceB.class, ServiceBC.class)
+                .addService(IServiceE.class, ServiceE.class));
+
+        assertEquals("jobBC()", child.getService(IServiceB.class).jobB());
+        assertEquals("jobA(jobB(jobC()))", child.getService(IServiceA.class).jobA());
+        assertEquals("jobE(jobC())", child.getService(IServiceE.class).jobE());
+        assertEquals("jobB(jobC())", parent.getService(IServiceB.class).jobB());
+    }
+
+    @Test
+    public void grandchildShouldResolveThroughTheChain() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+        var child = parent.createChild(builder -> builder.addService(IServiceD.class, ServiceD.class));
+        var grandchild = child.createChild(builder -> builder.addTransient(IServiceE.class, ServiceE.class));
+
+        assertTrue(grandchild.getService(IServiceD.class) == child.getService(IServiceD.class));
+        assertTrue(grandchild.getService(IServiceC.class) == parent.getService(IServiceC.class));
+        assertEquals("jobE(jobC())", grandchild.getService(IServiceE.class).jobE());
+        assertTrue(grandchild.getService(IServiceE.class) != grandchild.getService(IServiceE.class));
+    }
+
+    @Test
+    public void childScopeShouldResolveInheritedScopedServices() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceI.class, ServiceI.class)
+                .build();
+        var child = parent.createChild(builder -> builder.addService(IServiceC.class, ServiceC.class));
+
+        IServiceI service;
+        try (var scope = child.createScope()) {
+            service = scope.getService(IServiceI.class);
+            assertTrue(service == scope.getService(IServiceI.class));
+            assertFalse(service.isClosed());
+        }
+        assertTrue(service.isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void childSingletonShouldNotCaptureInheritedScopedService() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        parent.createChild(builder -> builder.addService(IServiceD.class, ServiceD.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowWhenChildConfigurationIsNull() throws Exception {
+        DependencyInjectionBuilder.startBuild().build().createChild(null);
+    }
+}
@@ -0,0 +1,30 @@
+package com.korvala;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.korvala.dependencyinjection.MethodInterceptor;
+
+public class CountingInterceptor implements MethodInterceptor {
+
+    private final AtomicLong calls = new AtomicLong();
+
+    public long calls() {
+        return calls.get();
+    }
+
+    @Override
+    public MethodHandle intercept(final Method method, final Annotation annotation, final MethodHandle next)
+            throws ReflectiveOperationException {
+        MethodHandle increment = MethodHandles.lookup()
+                .findVirtual(AtomicLong.class, "incrementAndGet", MethodType.methodType(long.class))
+                .bindTo(calls)
+                .asType(MethodType.methodType(void.class));
+        return MethodHandles.foldArguments(next,
+                MethodHandles.dropArguments(increment, 0, next.type().parameterList()));
+    }
+}
@@ -0,0 +1,15 @@
+package com.korvala;
+
+public class CyclicServiceG implements IServiceG {
+
+    private final IServiceH serviceH;
+
+    public CyclicServiceG(IServiceH serviceH) {
+        this.serviceH = serviceH;
+    }
+
+    @Override
+    public IServiceH getServiceH() {
+        return serviceH;
+    }
+}
@@ -0,0 +1,190 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class DecoratorTests {
+    @Test
+    public void decoratorShouldWrapServiceWhereverItIsUsed() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addService(IServiceD.class, ServiceD.class)
+                .decorate(IServiceC.class, inner -> () -> "cached(" + inner.jobC() + ")")
+                .build();
+
+        assertEquals("cached(jobC())", context.getService(IServiceC.class).jobC());
+        assertTrue(context.getService(IServiceC.class) == context.getService(IServiceC.class));
+        assertTrue(context.getService(IServiceD.class).getServiceC() == context.getService(IServiceC.class));
+    }
+
+    @Test
+    public void decoratorsShouldBeAppliedInOrder() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceC.class, ServiceC.class)
+                .decorate(IServiceC.class, inner -> () -> "first(" + inner.jobC() + ")")
+                .decorate(IServiceC.class, inner -> () -> "second(" + inner.jobC() + ")")
+                .build();
+
+        assertEquals("second(first(jobC()))", context.getService(IServiceC.class).jobC());
+        assertTrue(context.getService(IServiceC.class) != context.getService(IServiceC.class));
+    }
+
+    @Test
+    public void decoratorShouldWrapEveryImplementationOfMultiBinding() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .decorate(IServiceT.class, inner -> () -> "retried(" + inner.jobT() + ")")
+                .build();
+
+        List<IServiceT> services = context.getServices(IServiceT.class);
+
+        assertEquals("retried(jobT())", services.get(0).jobT());
+        assertEquals("retried(jobTA())", services.get(1).jobT());
+    }
+
+    @Test
+    public void decoratedScopedServiceShouldBeKeptInScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .decorate(IServiceC.class, inner -> () -> "scoped(" + inner.jobC() + ")")
+                .build();
+
+        try (var scope = context.createScope()) {
+            assertEquals("scoped(jobC())", scope.getService(IServiceC.class).jobC());
+            assertTrue(scope.getService(IServiceC.class) == scope.getService(IServiceC.class));
+        }
+    }
+
+    @Test
+    public void initializationHookShouldRunOnDecoratedInstance() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceP.class, ServiceP.class)
+                .decorate(IServiceP.class, inner -> () -> inner.isInitialized())
+                .buildAsync()
+                .get();
+
+        assertTrue(context.getService(IServiceP.class).isInitialized());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decoratorReturningNullShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .decorate(IServiceC.class, inner -> null)
+                .build();
+    }
+
+    @Test
+    public void interceptorShouldOnlyInterceptAnnotatedMethods() throws Exception {
+        var counter = new CountingInterceptor();
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Counted.class, counter)
+                .build();
+        IServiceW service = context.getService(IServiceW.class);
+
+        assertEquals("jobW(x)", service.jobW("x"));
+        assertEquals(5_000_000_003L, service.add(5_000_000_000L, 3));
+        assertEquals(5.0, service.scale(2.0, 2.5f), 0.0);
+        assertTrue(service.accept(true, 'w', (byte) 1, (short) 2));
+        int touched = ServiceW.TOUCHED.get();
+        service.touch();
+        assertEquals("IServiceW", service.describe());
+
+        assertEquals(4, counter.calls());
+        assertEquals(touched + 1, ServiceW.TOUCHED.get());
+    }
+
+    @Test
+    public void interceptedServiceShouldBeGeneratedClass() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Counted.class, new CountingInterceptor())
+                .build();
+        IServiceW service = context.getService(IServiceW.class);
+
+        assertTrue(service.getClass().isHidden());
+        assertFalse(Proxy.isProxyClass(service.getClass()));
+    }
+
+    @Test
+    public void firstInterceptorShouldBeOutermost() throws Exception {
+        var counter = new CountingInterceptor();
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Traced.class, new TracingInterceptor())
+                .addInterceptor(Traced.class, (method, annotation, next) -> new TracingInterceptor()
+                        .intercept(method, annotation, next))
+                .addInterceptor(Counted.class, counter)
+                .decorate(IServiceW.class, inner -> inner)
+                .build();
+
+        assertEquals("jobW(x)+W+W", context.getService(IServiceW.class).jobW("x"));
+        assertEquals(1, counter.calls());
+    }
+
+    @Test
+    public void interceptorOnTypeShouldInterceptEveryMethod() throws Exception {
+        var counter = new CountingInterceptor();
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Traced.class, counter)
+                .build();
+        IServiceW service = context.getService(IServiceW.class);
+
+        service.jobW("x");
+        service.touch();
+
+        assertEquals(1, counter.calls());
+    }
+
+    @Test
+    public void interceptedServiceShouldStillBeClosed() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceW.class, ServiceW.class)
+                .addInterceptor(Counted.class, new CountingInterceptor())
+                .build();
+        int closed = ServiceW.CLOSED.get();
+
+        context.close();
+
+        assertEquals(closed + 1, ServiceW.CLOSED.get());
+    }
+
+    @Test
+    public void serviceWithoutAnnotatedMethodsShouldNotBeIntercepted() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addInterceptor(Counted.class, new CountingInterceptor())
+                .build();
+
+        assertTrue(context.getService(IServiceC.class) instanceof ServiceC);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interceptorForAnnotationNotRetainedAtRunTimeShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addInterceptor(Unretained.class, new CountingInterceptor());
+    }
+}
@@ -0,0 +1,121 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class DeferredInjectionTests {
+    @Test
+    public void providerShouldResolveOnEveryCall() throws Exception {
+        ServiceE.CREATED.set(0);
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceM.class, ServiceM.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .build();
+
+        var service = context.getService(IServiceM.class);
+        assertEquals(0, ServiceE.CREATED.get());
+
+        assertTrue(service.nextE() != service.nextE());
+        assertEquals(2, ServiceE.CREATED.get());
+        assertEquals("jobE(jobC())", service.nextE().jobE());
+    }
+
+    @Test
+    public void lazyShouldReturnSameInstance() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceM.class, ServiceM.class)
+                .addTransient(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .build();
+
+        var service = context.getService(IServiceM.class);
+        assertTrue(service.lazyC() == service.lazyC());
+    }
+
+    @Test
+    public void lazySingletonShouldNotBeCreatedBeforeUse() throws Exception {
+        ServiceE.CREATED.set(0);
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceM.class, ServiceM.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addLazyService(IServiceE.class, ServiceE.class)
+                .build();
+
+        assertEquals(0, ServiceE.CREATED.get());
+        context.getService(IServiceM.class).nextE();
+        assertEquals(1, ServiceE.CREATED.get());
+    }
+
+    @Test
+    public void providerShouldBreakConstructorCycle() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceN.class, ServiceN.class)
+                .addService(IServiceO.class, ServiceO.class)
+                .build();
+
+        var serviceN = context.getService(IServiceN.class);
+        assertTrue(serviceN.getServiceO() == context.getService(IServiceO.class));
+        assertTrue(serviceN.getServiceO().getServiceN() == serviceN);
+    }
+
+    @Test
+    public void lazyShouldPublishOneInstanceToRacingThreads() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceM.class, ServiceM.class)
+                .addTransient(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .build();
+        var service = context.getService(IServiceM.class);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<IServiceC>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return service.lazyC();
+                }));
+            }
+            start.countDown();
+
+            var seen = ConcurrentHashMap.newKeySet();
+            for (Future<IServiceC> result : results) {
+                seen.add(result.get());
+            }
+            assertEquals(1, seen.size());
+            assertTrue(seen.contains(service.lazyC()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singletonProviderOfScopedServiceShouldBeRejected() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceM.class, ServiceM.class)
+                .addScoped(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .build();
+    }
+}
@@ -2,10 +2,16 @@ package com.korvala;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Test;
 
+import com.korvala.benchmark.SyntheticServiceGraph;
 import com.korvala.dependencyinjection.DependencyInjectionBuilder;
 
 public class DiBuilderTests {
@@ -248,4 +254,377 @@ public class DiBuilderTests {
 
         context.getService(null);
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gettingServiceWithNullFromBuiltContextShouldThrow() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .build();
+
+        context.getService(null);
+    }
+
+    @Test
+    public void gettingServiceFromEmptyContextShouldReturnNull() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .build();
+
+        assertEquals(null, context.getService(IServiceA.class));
+    }
+
+    @Test
+    public void injectedFieldsShouldBeWired() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals("jobA(jobB(jobC()))", context.getService(IServiceA.class).jobA());
+    }
+
+    @Test
+    public void repeatedBuildsShouldWireSeparateInstances() throws Exception {
+        var builder = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class);
+
+        var first = builder.build();
+        var second = builder.build();
+
+        assertTrue(first.getService(IServiceA.class) != second.getService(IServiceA.class));
+        assertEquals("jobA(jobB(jobC()))", first.getService(IServiceA.class).jobA());
+        assertEquals("jobA(jobB(jobC()))", second.getService(IServiceA.class).jobA());
+    }
+
+    @Test
+    public void exactRegistrationShouldWinOverOtherImplementations() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceAC.class) // implements IServiceA and IServiceC
+                .addService(IServiceC.class, ServiceC.class)
+                .addService(IServiceD.class, ServiceD.class)
+                .build();
+
+        assertTrue(context.getService(IServiceD.class).getServiceC() == context.getService(IServiceC.class));
+    }
+
+    @Test
+    public void onlyAssignableImplementationShouldBeInjected() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceAC.class) // implements IServiceA and IServiceC
+                .addService(IServiceD.class, ServiceD.class)
+                .build();
+
+        assertTrue(context.getService(IServiceD.class).getServiceC() == context.getService(IServiceA.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ambiguousDependencyShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceAC.class) // implements IServiceA and IServiceC
+                .addService(IServiceB.class, ServiceBC.class) // implements IServiceB and IServiceC
+                .addService(IServiceD.class, ServiceD.class)
+                .build();
+    }
+
+    @Test
+    public void largeGeneratedGraphShouldBeWired() throws Exception {
+        var graph = SyntheticServiceGraph.generate(2_000, 3);
+        var context = graph.register(new DependencyInjectionBuilder()).build();
+
+        for (int i = 0; i < graph.size(); i++) {
+            assertTrue(graph.serviceClass(i).isInstance(context.getService(graph.serviceInterface(i))));
+        }
+
+        var last = context.getService(graph.serviceInterface(graph.size() - 1));
+        var field = graph.serviceClass(graph.size() - 1).getDeclaredField("dependency0");
+        field.setAccessible(true);
+        assertTrue(field.get(last) == context.getService(graph.serviceInterface(graph.size() - 4)));
+    }
+
+    @Test
+    public void layeredGeneratedGraphShouldBeWired() throws Exception {
+        var graph = SyntheticServiceGraph.layered(100, 10, 4);
+        var context = graph.register(new DependencyInjectionBuilder()).build();
+
+        var top = context.getService(graph.serviceInterface(99));
+        for (int i = 0; i < 4; i++) {
+            var field = graph.serviceClass(99).getDeclaredField("dependency" + i);
+            field.setAccessible(true);
+            assertTrue(field.get(top) == context.getService(graph.serviceInterface(80 + (99 + i) % 10)));
+        }
+        assertEquals(0, graph.serviceClass(0).getDeclaredFields().length);
+    }
+
+    @Test
+    public void cachedMetadataShouldNotKeepClassLoaderAlive() throws Exception {
+        var graph = SyntheticServiceGraph.generate(50, 3);
+        graph.register(new DependencyInjectionBuilder()).build();
+        graph.register(new DependencyInjectionBuilder()).build();
+
+        var loader = new WeakReference<>(graph.serviceClass(0).getClassLoader());
+        graph = null;
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(loader.get());
+    }
+
+    @Test
+    public void frequentlyCreatedServicesShouldStayWired() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceK.class, ServiceK.class)
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addTransient(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        // past the point where the plans switch to their generated injectors
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("jobK(jobA(jobB(jobC())), jobB(jobC()), jobC(), jobJ(jobB(jobC()), jobC()))",
+                    context.getService(IServiceK.class).jobK());
+        }
+    }
+
+    @Test
+    public void generatedInjectorShouldNotKeepClassLoaderAlive() throws Exception {
+        var graph = SyntheticServiceGraph.generate(50, 3);
+        var builder = new DependencyInjectionBuilder();
+        builder.addTransient(graph.serviceInterface(0), graph.serviceClass(0));
+        for (int i = 1; i < graph.size(); i++) {
+            builder.addService(graph.serviceInterface(i), graph.serviceClass(i));
+        }
+        var context = builder.build();
+        for (int i = 0; i < 2000; i++) {
+            assertNotNull(context.getService(graph.serviceInterface(0)));
+        }
+
+        var loader = new WeakReference<>(graph.serviceClass(0).getClassLoader());
+        graph = null;
+        builder = null;
+        context = null;
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(loader.get());
+    }
+
+    @Test
+    public void lazyServiceShouldBeCreatedOnFirstUse() throws Exception {
+        ServiceE.CREATED.set(0);
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addLazyService(IServiceE.class, ServiceE.class)
+                .build();
+
+        assertEquals(0, ServiceE.CREATED.get());
+
+        var first = context.getService(IServiceE.class);
+        var second = context.getService(IServiceE.class);
+
+        assertEquals(1, ServiceE.CREATED.get());
+        assertTrue(first == second);
+        assertEquals("jobE(jobC())", first.jobE());
+    }
+
+    @Test
+    public void lazyServiceShouldBeCreatedWhenInjected() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addLazyService(IServiceB.class, ServiceB.class)
+                .addLazyService(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals("jobA(jobB(jobC()))", context.getService(IServiceA.class).jobA());
+    }
+
+    @Test
+    public void lazyInstantiationShouldApplyToEveryService() throws Exception {
+        ServiceE.CREATED.set(0);
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .useLazyInstantiation()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addService(IServiceE.class, ServiceE.class)
+                .build();
+
+        assertEquals("jobA(jobB(jobC()))", context.getService(IServiceA.class).jobA());
+        assertEquals(0, ServiceE.CREATED.get());
+    }
+
+    @Test
+    public void concurrentFirstUseShouldCreateLazyServiceOnce() throws Exception {
+        ServiceE.CREATED.set(0);
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addLazyService(IServiceE.class, ServiceE.class)
+                .build();
+
+        var start = new CountDownLatch(1);
+        var results = new IServiceE[8];
+        var threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                results[index] = context.getService(IServiceE.class);
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, ServiceE.CREATED.get());
+        for (IServiceE result : results) {
+            assertTrue(result == results[0]);
+        }
+    }
+
+    @Test
+    public void concurrentBuildShouldWireServices() throws Exception {
+        var pool = new ForkJoinPool(4);
+        try {
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .useExecutor(pool)
+                    .addService(IServiceA.class, ServiceA.class)
+                    .addService(IServiceB.class, ServiceB.class)
+                    .addService(IServiceC.class, ServiceC.class)
+                    .build();
+
+            assertEquals("jobA(jobB(jobC()))", context.getService(IServiceA.class).jobA());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentBuildShouldWireLargeGeneratedGraph() throws Exception {
+        var pool = new ForkJoinPool(4);
+        try {
+            var graph = SyntheticServiceGraph.generate(2_000, 3);
+            var context = graph.register(new DependencyInjectionBuilder()).useExecutor(pool).build();
+
+            var last = context.getService(graph.serviceInterface(graph.size() - 1));
+            var field = graph.serviceClass(graph.size() - 1).getDeclaredField("dependency2");
+            field.setAccessible(true);
+            assertTrue(field.get(last) == context.getService(graph.serviceInterface(graph.size() - 2)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void circularFieldDependenciesShouldBeWiredSequentially() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceG.class, ServiceG.class)
+                .addService(IServiceH.class, ServiceH.class)
+                .build();
+
+        assertTrue(context.getService(IServiceG.class).getServiceH() == context.getService(IServiceH.class));
+        assertTrue(context.getService(IServiceH.class).getServiceG() == context.getService(IServiceG.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void circularDependenciesShouldThrowInConcurrentBuild() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .useExecutor(ForkJoinPool.commonPool())
+                .addService(IServiceG.class, ServiceG.class)
+                .addService(IServiceH.class, ServiceH.class)
+                .build();
+    }
+
+    @Test
+    public void annotatedConstructorShouldReceiveDependencies() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals("jobJ(jobB(jobC()), jobC())", context.getService(IServiceJ.class).jobJ());
+    }
+
+    @Test
+    public void singlePublicConstructorShouldReceiveDependencies() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceK.class, ServiceK.class)
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals("jobK(jobA(jobB(jobC())), jobB(jobC()), jobC(), jobJ(jobB(jobC()), jobC()))",
+                context.getService(IServiceK.class).jobK());
+        assertTrue(context.getService(IServiceK.class) != context.getService(IServiceK.class));
+    }
+
+    @Test
+    public void constructorDependencyShouldSupportFieldCycle() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceG.class, CyclicServiceG.class)
+                .addService(IServiceH.class, ServiceH.class)
+                .build();
+
+        assertTrue(context.getService(IServiceG.class).getServiceH() == context.getService(IServiceH.class));
+        assertTrue(context.getService(IServiceH.class).getServiceG() == context.getService(IServiceG.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingConstructorDependencyShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+    }
+
+    @Test
+    public void concurrentBuildShouldCallConstructorsAfterDependencies() throws Exception {
+        var pool = new ForkJoinPool(4);
+        try {
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .useExecutor(pool)
+                    .addService(IServiceJ.class, ServiceJ.class)
+                    .addService(IServiceB.class, ServiceB.class)
+                    .addService(IServiceC.class, ServiceC.class)
+                    .build();
+
+            assertEquals("jobJ(jobB(jobC()), jobC())", context.getService(IServiceJ.class).jobJ());
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionListener;
+
+public class DisposalTests {
+    @Test
+    public void closeShouldCloseSingletons() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .build();
+        IServiceI service = context.getService(IServiceI.class);
+
+        context.close();
+
+        assertTrue(service.isClosed());
+    }
+
+    @Test
+    public void lazySingletonShouldNotBeCreatedAfterClose() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addLazyService(IServiceI.class, ServiceI.class)
+                .build();
+
+        context.close();
+
+        try {
+            context.getService(IServiceI.class);
+            fail("Singleton should not be created after close");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("has been closed"));
+        }
+    }
+
+    @Test
+    public void dependentShouldBeClosedBeforeItsDependency() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addService(IServiceV.class, ServiceV.class)
+                .build();
+        IServiceV service = context.getService(IServiceV.class);
+
+        context.close();
+
+        assertTrue(service.closedBeforeDependency());
+        assertTrue(context.getService(IServiceI.class).isClosed());
+    }
+
+    @Test
+    public void independentServicesShouldBeClosedInParallel() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceI.class, ServiceIA.class, ServiceIA.class, ServiceIA.class, ServiceIA.class)
+                .build();
+
+        long start = System.nanoTime();
+        context.close();
+        long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(millis < 3 * ServiceIA.CLOSE_MILLIS);
+        for (IServiceI service : context.getServices(IServiceI.class)) {
+            assertTrue(service.isClosed());
+        }
+    }
+
+    @Test
+    public void closeShouldReportEveryFailure() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceI.class, ServiceIB.class, ServiceI.class, ServiceIB.class)
+                .build();
+
+        try {
+            context.close();
+            fail("Close should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals(2, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof IOException);
+            assertTrue(e.getSuppressed()[1] instanceof IOException);
+        }
+        assertTrue(context.getServices(IServiceI.class).get(1).isClosed());
+    }
+
+    @Test
+    public void serviceNotClosingWithinTimeoutShouldBeReported() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .useDisposalTimeout(Duration.ofMillis(100))
+                .addServices(IServiceI.class, ServiceIC.class, ServiceI.class)
+                .build();
+
+        try {
+            context.close();
+            fail("Close should have timed out");
+        } catch (IllegalStateException e) {
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof TimeoutException);
+        } finally {
+            ServiceIC.RELEASE.countDown();
+        }
+        assertTrue(context.getServices(IServiceI.class).get(1).isClosed());
+    }
+
+    @Test
+    public void closingTwiceShouldCloseOnce() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceI.class, ServiceIB.class)
+                .build();
+
+        try {
+            context.close();
+            fail("Close should have failed");
+        } catch (IllegalStateException e) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void rebuiltContextShouldOnlyCloseItsOwnInstances() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addService(IServiceV.class, ServiceV.class)
+                .build();
+        var rebuilt = context.rebuildWith(IServiceV.class, ServiceV.class);
+
+        rebuilt.close();
+
+        assertTrue(rebuilt.getService(IServiceV.class).closedBeforeDependency());
+        assertFalse(rebuilt.getService(IServiceI.class).isClosed());
+        assertFalse(context.getService(IServiceV.class).closedBeforeDependency());
+    }
+
+    @Test
+    public void listenerShouldReceiveDisposedServices() throws Exception {
+        Queue<Class<?>> disposed = new ConcurrentLinkedQueue<>();
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addListener(new DependencyInjectionListener() {
+                    @Override
+                    public void serviceDisposed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                            final long nanos) {
+                        disposed.add(serviceClass);
+                    }
+                })
+                .addService(IServiceI.class, ServiceI.class)
+                .addService(IServiceV.class, ServiceV.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.close();
+
+        assertEquals(ServiceV.class, disposed.poll());
+        assertEquals(ServiceI.class, disposed.poll());
+        assertTrue(disposed.isEmpty());
+    }
+}
@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceD {
+    public IServiceC getServiceC();
+}
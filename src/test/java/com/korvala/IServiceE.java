@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceE {
+    public String jobE();
+}
@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceI {
+    public boolean isClosed();
+}
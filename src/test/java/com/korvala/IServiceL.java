@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceL {
+    public String jobL();
+}
@@ -0,0 +1,7 @@
+package com.korvala;
+
+public interface IServiceM {
+    public IServiceE nextE();
+
+    public IServiceC lazyC();
+}
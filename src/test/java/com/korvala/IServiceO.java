@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceO {
+    public IServiceN getServiceN();
+}
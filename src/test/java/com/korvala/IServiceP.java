@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceP {
+    public boolean isInitialized();
+}
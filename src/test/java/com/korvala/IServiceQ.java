@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceQ {
+    public boolean isInitialized();
+}
@@ -0,0 +1,4 @@
+package com.korvala;
+
+public interface IServiceS {
+}
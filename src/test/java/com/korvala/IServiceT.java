@@ -0,0 +1,5 @@
+package com.korvala;
+
+public interface IServiceT {
+    public String jobT();
+}
@@ -0,0 +1,9 @@
+package com.korvala;
+
+import java.util.List;
+
+public interface IServiceU {
+    public List<IServiceT> getServicesT();
+
+    public IServiceT[] getServiceTArray();
+}
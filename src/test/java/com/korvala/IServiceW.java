@@ -0,0 +1,17 @@
+package com.korvala;
+
+public interface IServiceW {
+    public String jobW(String argument);
+
+    public long add(long first, int second);
+
+    public double scale(double value, float factor);
+
+    public boolean accept(boolean flag, char character, byte small, short medium);
+
+    public void touch();
+
+    public default String describe() {
+        return "IServiceW";
+    }
+}
@@ -0,0 +1,11 @@
+package com.korvala;
+
+public interface IServiceX {
+    public String parse(String input);
+
+    public int resets();
+
+    public boolean isClosed();
+
+    public IServiceI getServiceI();
+}
@@ -0,0 +1,126 @@
+package com.korvala;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.Service;
+
+public class IndexTests {
+    @Test
+    public void indexesOfEveryClassPathEntryShouldBeMerged() throws Exception {
+        Path directory = directoryWithIndex("""
+                # written by the processor
+                com.korvala.IServiceI com.korvala.ServiceI SINGLETON
+                """);
+        Path jar = jarWithIndex("""
+                com.korvala.IServiceC com.korvala.ServiceC TRANSIENT
+                com.korvala.IServiceI com.korvala.ServiceI SINGLETON
+                """);
+
+        try (URLClassLoader loader = loaderOf(directory, jar)) {
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .addIndexed(loader)
+                    .build();
+
+            assertTrue(context.getService(IServiceI.class) == context.getService(IServiceI.class));
+            assertTrue(context.getService(IServiceC.class) != context.getService(IServiceC.class));
+        }
+    }
+
+    @Test
+    public void addIndexedShouldUseContextClassLoader() throws Exception {
+        Path directory = directoryWithIndex("com.korvala.IServiceC com.korvala.ServiceC\n");
+
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader loader = loaderOf(directory)) {
+            Thread.currentThread().setContextClassLoader(loader);
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .addIndexed()
+                    .build();
+
+            assertTrue(context.getService(IServiceC.class) == context.getService(IServiceC.class));
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+    }
+
+    @Test
+    public void interfaceIndexedTwiceShouldFail() throws Exception {
+        Path first = directoryWithIndex("com.korvala.IServiceI com.korvala.ServiceI\n");
+        Path second = directoryWithIndex("com.korvala.IServiceI com.korvala.ServiceIA\n");
+
+        try (URLClassLoader loader = loaderOf(first, second)) {
+            DependencyInjectionBuilder.startBuild().addIndexed(loader);
+            fail("Second implementation of an interface should fail");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("com.korvala.ServiceIA"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void indexOfMissingClassShouldFail() throws Exception {
+        Path directory = directoryWithIndex("com.korvala.IServiceI com.korvala.Missing\n");
+
+        try (URLClassLoader loader = loaderOf(directory)) {
+            DependencyInjectionBuilder.startBuild().addIndexed(loader);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void malformedIndexShouldFail() throws Exception {
+        Path directory = directoryWithIndex("com.korvala.ServiceI\n");
+
+        try (URLClassLoader loader = loaderOf(directory)) {
+            DependencyInjectionBuilder.startBuild().addIndexed(loader);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pooledIndexEntryShouldFail() throws Exception {
+        Path directory = directoryWithIndex("com.korvala.IServiceI com.korvala.ServiceI POOLED\n");
+
+        try (URLClassLoader loader = loaderOf(directory)) {
+            DependencyInjectionBuilder.startBuild().addIndexed(loader);
+        }
+    }
+
+    private static URLClassLoader loaderOf(final Path... entries) throws IOException {
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = entries[i].toUri().toURL();
+        }
+        return new URLClassLoader(urls, IndexTests.class.getClassLoader());
+    }
+
+    private static Path directoryWithIndex(final String index) throws IOException {
+        Path directory = Files.createTempDirectory("indexed");
+        Path file = directory.resolve(Service.INDEX);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, index);
+        return directory;
+    }
+
+    private static Path jarWithIndex(final String index) throws IOException {
+        Path jar = Files.createTempFile("indexed", ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(Service.INDEX));
+            out.write(index.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,218 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class InitializationTests {
+    @Before
+    public void clearInitialized() {
+        ServiceP.INITIALIZED.clear();
+    }
+
+    @Test
+    public void buildShouldRunHooksInDependencyOrder() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceR.class, ServiceR.class)
+                .addService(IServiceQ.class, ServiceQ.class)
+                .addService(IServiceP.class, ServiceP.class)
+                .build();
+
+        assertTrue(context.getService(IServiceR.class).isInitialized());
+        assertEquals(List.of("P", "Q", "R"), List.copyOf(ServiceP.INITIALIZED));
+    }
+
+    @Test
+    public void transientServiceShouldBeInitializedEveryTime() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceP.class, ServiceP.class)
+                .build();
+
+        assertTrue(context.getService(IServiceP.class).isInitialized());
+        assertTrue(context.getService(IServiceP.class).isInitialized());
+        assertEquals(2, ServiceP.INITIALIZED.size());
+    }
+
+    @Test
+    public void frequentlyCreatedServiceShouldBeInitializedEveryTime() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceP.class, ServiceP.class)
+                .build();
+
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(context.getService(IServiceP.class).isInitialized());
+        }
+        assertEquals(2000, ServiceP.INITIALIZED.size());
+    }
+
+    @Test
+    public void scopedServiceShouldBeInitializedOncePerScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceP.class, ServiceP.class)
+                .build();
+
+        try (var scope = context.createScope()) {
+            assertTrue(scope.getService(IServiceP.class).isInitialized());
+            scope.getService(IServiceP.class);
+        }
+        assertEquals(1, ServiceP.INITIALIZED.size());
+    }
+
+    @Test
+    public void lazyServiceShouldBeInitializedOnFirstUse() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addLazyService(IServiceP.class, ServiceP.class)
+                .build();
+
+        assertTrue(ServiceP.INITIALIZED.isEmpty());
+        assertTrue(context.getService(IServiceP.class).isInitialized());
+    }
+
+    @Test
+    public void failingHookShouldFailBuild() throws Exception {
+        try {
+            DependencyInjectionBuilder
+                    .startBuild()
+                    .addService(IServiceS.class, ServiceS.class)
+                    .build();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            return;
+        }
+        throw new AssertionError("Build should have failed");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void severalPostInjectMethodsShouldThrowException() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceS.class, ServiceSB.class)
+                .build();
+    }
+
+    @Test
+    public void buildAsyncShouldCompleteAfterEveryHook() throws Exception {
+        var ready = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceP.class, ServiceP.class)
+                .addService(IServiceQ.class, ServiceQ.class)
+                .addService(IServiceR.class, ServiceR.class)
+                .buildAsync();
+
+        var context = ready.get(10, TimeUnit.SECONDS);
+        assertTrue(context.getService(IServiceR.class).isInitialized());
+        assertEquals(List.of("P", "Q", "R"), List.copyOf(ServiceP.INITIALIZED));
+    }
+
+    @Test
+    public void buildAsyncShouldUseExecutor() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .addService(IServiceP.class, ServiceP.class)
+                    .addService(IServiceQ.class, ServiceQ.class)
+                    .useExecutor(executor)
+                    .buildAsync()
+                    .get(10, TimeUnit.SECONDS);
+
+            assertTrue(context.getService(IServiceQ.class).isInitialized());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void buildAsyncShouldFailWithFailingHook() throws Exception {
+        var ready = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceS.class, ServiceS.class)
+                .buildAsync();
+
+        try {
+            ready.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("Build should have failed");
+    }
+
+    @Test
+    public void buildAsyncShouldNotStartDependentsOfFailingHook() throws Exception {
+        var ready = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceP.class, ServiceP.class)
+                .addService(IServiceS.class, ServiceS.class)
+                .buildAsync();
+
+        try {
+            ready.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(ready.isCompletedExceptionally());
+            return;
+        }
+        throw new AssertionError("Build should have failed");
+    }
+
+    @Test
+    public void buildAsyncShouldTimeOut() throws Exception {
+        var ready = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceS.class, ServiceSA.class)
+                .useInitializationTimeout(Duration.ofMillis(50))
+                .buildAsync();
+
+        try {
+            ready.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            return;
+        }
+        throw new AssertionError("Build should have timed out");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildAsyncShouldRejectCircularDependencies() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceG.class, ServiceG.class)
+                .addService(IServiceH.class, ServiceH.class)
+                .buildAsync();
+    }
+
+    @Test
+    public void buildAsyncShouldLeaveLaterServicesToResolve() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addLazyService(IServiceP.class, ServiceP.class)
+                .buildAsync()
+                .get(10, TimeUnit.SECONDS);
+
+        assertFalse(ServiceP.INITIALIZED.contains("P"));
+        assertTrue(context.getService(IServiceP.class).isInitialized());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeTimeoutShouldThrowException() throws Exception {
+        DependencyInjectionBuilder.startBuild().useInitializationTimeout(Duration.ofSeconds(-1));
+    }
+}
@@ -0,0 +1,177 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.abstractions.DependencyInjectionListener;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class InstrumentationTests {
+
+    private static final class RecordingListener implements DependencyInjectionListener {
+        final List<Class<?>> constructed = new ArrayList<>();
+        final List<Class<?>> injected = new ArrayList<>();
+        final Map<Class<?>, Integer> resolved = new HashMap<>();
+        final List<Class<?>> failed = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        int builtServices = -1;
+
+        @Override
+        public void serviceConstructed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final long nanos) {
+            assertTrue(nanos >= 0);
+            this.constructed.add(serviceClass);
+        }
+
+        @Override
+        public void serviceInjected(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final long nanos) {
+            assertTrue(nanos >= 0);
+            this.injected.add(serviceClass);
+        }
+
+        @Override
+        public void serviceResolved(final Class<?> serviceInterface) {
+            this.resolved.merge(serviceInterface, 1, Integer::sum);
+        }
+
+        @Override
+        public void serviceFailed(final Class<?> serviceInterface, final Class<?> serviceClass,
+                final Throwable failure) {
+            this.failed.add(serviceClass);
+            this.failures.add(failure);
+        }
+
+        @Override
+        public void contextBuilt(final int serviceCount, final long nanos) {
+            this.builtServices = serviceCount;
+        }
+    }
+
+    @Test
+    public void listenerShouldReceiveConstructionAndInjection() throws Exception {
+        var listener = new RecordingListener();
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addListener(listener)
+                .build();
+
+        assertEquals(Set.of(ServiceA.class, ServiceB.class, ServiceC.class), new HashSet<>(listener.constructed));
+        assertEquals(3, listener.constructed.size());
+        assertEquals(Set.of(ServiceA.class, ServiceB.class, ServiceC.class), new HashSet<>(listener.injected));
+        assertEquals(3, listener.builtServices);
+        assertTrue(listener.failed.isEmpty());
+    }
+
+    @Test
+    public void listenerShouldCountResolutions() throws Exception {
+        var listener = new RecordingListener();
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .addListener(listener)
+                .build();
+
+        context.getService(IServiceE.class);
+        context.getService(IServiceE.class);
+        context.getService(IServiceC.class);
+
+        assertEquals(Integer.valueOf(2), listener.resolved.get(IServiceE.class));
+        assertEquals(Integer.valueOf(3), listener.resolved.get(IServiceC.class));
+        assertEquals(3, listener.constructed.size());
+    }
+
+    @Test
+    public void listenerShouldReceiveFailures() throws Exception {
+        var listener = new RecordingListener();
+        try {
+            DependencyInjectionBuilder
+                    .startBuild()
+                    .addService(IServiceL.class, ServiceL.class)
+                    .addListener(listener)
+                    .build();
+            fail("Build should fail");
+        } catch (IllegalStateException e) {
+            assertEquals(List.of(ServiceL.class), listener.failed);
+            assertTrue(listener.failures.get(0) == e);
+            assertEquals(-1, listener.builtServices);
+        }
+    }
+
+    @Test
+    public void everyListenerShouldBeCalled() throws Exception {
+        var first = new RecordingListener();
+        var second = new RecordingListener();
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addListener(first)
+                .addListener(second)
+                .build();
+
+        assertEquals(List.of(ServiceC.class), first.constructed);
+        assertEquals(List.of(ServiceC.class), second.constructed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowWhenListenerIsNull() {
+        DependencyInjectionBuilder.startBuild().addListener(null);
+    }
+
+    @Test
+    public void flightRecorderShouldRecordBuildConstructionAndScopes() throws Exception {
+        Path file = Files.createTempFile("dependencyinjection", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.korvala.dependencyinjection.ContextBuild");
+            recording.enable("com.korvala.dependencyinjection.ServiceConstruction");
+            recording.enable("com.korvala.dependencyinjection.Scope");
+            recording.start();
+
+            var context = DependencyInjectionBuilder
+                    .startBuild()
+                    .addService(IServiceC.class, ServiceC.class)
+                    .addScoped(IServiceI.class, ServiceI.class)
+                    .build();
+            try (var scope = context.createScope()) {
+                scope.getService(IServiceI.class);
+            }
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, RecordedEvent> events = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            events.put(event.getEventType().getName() + ":"
+                    + (event.hasField("serviceClass") ? event.getClass("serviceClass").getName() : ""), event);
+        }
+        Files.delete(file);
+
+        assertEquals(2, events.get("com.korvala.dependencyinjection.ContextBuild:").getInt("serviceCount"));
+        assertEquals("SINGLETON", events.get("com.korvala.dependencyinjection.ServiceConstruction:"
+                + ServiceC.class.getName()).getString("lifetime"));
+        assertEquals("SCOPED", events.get("com.korvala.dependencyinjection.ServiceConstruction:"
+                + ServiceI.class.getName()).getString("lifetime"));
+        assertEquals(1, events.get("com.korvala.dependencyinjection.Scope:").getInt("disposedCount"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class LifetimeTests {
+    @Test
+    public void transientServiceShouldBeCreatedEveryTime() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .build();
+
+        var first = context.getService(IServiceE.class);
+        var second = context.getService(IServiceE.class);
+
+        assertTrue(first != second);
+        assertEquals("jobE(jobC())", first.jobE());
+    }
+
+    @Test
+    public void transientDependencyShouldBeCreatedPerInjection() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceA.class, ServiceA.class)
+                .addTransient(IServiceB.class, ServiceB.class)
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals("jobA(jobB(jobC()))", context.getService(IServiceA.class).jobA());
+        assertTrue(context.getService(IServiceA.class) != context.getService(IServiceA.class));
+    }
+
+    @Test
+    public void scopedServiceShouldBeSharedWithinScope() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .addScoped(IServiceE.class, ServiceE.class)
+                .build();
+
+        try (var scope = context.createScope()) {
+            var first = scope.getService(IServiceE.class);
+            var second = scope.getService(IServiceE.class);
+
+            assertNotNull(first);
+            assertTrue(first == second);
+            assertEquals("jobE(jobC())", first.jobE());
+        }
+    }
+
+    @Test
+    public void scopesShouldNotShareScopedServices() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        try (var first = context.createScope(); var second = context.createScope()) {
+            assertTrue(first.getService(IServiceC.class) != second.getService(IServiceC.class));
+        }
+    }
+
+    @Test
+    public void singletonShouldBeSharedBetweenScopes() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceC.class, ServiceC.class)
+                .build();
+
+        try (var scope = context.createScope()) {
+            assertTrue(scope.getService(IServiceC.class) == context.getService(IServiceC.class));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void scopedServiceShouldNotResolveFromContext() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        context.getService(IServiceC.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singletonDependingOnScopedServiceShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceE.class, ServiceE.class)
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singletonDependingOnScopedServiceThroughTransientShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceA.class, ServiceA.class)
+                .addTransient(IServiceB.class, ServiceB.class)
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void circularTransientDependenciesShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceG.class, ServiceG.class)
+                .addTransient(IServiceH.class, ServiceH.class)
+                .build();
+    }
+
+    @Test
+    public void closingScopeShouldDisposeScopedServices() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceI.class, ServiceI.class)
+                .build();
+
+        IServiceI service;
+        try (var scope = context.createScope()) {
+            service = scope.getService(IServiceI.class);
+            assertFalse(service.isClosed());
+        }
+
+        assertTrue(service.isClosed());
+    }
+
+    @Test
+    public void closingScopeShouldDisposeTransientsItCreated() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceI.class, ServiceI.class)
+                .build();
+
+        var scope = context.createScope();
+        var service = scope.getService(IServiceI.class);
+        scope.close();
+
+        assertTrue(service.isClosed());
+    }
+
+    @Test
+    public void closingScopeShouldNotDisposeSingletons() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addSingleton(IServiceI.class, ServiceI.class)
+                .build();
+
+        try (var scope = context.createScope()) {
+            scope.getService(IServiceI.class);
+        }
+
+        assertFalse(context.getService(IServiceI.class).isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedScopeShouldThrow() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build();
+
+        var scope = context.createScope();
+        scope.close();
+        scope.getService(IServiceC.class);
+    }
+}
@@ -0,0 +1,49 @@
+package com.korvala;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import com.korvala.benchmark.SyntheticServiceGraph;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class MemoryLayoutTests {
+    private static final int SERVICES = 500;
+    private static final int FAN_OUT = 4;
+
+    /**
+     * Each service keeps its instance, interface, class, lifetime, plan, scope
+     * slot and four dependency ids in arrays, plus its share of the interface
+     * table. 65 bytes when this was written
+     */
+    private static final long BYTES_PER_REGISTRATION = 80;
+
+    @Test
+    public void contextShouldStayWithinBudgetPerRegistration() throws Exception {
+        SyntheticServiceGraph graph = SyntheticServiceGraph.generate(SERVICES, FAN_OUT);
+        var context = graph.register(new DependencyInjectionBuilder()).useLazyInstantiation().build();
+
+        GraphLayout layout = GraphLayout.parseInstance(context);
+        String footprint = layout.toFootprint();
+        assertFalse(footprint, footprint.contains("ServiceRegistration"));
+        assertFalse(footprint, footprint.contains(DependencyInjectionBuilder.class.getName() + "\n"));
+
+        long perRegistration = layout.subtract(sharedLayout(graph)).totalSize() / SERVICES;
+        assertTrue(perRegistration + " bytes per registration", perRegistration <= BYTES_PER_REGISTRATION);
+    }
+
+    /**
+     * @return everything reachable from the classes of the services, which is
+     *         shared between contexts, such as their injection plans
+     */
+    private static GraphLayout sharedLayout(final SyntheticServiceGraph graph) {
+        Object[] classes = new Object[graph.size() * 2];
+        for (int i = 0; i < graph.size(); i++) {
+            classes[2 * i] = graph.serviceInterface(i);
+            classes[2 * i + 1] = graph.serviceClass(i);
+        }
+        return GraphLayout.parseInstance(classes);
+    }
+}
@@ -0,0 +1,169 @@
+package com.korvala;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class MultiBindingTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void getServicesShouldReturnImplementationsInRegistrationOrder() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceTB.class, ServiceT.class)
+                .addServices(IServiceT.class, ServiceTA.class)
+                .build();
+
+        List<IServiceT> services = context.getServices(IServiceT.class);
+        assertEquals(3, services.size());
+        assertEquals("jobTB()", services.get(0).jobT());
+        assertEquals("jobT()", services.get(1).jobT());
+        assertEquals("jobTA()", services.get(2).jobT());
+    }
+
+    @Test
+    public void getServicesShouldReturnTheSameList() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build();
+
+        assertTrue(context.getServices(IServiceT.class) == context.getServices(IServiceT.class));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void servicesShouldBeImmutable() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build();
+
+        context.getServices(IServiceT.class).add(new ServiceTB());
+    }
+
+    @Test
+    public void getServicesShouldWrapSingleRegistration() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        assertEquals(List.of(context.getService(IServiceC.class)), context.getServices(IServiceC.class));
+        assertTrue(context.getServices(IServiceT.class).isEmpty());
+    }
+
+    @Test
+    public void listAndArrayShouldBeInjected() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceU.class, ServiceU.class)
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class, ServiceTB.class, ServiceT.class)
+                .build();
+
+        IServiceU service = context.getService(IServiceU.class);
+        assertTrue(service.getServicesT() == context.getServices(IServiceT.class));
+        assertArrayEquals(service.getServicesT().toArray(), service.getServiceTArray());
+        assertEquals(IServiceT[].class, service.getServiceTArray().getClass());
+    }
+
+    @Test
+    public void implementationsShouldBeSingletons() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceT.class)
+                .build();
+
+        List<IServiceT> services = context.getServices(IServiceT.class);
+        assertTrue(services.get(0) != services.get(1));
+        assertTrue(services.get(0) == context.createScope().getServices(IServiceT.class).get(0));
+    }
+
+    @Test
+    public void childShouldResolveParentMultiBinding() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build();
+        var child = parent.createChild(builder -> builder.addService(IServiceU.class, ServiceU.class));
+
+        assertTrue(child.getService(IServiceU.class).getServicesT() == parent.getServices(IServiceT.class));
+    }
+
+    @Test
+    public void childMultiBindingShouldReplaceParentMultiBinding() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build();
+        var child = parent.createChild(builder -> builder.addServices(IServiceT.class, ServiceTB.class));
+
+        assertEquals(1, child.getServices(IServiceT.class).size());
+        assertEquals(2, parent.getServices(IServiceT.class).size());
+    }
+
+    @Test
+    public void snapshotShouldKeepMultiBinding() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("multi.snapshot");
+        DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .addService(IServiceU.class, ServiceU.class)
+                .build()
+                .writeSnapshot(snapshot);
+
+        var context = DependencyInjectionBuilder.fromSnapshot(snapshot).build();
+
+        assertEquals(2, context.getService(IServiceU.class).getServiceTArray().length);
+        assertEquals("jobTA()", context.getServices(IServiceT.class).get(1).jobT());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getServiceShouldRejectMultiBinding() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build()
+                .getService(IServiceT.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void listOfSingleRegistrationShouldThrowException() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceT.class, ServiceT.class)
+                .addService(IServiceU.class, ServiceU.class)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addServicesAfterAddServiceShouldThrowException() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceT.class, ServiceT.class)
+                .addServices(IServiceT.class, ServiceTA.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addServiceAfterAddServicesShouldThrowException() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceTA.class)
+                .addService(IServiceT.class, ServiceT.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addServicesWithoutImplementationsShouldThrowException() throws Exception {
+        DependencyInjectionBuilder.startBuild().addServices(IServiceT.class);
+    }
+}
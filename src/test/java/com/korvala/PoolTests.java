@@ -0,0 +1,322 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.PoolConfig;
+import com.korvala.dependencyinjection.PoolMetrics;
+
+public class PoolTests {
+    @Test
+    public void leaseShouldReuseReturnedInstance() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2))
+                .build();
+
+        IServiceX first;
+        try (var lease = context.lease(IServiceX.class)) {
+            first = lease.get();
+            assertTrue(first.getServiceI() == context.getService(IServiceI.class));
+        }
+        try (var lease = context.lease(IServiceX.class)) {
+            assertTrue(first == lease.get());
+        }
+
+        PoolMetrics metrics = context.poolMetrics(IServiceX.class);
+        assertEquals(1, metrics.hits());
+        assertEquals(1, metrics.misses());
+        assertEquals(0, metrics.waits());
+        assertEquals(1, metrics.size());
+        assertEquals(1, metrics.idle());
+    }
+
+    @Test
+    public void returnedInstanceShouldBeReset() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(1))
+                .build();
+
+        try (var lease = context.lease(IServiceX.class)) {
+            assertEquals("a", lease.get().parse("a"));
+        }
+        try (var lease = context.lease(IServiceX.class)) {
+            assertEquals("b", lease.get().parse("b"));
+            assertEquals(1, lease.get().resets());
+        }
+    }
+
+    @Test
+    public void instanceFailingToResetShouldBeDiscarded() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addPooled(IServiceX.class, ServiceXA.class, PoolConfig.of(1))
+                .build();
+
+        IServiceX first;
+        try (var lease = context.lease(IServiceX.class)) {
+            first = lease.get();
+        }
+        try (var lease = context.lease(IServiceX.class)) {
+            assertTrue(first != lease.get());
+        }
+
+        assertTrue(first.isClosed());
+        assertEquals(2, context.poolMetrics(IServiceX.class).misses());
+        assertEquals(0, context.poolMetrics(IServiceX.class).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedLeaseShouldNotHandOutInstance() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(1))
+                .build();
+
+        var lease = context.lease(IServiceX.class);
+        lease.close();
+        lease.close();
+        lease.get();
+    }
+
+    @Test
+    public void exhaustedPoolShouldWaitForReturnedInstance() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(1))
+                .build();
+
+        AtomicReference<IServiceX> waited = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        IServiceX leased;
+        Thread thread;
+        try (var lease = context.lease(IServiceX.class)) {
+            leased = lease.get();
+            thread = new Thread(() -> {
+                started.countDown();
+                try (var other = context.lease(IServiceX.class)) {
+                    waited.set(other.get());
+                }
+            });
+            thread.start();
+            started.await();
+            while (context.poolMetrics(IServiceX.class).waits() == 0) {
+                Thread.sleep(1);
+            }
+            assertTrue(waited.get() == null);
+        }
+        thread.join();
+
+        assertTrue(waited.get() == leased);
+        assertEquals(1, context.poolMetrics(IServiceX.class).size());
+    }
+
+    @Test
+    public void exhaustedPoolShouldGiveUpAfterAcquireTimeout() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(1).withAcquireTimeout(Duration.ofMillis(50)))
+                .build();
+
+        var held = context.lease(IServiceX.class);
+        try {
+            context.lease(IServiceX.class);
+            fail("Lease of an exhausted pool should time out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("within PT0.05S"));
+        } finally {
+            held.close();
+        }
+        assertEquals(1, context.poolMetrics(IServiceX.class).waits());
+    }
+
+    @Test
+    public void idleInstanceShouldBeEvicted() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2).withIdleTimeout(Duration.ofMillis(20)))
+                .build();
+
+        IServiceX evicted;
+        try (var lease = context.lease(IServiceX.class)) {
+            evicted = lease.get();
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (context.poolMetrics(IServiceX.class).size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(evicted.isClosed());
+        assertEquals(1, context.poolMetrics(IServiceX.class).evictions());
+        try (var lease = context.lease(IServiceX.class)) {
+            assertTrue(evicted != lease.get());
+        }
+    }
+
+    @Test
+    public void concurrentLeasesShouldHaveExclusiveInstances() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(3))
+                .build();
+
+        Set<IServiceX> inUse = ConcurrentHashMap.newKeySet();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        try (var lease = context.lease(IServiceX.class)) {
+                            assertTrue(inUse.add(lease.get()));
+                            assertEquals("x", lease.get().parse("x"));
+                            assertTrue(inUse.remove(lease.get()));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(String.valueOf(failure.get()), failure.get() == null);
+        PoolMetrics metrics = context.poolMetrics(IServiceX.class);
+        assertTrue(metrics.size() <= 3);
+        assertTrue(metrics.misses() <= 3);
+        assertTrue(metrics.hits() + metrics.misses() + metrics.waits() >= 8 * 2000);
+        assertEquals(metrics.size(), metrics.idle());
+    }
+
+    @Test
+    public void closeShouldCloseIdleInstancesAndLeasedOnesWhenReturned() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2))
+                .build();
+
+        var idle = context.lease(IServiceX.class);
+        var leased = context.lease(IServiceX.class);
+        IServiceX idleInstance = idle.get();
+        IServiceX leasedInstance = leased.get();
+        idle.close();
+
+        context.close();
+
+        assertTrue(idleInstance.isClosed());
+        assertFalse(leasedInstance.isClosed());
+        leased.close();
+        assertTrue(leasedInstance.isClosed());
+        assertEquals(0, context.poolMetrics(IServiceX.class).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedContextShouldNotLease() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2))
+                .build();
+
+        context.close();
+        context.lease(IServiceX.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getServiceShouldNotResolvePooledService() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2))
+                .build();
+
+        context.getService(IServiceX.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void leaseShouldNotResolveServiceThatIsNotPooled() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .build();
+
+        context.lease(IServiceI.class);
+    }
+
+    @Test
+    public void serviceShouldNotDependOnPooledService() throws Exception {
+        try {
+            DependencyInjectionBuilder
+                    .startBuild()
+                    .addPooled(IServiceI.class, ServiceI.class, PoolConfig.of(2))
+                    .addService(IServiceV.class, ServiceV.class)
+                    .build();
+            fail("Dependency on a pooled service should fail the build");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("can not depend on pooled service"));
+        }
+    }
+
+    @Test
+    public void pooledServiceShouldNotDependOnScopedService() throws Exception {
+        try {
+            DependencyInjectionBuilder
+                    .startBuild()
+                    .addScoped(IServiceI.class, ServiceI.class)
+                    .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(2))
+                    .build();
+            fail("Pooled service depending on a scoped service should fail the build");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Pooled service"));
+        }
+    }
+
+    @Test
+    public void childShouldLeaseFromPoolOfParent() throws Exception {
+        var parent = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceI.class, ServiceI.class)
+                .addPooled(IServiceX.class, ServiceX.class, PoolConfig.of(1))
+                .build();
+        var child = parent.createChild(builder -> builder.addTransient(IServiceC.class, ServiceC.class));
+
+        IServiceX leased;
+        try (var lease = child.lease(IServiceX.class)) {
+            leased = lease.get();
+        }
+        try (var lease = parent.lease(IServiceX.class)) {
+            assertTrue(leased == lease.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void poolConfigShouldRejectEmptyPool() {
+        PoolConfig.of(0);
+    }
+}
@@ -0,0 +1,127 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.DependencyInjectionBuilder.Context;
+
+public class RebuildTests {
+    @Test
+    public void rebuildShouldReplaceServiceAndItsDependents() throws Exception {
+        var context = build();
+
+        var rebuilt = context.rebuildWith(IServiceB.class, ServiceBC.class);
+
+        assertEquals("jobK(jobA(jobBC()), jobBC(), jobC(), jobJ(jobBC(), jobC()))",
+                rebuilt.getService(IServiceK.class).jobK());
+        assertTrue(rebuilt.getService(IServiceB.class) instanceof ServiceBC);
+        assertTrue(rebuilt.getService(IServiceA.class) != context.getService(IServiceA.class));
+        assertTrue(rebuilt.getService(IServiceJ.class) != context.getService(IServiceJ.class));
+        assertTrue(rebuilt.getService(IServiceK.class) != context.getService(IServiceK.class));
+    }
+
+    @Test
+    public void rebuildShouldReuseServicesNotDependingOnReplacement() throws Exception {
+        var context = build();
+
+        var rebuilt = context.rebuildWith(IServiceB.class, ServiceBC.class);
+
+        assertTrue(rebuilt.getService(IServiceC.class) == context.getService(IServiceC.class));
+        assertTrue(rebuilt.getService(IServiceD.class) == context.getService(IServiceD.class));
+        assertTrue(rebuilt.getService(IServiceD.class).getServiceC() == rebuilt.getService(IServiceC.class));
+    }
+
+    @Test
+    public void rebuildShouldLeavePreviousContextUnchanged() throws Exception {
+        var context = build();
+        IServiceK serviceK = context.getService(IServiceK.class);
+
+        context.rebuildWith(IServiceB.class, ServiceBC.class);
+
+        assertTrue(context.getService(IServiceK.class) == serviceK);
+        assertEquals("jobK(jobA(jobB(jobC())), jobB(jobC()), jobC(), jobJ(jobB(jobC()), jobC()))",
+                serviceK.jobK());
+    }
+
+    @Test
+    public void rebuildShouldKeepLifetimeOfReplacedService() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        var rebuilt = context.rebuildWith(IServiceB.class, ServiceBC.class);
+
+        assertTrue(rebuilt.getService(IServiceB.class) != rebuilt.getService(IServiceB.class));
+    }
+
+    @Test
+    public void rebuildShouldKeepLazyServicesLazy() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addLazyService(IServiceE.class, ServiceE.class)
+                .build();
+        int created = ServiceE.CREATED.get();
+
+        var rebuilt = context.rebuildWith(IServiceC.class, ServiceBC.class);
+
+        assertEquals(created, ServiceE.CREATED.get());
+        assertEquals("jobE(jobBC())", rebuilt.getService(IServiceE.class).jobE());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rebuildWithUnregisteredInterfaceShouldThrow() throws Exception {
+        build().rebuildWith(IServiceE.class, ServiceE.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rebuildWithServiceOfOtherInterfaceShouldThrow() throws Exception {
+        build().rebuildWith(IServiceB.class, ServiceC.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rebuildOfMultiBindingShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addServices(IServiceT.class, ServiceT.class, ServiceTA.class)
+                .build()
+                .rebuildWith(IServiceT.class, ServiceTB.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rebuildIntoTransientCycleShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addTransient(IServiceG.class, ServiceGA.class)
+                .addTransient(IServiceH.class, ServiceH.class)
+                .build()
+                .rebuildWith(IServiceG.class, ServiceG.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rebuildIntoSingletonDependingOnScopedServiceShouldThrow() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceB.class, ServiceBC.class)
+                .addScoped(IServiceC.class, ServiceC.class)
+                .build()
+                .rebuildWith(IServiceB.class, ServiceB.class);
+    }
+
+    private static Context build() throws Exception {
+        return DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addService(IServiceD.class, ServiceD.class)
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addService(IServiceK.class, ServiceK.class)
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.korvala;
+
+public class ServiceBC implements IServiceB, IServiceC {
+
+    @Override
+    public String jobB() {
+        return "jobBC()";
+    }
+
+    @Override
+    public String jobC() {
+        return "jobBC()";
+    }
+}
@@ -0,0 +1,14 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceD implements IServiceD {
+
+    @Inject
+    private IServiceC serviceC;
+
+    @Override
+    public IServiceC getServiceC() {
+        return serviceC;
+    }
+}
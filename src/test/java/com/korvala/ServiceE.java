@@ -0,0 +1,22 @@
+package com.korvala;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceE implements IServiceE {
+
+    public static final AtomicInteger CREATED = new AtomicInteger();
+
+    @Inject
+    private IServiceC serviceC;
+
+    public ServiceE() {
+        CREATED.incrementAndGet();
+    }
+
+    @Override
+    public String jobE() {
+        return "jobE(" + serviceC.jobC() + ")";
+    }
+}
@@ -0,0 +1,14 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceG implements IServiceG {
+
+    @Inject
+    private IServiceH serviceH;
+
+    @Override
+    public IServiceH getServiceH() {
+        return serviceH;
+    }
+}
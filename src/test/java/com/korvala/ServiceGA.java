@@ -0,0 +1,8 @@
+package com.korvala;
+
+public class ServiceGA implements IServiceG {
+    @Override
+    public IServiceH getServiceH() {
+        return null;
+    }
+}
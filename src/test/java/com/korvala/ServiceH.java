@@ -0,0 +1,14 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceH implements IServiceH {
+
+    @Inject
+    private IServiceG serviceG;
+
+    @Override
+    public IServiceG getServiceG() {
+        return serviceG;
+    }
+}
@@ -0,0 +1,16 @@
+package com.korvala;
+
+public class ServiceI implements IServiceI, AutoCloseable {
+
+    private boolean closed;
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,23 @@
+package com.korvala;
+
+public class ServiceIA implements IServiceI, AutoCloseable {
+
+    public static final long CLOSE_MILLIS = 300;
+
+    private volatile boolean closed;
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        try {
+            Thread.sleep(CLOSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+    }
+}
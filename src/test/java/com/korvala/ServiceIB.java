@@ -0,0 +1,16 @@
+package com.korvala;
+
+import java.io.IOException;
+
+public class ServiceIB implements IServiceI, AutoCloseable {
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        throw new IOException("Closing ServiceIB failed");
+    }
+}
@@ -0,0 +1,22 @@
+package com.korvala;
+
+import java.util.concurrent.CountDownLatch;
+
+public class ServiceIC implements IServiceI, AutoCloseable {
+
+    public static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            RELEASE.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceJ implements IServiceJ {
+
+    private final IServiceB serviceB;
+    private final IServiceC serviceC;
+
+    public ServiceJ() {
+        this(null, null);
+    }
+
+    @Inject
+    public ServiceJ(IServiceB serviceB, IServiceC serviceC) {
+        this.serviceB = serviceB;
+        this.serviceC = serviceC;
+    }
+
+    @Override
+    public String jobJ() {
+        return "jobJ(" + serviceB.jobB() + ", " + serviceC.jobC() + ")";
+    }
+}
@@ -0,0 +1,22 @@
+package com.korvala;
+
+public class ServiceK implements IServiceK {
+
+    private final IServiceA serviceA;
+    private final IServiceB serviceB;
+    private final IServiceC serviceC;
+    private final IServiceJ serviceJ;
+
+    public ServiceK(IServiceA serviceA, IServiceB serviceB, IServiceC serviceC, IServiceJ serviceJ) {
+        this.serviceA = serviceA;
+        this.serviceB = serviceB;
+        this.serviceC = serviceC;
+        this.serviceJ = serviceJ;
+    }
+
+    @Override
+    public String jobK() {
+        return "jobK(" + serviceA.jobA() + ", " + serviceB.jobB() + ", " + serviceC.jobC() + ", " + serviceJ.jobJ()
+                + ")";
+    }
+}
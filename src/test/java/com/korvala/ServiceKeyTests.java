@@ -0,0 +1,83 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.ServiceKey;
+
+public class ServiceKeyTests {
+    @Test
+    public void keyShouldResolveSameInstanceAsInterface() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .build();
+
+        ServiceKey<IServiceB> key = context.keyOf(IServiceB.class);
+
+        assertEquals(IServiceB.class, key.serviceInterface());
+        assertTrue(context.getServiceByKey(key) == context.getService(IServiceB.class));
+        assertEquals("jobB(jobC())", context.getServiceByKey(key).jobB());
+    }
+
+    @Test
+    public void keyShouldResolveTransientsAndScopedServices() throws Exception {
+        var context = DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .addScoped(IServiceI.class, ServiceI.class)
+                .build();
+
+        var transientKey = context.keyOf(IServiceE.class);
+        assertTrue(context.getServiceByKey(transientKey) != context.getServiceByKey(transientKey));
+
+        var scopedKey = context.keyOf(IServiceI.class);
+        try (var scope = context.createScope()) {
+            assertTrue(scope.getServiceByKey(scopedKey) == scope.getService(IServiceI.class));
+        }
+    }
+
+    @Test
+    public void keyOfUnregisteredServiceShouldBeNull() throws Exception {
+        var context = DependencyInjectionBuilder.startBuild().addService(IServiceC.class, ServiceC.class).build();
+
+        assertNull(context.keyOf(IServiceA.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyOfAnotherContextShouldBeRejected() throws Exception {
+        var first = DependencyInjectionBuilder.startBuild().addService(IServiceC.class, ServiceC.class).build();
+        var second = DependencyInjectionBuilder.startBuild().addService(IServiceC.class, ServiceC.class).build();
+
+        second.getServiceByKey(first.keyOf(IServiceC.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullKeyShouldBeRejected() throws Exception {
+        DependencyInjectionBuilder.startBuild().build().getServiceByKey(null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void keyShouldNotResolveFromClosedScope() throws Exception {
+        var context = DependencyInjectionBuilder.startBuild().addScoped(IServiceI.class, ServiceI.class).build();
+        var key = context.keyOf(IServiceI.class);
+
+        var scope = context.createScope();
+        scope.close();
+        scope.getServiceByKey(key);
+    }
+
+    @Test
+    public void childKeyShouldResolveInheritedService() throws Exception {
+        var parent = DependencyInjectionBuilder.startBuild().addService(IServiceC.class, ServiceC.class).build();
+        var child = parent.createChild(builder -> builder.addService(IServiceD.class, ServiceD.class));
+
+        assertTrue(child.getServiceByKey(child.keyOf(IServiceC.class)) == parent.getService(IServiceC.class));
+    }
+}
@@ -0,0 +1,13 @@
+package com.korvala;
+
+public class ServiceL implements IServiceL {
+
+    public ServiceL() {
+        throw new IllegalStateException("ServiceL can not be created");
+    }
+
+    @Override
+    public String jobL() {
+        return "jobL()";
+    }
+}
@@ -0,0 +1,24 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+import com.korvala.dependencyinjection.Lazy;
+import com.korvala.dependencyinjection.Provider;
+
+public class ServiceM implements IServiceM {
+
+    @Inject
+    private Provider<IServiceE> serviceE;
+
+    @Inject
+    private Lazy<IServiceC> serviceC;
+
+    @Override
+    public IServiceE nextE() {
+        return serviceE.get();
+    }
+
+    @Override
+    public IServiceC lazyC() {
+        return serviceC.get();
+    }
+}
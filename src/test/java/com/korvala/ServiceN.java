@@ -0,0 +1,17 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Provider;
+
+public class ServiceN implements IServiceN {
+
+    private final Provider<IServiceO> serviceO;
+
+    public ServiceN(Provider<IServiceO> serviceO) {
+        this.serviceO = serviceO;
+    }
+
+    @Override
+    public IServiceO getServiceO() {
+        return serviceO.get();
+    }
+}
@@ -0,0 +1,15 @@
+package com.korvala;
+
+public class ServiceO implements IServiceO {
+
+    private final IServiceN serviceN;
+
+    public ServiceO(IServiceN serviceN) {
+        this.serviceN = serviceN;
+    }
+
+    @Override
+    public IServiceN getServiceN() {
+        return serviceN;
+    }
+}
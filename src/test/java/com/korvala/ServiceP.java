@@ -0,0 +1,24 @@
+package com.korvala;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.korvala.dependencyinjection.PostInject;
+
+public class ServiceP implements IServiceP {
+
+    public static final Queue<String> INITIALIZED = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean initialized;
+
+    @PostInject
+    private void start() {
+        initialized = true;
+        INITIALIZED.add("P");
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
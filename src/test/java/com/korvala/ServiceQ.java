@@ -0,0 +1,26 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+import com.korvala.dependencyinjection.InitializingService;
+
+public class ServiceQ implements IServiceQ, InitializingService {
+
+    @Inject
+    private IServiceP serviceP;
+
+    private volatile boolean initialized;
+
+    @Override
+    public void initialize() {
+        if (!serviceP.isInitialized()) {
+            throw new IllegalStateException("ServiceP is not initialized");
+        }
+        initialized = true;
+        ServiceP.INITIALIZED.add("Q");
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
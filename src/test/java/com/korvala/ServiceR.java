@@ -0,0 +1,31 @@
+package com.korvala;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import com.korvala.dependencyinjection.AsyncInitializingService;
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceR implements IServiceR, AsyncInitializingService {
+
+    @Inject
+    private IServiceQ serviceQ;
+
+    private volatile boolean initialized;
+
+    @Override
+    public CompletionStage<?> initializeAsync() {
+        return CompletableFuture.runAsync(() -> {
+            if (!serviceQ.isInitialized()) {
+                throw new IllegalStateException("ServiceQ is not initialized");
+            }
+            initialized = true;
+            ServiceP.INITIALIZED.add("R");
+        });
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
@@ -0,0 +1,13 @@
+package com.korvala;
+
+import java.io.IOException;
+
+import com.korvala.dependencyinjection.PostInject;
+
+public class ServiceS implements IServiceS {
+
+    @PostInject
+    public void connect() throws IOException {
+        throw new IOException("connection refused");
+    }
+}
@@ -0,0 +1,13 @@
+package com.korvala;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.korvala.dependencyinjection.PostInject;
+
+public class ServiceSA implements IServiceS {
+
+    @PostInject
+    public CompletableFuture<Void> connect() {
+        return new CompletableFuture<>();
+    }
+}
@@ -0,0 +1,14 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.PostInject;
+
+public class ServiceSB implements IServiceS {
+
+    @PostInject
+    public void connect() {
+    }
+
+    @PostInject
+    public void warmUp() {
+    }
+}
@@ -0,0 +1,9 @@
+package com.korvala;
+
+public class ServiceT implements IServiceT {
+
+    @Override
+    public String jobT() {
+        return "jobT()";
+    }
+}
@@ -0,0 +1,9 @@
+package com.korvala;
+
+public class ServiceTA implements IServiceT {
+
+    @Override
+    public String jobT() {
+        return "jobTA()";
+    }
+}
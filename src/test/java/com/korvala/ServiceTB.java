@@ -0,0 +1,9 @@
+package com.korvala;
+
+public class ServiceTB implements IServiceT {
+
+    @Override
+    public String jobT() {
+        return "jobTB()";
+    }
+}
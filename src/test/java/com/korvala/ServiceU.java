@@ -0,0 +1,27 @@
+package com.korvala;
+
+import java.util.List;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceU implements IServiceU {
+
+    private final List<IServiceT> servicesT;
+
+    @Inject
+    private IServiceT[] serviceTArray;
+
+    public ServiceU(List<IServiceT> servicesT) {
+        this.servicesT = servicesT;
+    }
+
+    @Override
+    public List<IServiceT> getServicesT() {
+        return servicesT;
+    }
+
+    @Override
+    public IServiceT[] getServiceTArray() {
+        return serviceTArray;
+    }
+}
@@ -0,0 +1,20 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+
+public class ServiceV implements IServiceV, AutoCloseable {
+    @Inject
+    private IServiceI serviceI;
+
+    private volatile boolean closedBeforeDependency;
+
+    @Override
+    public boolean closedBeforeDependency() {
+        return closedBeforeDependency;
+    }
+
+    @Override
+    public void close() {
+        closedBeforeDependency = !serviceI.isClosed();
+    }
+}
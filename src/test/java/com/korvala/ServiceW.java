@@ -0,0 +1,44 @@
+package com.korvala;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServiceW implements IServiceW, AutoCloseable {
+
+    public static final AtomicInteger TOUCHED = new AtomicInteger();
+    public static final AtomicInteger CLOSED = new AtomicInteger();
+
+    @Counted
+    @Traced("W")
+    @Override
+    public String jobW(String argument) {
+        return "jobW(" + argument + ")";
+    }
+
+    @Counted
+    @Override
+    public long add(long first, int second) {
+        return first + second;
+    }
+
+    @Counted
+    @Override
+    public double scale(double value, float factor) {
+        return value * factor;
+    }
+
+    @Counted
+    @Override
+    public boolean accept(boolean flag, char character, byte small, short medium) {
+        return flag && character == 'w' && small == 1 && medium == 2;
+    }
+
+    @Override
+    public void touch() {
+        TOUCHED.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        CLOSED.incrementAndGet();
+    }
+}
@@ -0,0 +1,44 @@
+package com.korvala;
+
+import com.korvala.dependencyinjection.Inject;
+import com.korvala.dependencyinjection.ResettableService;
+
+public class ServiceX implements IServiceX, ResettableService, AutoCloseable {
+    @Inject
+    private IServiceI serviceI;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int resets;
+    private volatile boolean closed;
+
+    @Override
+    public String parse(final String input) {
+        return buffer.append(input).toString();
+    }
+
+    @Override
+    public int resets() {
+        return resets;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public IServiceI getServiceI() {
+        return serviceI;
+    }
+
+    @Override
+    public void reset() {
+        buffer.setLength(0);
+        resets++;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
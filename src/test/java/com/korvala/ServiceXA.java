@@ -0,0 +1,39 @@
+package com.korvala;
+
+import java.io.IOException;
+
+import com.korvala.dependencyinjection.ResettableService;
+
+public class ServiceXA implements IServiceX, ResettableService, AutoCloseable {
+    private volatile boolean closed;
+
+    @Override
+    public String parse(final String input) {
+        return input;
+    }
+
+    @Override
+    public int resets() {
+        return 0;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public IServiceI getServiceI() {
+        return null;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Resetting ServiceXA failed");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,132 @@
+package com.korvala;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+public class SnapshotTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotShouldRebuildTheSameContext() throws Exception {
+        Path snapshot = writeSnapshot();
+
+        var context = DependencyInjectionBuilder.fromSnapshot(snapshot).build();
+
+        assertEquals("jobK(jobA(jobB(jobC())), jobB(jobC()), jobC(), jobJ(jobB(jobC()), jobC()))",
+                context.getService(IServiceK.class).jobK());
+        assertTrue(context.getService(IServiceB.class) != context.getService(IServiceB.class));
+        assertTrue(context.getService(IServiceM.class).lazyC() == context.getService(IServiceC.class));
+        assertTrue(context.getService(IServiceM.class).nextE() != context.getService(IServiceM.class).nextE());
+        assertTrue(context.getService(IServiceN.class).getServiceO() == context.getService(IServiceO.class));
+
+        IServiceI scoped;
+        try (var scope = context.createScope()) {
+            scoped = scope.getService(IServiceI.class);
+            assertTrue(scoped == scope.getService(IServiceI.class));
+        }
+        assertTrue(scoped.isClosed());
+    }
+
+    @Test
+    public void snapshotShouldKeepLazyRegistrations() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("lazy.snapshot");
+        DependencyInjectionBuilder
+                .startBuild()
+                .addLazyService(IServiceL.class, ServiceL.class)
+                .build()
+                .writeSnapshot(snapshot);
+
+        var context = DependencyInjectionBuilder.fromSnapshot(snapshot).build();
+
+        assertEquals(null, context.getService(IServiceA.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazyRegistrationFromSnapshotShouldBeCreatedOnFirstUse() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("lazy.snapshot");
+        DependencyInjectionBuilder
+                .startBuild()
+                .addLazyService(IServiceL.class, ServiceL.class)
+                .build()
+                .writeSnapshot(snapshot);
+
+        DependencyInjectionBuilder.fromSnapshot(snapshot).build().getService(IServiceL.class);
+    }
+
+    @Test
+    public void snapshotBuilderShouldAcceptMoreRegistrations() throws Exception {
+        var context = DependencyInjectionBuilder
+                .fromSnapshot(writeSnapshot())
+                .addService(IServiceD.class, ServiceD.class)
+                .build();
+
+        assertTrue(context.getService(IServiceD.class).getServiceC() == context.getService(IServiceC.class));
+    }
+
+    @Test
+    public void changedClassFilesShouldReplayRegistrations() throws Exception {
+        Path snapshot = writeSnapshot();
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        file.putLong(16, file.getLong(16) + 1);
+        CRC32 checksum = new CRC32();
+        checksum.update(file.array(), 16, file.capacity() - 16);
+        file.putLong(8, checksum.getValue());
+        Files.write(snapshot, file.array());
+
+        var context = DependencyInjectionBuilder.fromSnapshot(snapshot).build();
+
+        assertEquals("jobK(jobA(jobB(jobC())), jobB(jobC()), jobC(), jobJ(jobB(jobC()), jobC()))",
+                context.getService(IServiceK.class).jobK());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void corruptedSnapshotShouldThrowException() throws Exception {
+        Path snapshot = writeSnapshot();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+
+        DependencyInjectionBuilder.fromSnapshot(snapshot);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void childContextShouldNotBeWrittenToSnapshot() throws Exception {
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceC.class, ServiceC.class)
+                .build()
+                .createChild(builder -> builder.addService(IServiceD.class, ServiceD.class))
+                .writeSnapshot(folder.getRoot().toPath().resolve("child.snapshot"));
+    }
+
+    private Path writeSnapshot() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("context.snapshot");
+        DependencyInjectionBuilder
+                .startBuild()
+                .addService(IServiceA.class, ServiceA.class)
+                .addTransient(IServiceB.class, ServiceB.class)
+                .addService(IServiceC.class, ServiceC.class)
+                .addService(IServiceJ.class, ServiceJ.class)
+                .addService(IServiceK.class, ServiceK.class)
+                .addService(IServiceM.class, ServiceM.class)
+                .addTransient(IServiceE.class, ServiceE.class)
+                .addService(IServiceN.class, ServiceN.class)
+                .addService(IServiceO.class, ServiceO.class)
+                .addScoped(IServiceI.class, ServiceI.class)
+                .build()
+                .writeSnapshot(snapshot);
+        return snapshot;
+    }
+}
@@ -0,0 +1,24 @@
+package com.korvala;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import com.korvala.dependencyinjection.MethodInterceptor;
+
+public class TracingInterceptor implements MethodInterceptor {
+
+    @Override
+    public MethodHandle intercept(final Method method, final Annotation annotation, final MethodHandle next)
+            throws ReflectiveOperationException {
+        if (method.getReturnType() != String.class) {
+            return next;
+        }
+        MethodHandle concat = MethodHandles.lookup()
+                .findVirtual(String.class, "concat", MethodType.methodType(String.class, String.class));
+        return MethodHandles.filterReturnValue(next,
+                MethodHandles.insertArguments(concat, 1, "+" + ((Traced) annotation).value()));
+    }
+}
@@ -0,0 +1,9 @@
+package com.korvala;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Unretained {
+
+}
@@ -0,0 +1,63 @@
+package com.korvala.benchmark;
+
+import java.util.Arrays;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+
+/**
+ * BuildScalingBenchmark: measures registering and building 100 to 40 000
+ * services
+ *
+ * Prints the median time of the add calls, of build() and the time per
+ * service of both together for every size. With registration and wiring
+ * linear in the number of services the per service column stays flat as
+ * the graph grows.
+ *
+ * Run with:
+ * java -cp target/classes:target/test-classes com.korvala.benchmark.BuildScalingBenchmark
+ *
+ * @author Hannu Korvala
+ */
+public final class BuildScalingBenchmark {
+
+    private static final int[] SIZES = { 100, 1_000, 5_000, 10_000, 20_000, 40_000 };
+    private static final int FAN_OUT = 3;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 11;
+
+    public static void main(final String[] args) throws Exception {
+        System.out.printf("%12s %16s %14s %18s%n", "services", "register (ms)", "build (ms)", "per service (ns)");
+
+        for (int size : SIZES) {
+            SyntheticServiceGraph graph = SyntheticServiceGraph.generate(size, FAN_OUT);
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                graph.register(new DependencyInjectionBuilder()).build();
+            }
+
+            long[] registering = new long[MEASURED_ROUNDS];
+            long[] building = new long[MEASURED_ROUNDS];
+            long[] rounds = new long[MEASURED_ROUNDS];
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                DependencyInjectionBuilder builder = graph.register(new DependencyInjectionBuilder());
+                long registered = System.nanoTime();
+                builder.build();
+                long built = System.nanoTime();
+
+                registering[i] = registered - start;
+                building[i] = built - registered;
+                rounds[i] = built - start;
+            }
+
+            System.out.printf("%12d %16.2f %14.2f %18d%n", size, median(registering) / 1_000_000.0,
+                    median(building) / 1_000_000.0, median(rounds) / size);
+        }
+    }
+
+    private static long median(final long[] rounds) {
+        long[] sorted = rounds.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,314 @@
+package com.korvala.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.korvala.dependencyinjection.DependencyInjectionBuilder;
+import com.korvala.dependencyinjection.Inject;
+
+/**
+ * SyntheticServiceGraph: generates interface and implementation classes at
+ * runtime so builds with thousands of registrations can be measured
+ *
+ * Service i implements ISynthetic{i} and has @Inject fields for the
+ * interfaces of the services it depends on: either the fanOut services
+ * registered right before it, or fanIn services of the layer below it in a
+ * layered graph.
+ *
+ * @author Hannu Korvala
+ */
+public final class SyntheticServiceGraph {
+
+    private static final String PACKAGE = "com/korvala/synthetic/";
+    private static final String INJECT_DESCRIPTOR = "L" + Inject.class.getName().replace('.', '/') + ";";
+
+    private final Class<?>[] serviceInterfaces;
+    private final Class<?>[] serviceClasses;
+
+    private SyntheticServiceGraph(final Class<?>[] serviceInterfaces, final Class<?>[] serviceClasses) {
+        this.serviceInterfaces = serviceInterfaces;
+        this.serviceClasses = serviceClasses;
+    }
+
+    /**
+     * Generates and loads a new graph in its own class loader
+     *
+     * @param size   number of services
+     * @param fanOut number of @Inject fields per service
+     * @return SyntheticServiceGraph
+     */
+    public static SyntheticServiceGraph generate(final int size, final int fanOut) {
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            List<Integer> serviceDependencies = new ArrayList<>();
+            for (int j = Math.max(0, i - fanOut); j < i; j++) {
+                serviceDependencies.add(j);
+            }
+            dependencies.add(serviceDependencies);
+        }
+        return load(dependencies);
+    }
+
+    /**
+     * Generates a graph of at most depth layers of equal width, every service
+     * outside the first layer injects fanIn services of the layer below it
+     *
+     * @param size  number of services
+     * @param depth number of layers, the longest dependency chain
+     * @param fanIn number of @Inject fields per service outside the first layer
+     * @return SyntheticServiceGraph
+     */
+    public static SyntheticServiceGraph layered(final int size, final int depth, final int fanIn) {
+        if (depth < 1 || depth > size || fanIn < 0) {
+            throw new IllegalArgumentException("Can not layer " + size + " services into " + depth
+                    + " layers with fan-in " + fanIn);
+        }
+
+        int width = (size + depth - 1) / depth;
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            List<Integer> serviceDependencies = new ArrayList<>();
+            int layerStart = i / width * width;
+            if (layerStart > 0) {
+                int below = layerStart - width;
+                for (int k = 0; k < Math.min(fanIn, width); k++) {
+                    serviceDependencies.add(below + (i + k) % width);
+                }
+            }
+            dependencies.add(serviceDependencies);
+        }
+        return load(dependencies);
+    }
+
+    private static SyntheticServiceGraph load(final List<List<Integer>> dependencies) {
+        int size = dependencies.size();
+        Map<String, byte[]> classFiles = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            classFiles.put(interfaceName(i), interfaceClassFile(i));
+
+            List<String> fieldTypes = new ArrayList<>();
+            for (int j : dependencies.get(i)) {
+                fieldTypes.add(interfaceName(j));
+            }
+            classFiles.put(className(i), implementationClassFile(i, fieldTypes));
+        }
+
+        SyntheticClassLoader loader = new SyntheticClassLoader(classFiles);
+        Class<?>[] serviceInterfaces = new Class<?>[size];
+        Class<?>[] serviceClasses = new Class<?>[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                serviceInterfaces[i] = loader.loadClass(interfaceName(i).replace('/', '.'));
+                serviceClasses[i] = loader.loadClass(className(i).replace('/', '.'));
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new SyntheticServiceGraph(serviceInterfaces, serviceClasses);
+    }
+
+    /**
+     * @return number of services in the graph
+     */
+    public int size() {
+        return this.serviceInterfaces.length;
+    }
+
+    public Class<?> serviceInterface(final int i) {
+        return this.serviceInterfaces[i];
+    }
+
+    public Class<?> serviceClass(final int i) {
+        return this.serviceClasses[i];
+    }
+
+    /**
+     * @return builder with every service of the graph registered
+     */
+    public DependencyInjectionBuilder register(final DependencyInjectionBuilder builder) {
+        for (int i = 0; i < size(); i++) {
+            builder.addService(this.serviceInterfaces[i], this.serviceClasses[i]);
+        }
+        return builder;
+    }
+
+    private static String interfaceName(final int i) {
+        return PACKAGE + "ISynthetic" + i;
+    }
+
+    private static String className(final int i) {
+        return PACKAGE + "Synthetic" + i;
+    }
+
+    private static byte[] interfaceClassFile(final int i) {
+        ClassFile file = new ClassFile();
+        int thisClass = file.classRef(interfaceName(i));
+        int superClass = file.classRef("java/lang/Object");
+        return file.write(0x0601, thisClass, superClass, -1, List.of(), -1);
+    }
+
+    private static byte[] implementationClassFile(final int i, final List<String> dependencies) {
+        ClassFile file = new ClassFile();
+        int thisClass = file.classRef(className(i));
+        int superClass = file.classRef("java/lang/Object");
+        int implemented = file.classRef(interfaceName(i));
+        int objectConstructor = file.methodRef(superClass, "<init>", "()V");
+
+        List<int[]> fields = new ArrayList<>();
+        for (int j = 0; j < dependencies.size(); j++) {
+            fields.add(new int[] { file.utf8("dependency" + j), file.utf8("L" + dependencies.get(j) + ";") });
+        }
+        return file.write(0x0021, thisClass, superClass, implemented, fields, objectConstructor);
+    }
+
+    /**
+     * Just enough of the class file format for empty interfaces and classes with
+     * annotated fields and a default constructor
+     */
+    private static final class ClassFile {
+        private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(this.constants);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(final String value) {
+            return entry("U" + value, () -> {
+                this.pool.writeByte(1);
+                this.pool.writeUTF(value);
+            });
+        }
+
+        int classRef(final String internalName) {
+            int name = utf8(internalName);
+            return entry("C" + internalName, () -> {
+                this.pool.writeByte(7);
+                this.pool.writeShort(name);
+            });
+        }
+
+        int methodRef(final int owner, final String name, final String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry("N" + name + descriptor, () -> {
+                this.pool.writeByte(12);
+                this.pool.writeShort(nameIndex);
+                this.pool.writeShort(descriptorIndex);
+            });
+            return entry("M" + owner + name + descriptor, () -> {
+                this.pool.writeByte(10);
+                this.pool.writeShort(owner);
+                this.pool.writeShort(nameAndType);
+            });
+        }
+
+        byte[] write(final int access, final int thisClass, final int superClass, final int implemented,
+                final List<int[]> fields, final int superConstructor) {
+            int annotations = fields.isEmpty() ? 0 : utf8("RuntimeVisibleAnnotations");
+            int inject = fields.isEmpty() ? 0 : utf8(INJECT_DESCRIPTOR);
+            int code = superConstructor < 0 ? 0 : utf8("Code");
+            int constructorName = superConstructor < 0 ? 0 : utf8("<init>");
+            int constructorDescriptor = superConstructor < 0 ? 0 : utf8("()V");
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(61);
+                out.writeShort(this.count);
+                this.constants.writeTo(out);
+                out.writeShort(access);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+
+                if (implemented < 0) {
+                    out.writeShort(0);
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(implemented);
+                }
+
+                out.writeShort(fields.size());
+                for (int[] field : fields) {
+                    out.writeShort(0x0002);
+                    out.writeShort(field[0]);
+                    out.writeShort(field[1]);
+                    out.writeShort(1);
+                    out.writeShort(annotations);
+                    out.writeInt(6);
+                    out.writeShort(1);
+                    out.writeShort(inject);
+                    out.writeShort(0);
+                }
+
+                if (superConstructor < 0) {
+                    out.writeShort(0);
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(0x0001);
+                    out.writeShort(constructorName);
+                    out.writeShort(constructorDescriptor);
+                    out.writeShort(1);
+                    out.writeShort(code);
+                    out.writeInt(17);
+                    out.writeShort(1);
+                    out.writeShort(1);
+                    out.writeInt(5);
+                    out.writeByte(0x2a);
+                    out.writeByte(0xb7);
+                    out.writeShort(superConstructor);
+                    out.writeByte(0xb1);
+                    out.writeShort(0);
+                    out.writeShort(0);
+                }
+
+                out.writeShort(0);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int entry(final String key, final ConstantWriter writer) {
+            Integer existing = this.entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.entries.put(key, this.count);
+            return this.count++;
+        }
+
+        private interface ConstantWriter {
+            void write() throws IOException;
+        }
+    }
+
+    private static final class SyntheticClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classFiles;
+
+        SyntheticClassLoader(final Map<String, byte[]> classFiles) {
+            super(Inject.class.getClassLoader());
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException {
+            byte[] classFile = this.classFiles.remove(name.replace('.', '/'));
+            if (classFile == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}